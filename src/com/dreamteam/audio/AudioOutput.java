@@ -0,0 +1,45 @@
+package com.dreamteam.audio;
+
+/**
+ * Dispositivo di uscita audio usato dal motore di riproduzione.
+ * <p>
+ * Riceve PCM a 16 bit con canali interlacciati. Tutte le chiamate arrivano dal thread di uscita,
+ * tranne {@link #pause()}, {@link #resume()} e {@link #discard()}, che il motore invoca dal proprio
+ * thread per rispondere subito ai comandi: le implementazioni devono quindi renderle thread-safe.
+ * </p>
+ */
+public interface AudioOutput {
+
+    /**
+     * Apre il dispositivo per il formato indicato.
+     *
+     * @throws Exception Se il dispositivo non è disponibile o non supporta il formato.
+     */
+    void open(int sampleRate, int channels) throws Exception;
+
+    /** @return true se il dispositivo è aperto con il formato indicato. */
+    boolean hasFormat(int sampleRate, int channels);
+
+    /**
+     * Scrive i campioni, bloccando finché il dispositivo non li ha accettati tutti.
+     */
+    void write(short[] samples, int offs, int len);
+
+    /** Sospende subito l'uscita, mantenendo i campioni già scritti. */
+    void pause();
+
+    /** Riprende l'uscita dal punto in cui era stata sospesa. */
+    void resume();
+
+    /** Attende che tutti i campioni scritti siano stati riprodotti. */
+    void drain();
+
+    /** Scarta i campioni scritti e non ancora riprodotti. */
+    void discard();
+
+    /** Chiude il dispositivo e ne rilascia le risorse. */
+    void close();
+
+    /** @return La durata consigliata di ogni scrittura, in millisecondi. */
+    int getWriteChunkMillis();
+}
@@ -0,0 +1,74 @@
+package com.dreamteam.audio;
+
+import com.dreamteam.data.ConfigManager;
+
+/**
+ * Parametri del dispositivo di uscita audio, letti da {@code config.properties}.
+ * <p>
+ * Il profilo ({@code audio.profile}) fornisce i valori di partenza: {@code default} lascia al sistema
+ * la scelta del buffer della linea, {@code lowlatency} usa un buffer minimo perché pausa, ripresa
+ * e seek abbiano effetto entro una ventina di millisecondi. Le singole chiavi
+ * ({@code audio.line.buffer.ms}, {@code audio.write.chunk.ms}, {@code audio.start.threshold.ms})
+ * hanno la precedenza sul profilo.
+ * </p>
+ */
+public final class AudioOutputSettings {
+    public static final String PROFILE_DEFAULT = "default";
+    public static final String PROFILE_LOW_LATENCY = "lowlatency";
+
+    private final String profile;
+    private final int lineBufferMillis;
+    private final int writeChunkMillis;
+    private final int startThresholdMillis;
+
+    /**
+     * @param lineBufferMillis     Dimensione del buffer della linea (0 = scelta del sistema).
+     * @param writeChunkMillis     Audio inviato alla linea a ogni scrittura.
+     * @param startThresholdMillis Audio da accumulare nella linea prima di avviarla (0 = subito).
+     */
+    public AudioOutputSettings(String profile, int lineBufferMillis, int writeChunkMillis, int startThresholdMillis) {
+        this.profile = profile;
+        this.lineBufferMillis = Math.max(0, lineBufferMillis);
+        this.writeChunkMillis = Math.max(1, writeChunkMillis);
+        this.startThresholdMillis = Math.max(0, startThresholdMillis);
+    }
+
+    /**
+     * Legge il profilo e le eventuali personalizzazioni dal file di configurazione.
+     */
+    public static AudioOutputSettings load() {
+        String profile = ConfigManager.loadStringProperty("audio.profile", PROFILE_DEFAULT);
+
+        AudioOutputSettings base = PROFILE_LOW_LATENCY.equalsIgnoreCase(profile)
+                ? new AudioOutputSettings(PROFILE_LOW_LATENCY, 40, 5, 10)
+                : new AudioOutputSettings(PROFILE_DEFAULT, 0, 20, 0);
+
+        return new AudioOutputSettings(
+                base.profile,
+                ConfigManager.loadIntProperty("audio.line.buffer.ms", base.lineBufferMillis),
+                ConfigManager.loadIntProperty("audio.write.chunk.ms", base.writeChunkMillis),
+                ConfigManager.loadIntProperty("audio.start.threshold.ms", base.startThresholdMillis));
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public int getLineBufferMillis() {
+        return lineBufferMillis;
+    }
+
+    public int getWriteChunkMillis() {
+        return writeChunkMillis;
+    }
+
+    public int getStartThresholdMillis() {
+        return startThresholdMillis;
+    }
+
+    @Override
+    public String toString() {
+        return profile + " (buffer linea " + (lineBufferMillis == 0 ? "di sistema" : lineBufferMillis + " ms")
+                + ", scrittura " + writeChunkMillis + " ms, avvio dopo " + startThresholdMillis + " ms)";
+    }
+}
@@ -0,0 +1,46 @@
+package com.dreamteam.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Apre i flussi di ingresso per il decoder.
+ * <p>
+ * I file vengono letti con letture posizionali ({@link FileChannelInputStream}): un seek apre un
+ * flusso già posizionato all'offset richiesto, senza leggere i byte precedenti, e chiudendo il
+ * flusso il file torna subito libero, così l'applicazione può spostare, rinominare o eliminare
+ * una canzone appena smette di riprodurla.
+ * Una traccia aperta dall'inizio viene servita dalla memoria se {@link TrackPrefetcher} l'ha
+ * già letta in anticipo.
+ * </p>
+ */
+final class AudioSources {
+
+    private AudioSources() {
+    }
+
+    /**
+     * Apre il file posizionandosi all'offset indicato.
+     *
+     * @param file   Il file MP3.
+     * @param offset La posizione iniziale in byte.
+     * @return Un flusso pronto per il {@code Bitstream} di JLayer.
+     * @throws IOException Se il file non può essere aperto.
+     */
+    static InputStream open(File file, long offset) throws IOException {
+        if (offset == 0) {
+            InputStream prefetched = TrackPrefetcher.open(file);
+            if (prefetched != null) return prefetched;
+        }
+        return openFromDisk(file, offset);
+    }
+
+    /**
+     * Apre il file posizionandosi all'offset indicato, senza passare dai dati letti in anticipo
+     * da {@link TrackPrefetcher}.
+     */
+    static InputStream openFromDisk(File file, long offset) throws IOException {
+        return new FileChannelInputStream(file, offset);
+    }
+}
@@ -0,0 +1,121 @@
+package com.dreamteam.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * {@link InputStream} che legge un file con letture posizionali su un {@link FileChannel}.
+ * <p>
+ * I dati passano da un buffer interno da {@value #BUFFER_SIZE} byte, quindi quasi ogni lettura è
+ * una semplice copia in memoria, e il riposizionamento è immediato: cambia solo la posizione della
+ * prossima lettura, senza saltare byte. A differenza di una mappatura in memoria, che su Windows
+ * tiene bloccato il file finché il garbage collector non la libera, il file viene rilasciato
+ * appena il flusso è chiuso.
+ * </p>
+ */
+public class FileChannelInputStream extends InputStream {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bufferStart; // posizione nel file del primo byte del buffer
+    private long mark;
+
+    /**
+     * @param file   Il file da leggere.
+     * @param offset La posizione iniziale di lettura in byte.
+     * @throws IOException Se il file non può essere aperto.
+     */
+    public FileChannelInputStream(File file, long offset) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buffer.limit(0);
+        position(offset);
+    }
+
+    /**
+     * Sposta la posizione di lettura in tempo costante.
+     *
+     * @param offset La nuova posizione in byte.
+     */
+    public void position(long offset) {
+        long target = Math.max(0, offset);
+        if (target >= bufferStart && target <= bufferStart + buffer.limit()) {
+            buffer.position((int) (target - bufferStart));
+        } else {
+            bufferStart = target;
+            buffer.limit(0);
+        }
+    }
+
+    public long position() {
+        return bufferStart + buffer.position();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) return 0;
+        if (!buffer.hasRemaining() && !fill()) return -1;
+
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, Math.max(0, channel.size() - position()));
+        position(position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - position()));
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        position(mark);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Legge nel buffer il blocco di file che segue quello già consumato.
+     *
+     * @return false a fine file.
+     */
+    private boolean fill() throws IOException {
+        bufferStart += buffer.position();
+        buffer.clear();
+        int n = channel.read(buffer, bufferStart);
+        buffer.flip();
+        return n > 0;
+    }
+}
@@ -0,0 +1,159 @@
+package com.dreamteam.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Uscita audio basata su una {@link SourceDataLine} di javax.sound.
+ * <p>
+ * A differenza del dispositivo predefinito di JLayer, la dimensione del buffer della linea,
+ * la quantità di audio per scrittura e la soglia di avvio sono configurabili
+ * ({@link AudioOutputSettings}): un buffer piccolo riduce la latenza, uno grande
+ * rende l'uscita più robusta.
+ * </p>
+ * <p>
+ * La pausa ferma la linea senza svuotarla: i campioni già scritti restano nel buffer
+ * e alla ripresa l'audio continua esattamente dal punto in cui si era fermato.
+ * </p>
+ */
+public class JavaSoundOutput implements AudioOutput {
+    private final AudioOutputSettings settings;
+    private SourceDataLine line;
+    private int sampleRate;
+    private int channels;
+    private byte[] bytes = new byte[4096];
+    private volatile boolean paused;
+
+    // la linea parte solo dopo aver accumulato startThreshold byte
+    private int startThreshold;
+    private long bufferedSinceStart;
+    private boolean started;
+
+    public JavaSoundOutput(AudioOutputSettings settings) {
+        this.settings = settings;
+    }
+
+    public JavaSoundOutput() {
+        this(AudioOutputSettings.load());
+    }
+
+    @Override
+    public synchronized void open(int sampleRate, int channels) throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+        int frameBytes = format.getFrameSize();
+
+        try {
+            line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+        } catch (IllegalArgumentException e) {
+            throw new LineUnavailableException("Formato audio non supportato: " + format);
+        }
+
+        if (settings.getLineBufferMillis() > 0) {
+            line.open(format, millisToBytes(settings.getLineBufferMillis(), sampleRate, frameBytes));
+        } else {
+            line.open(format);
+        }
+
+        // la soglia non può superare il buffer, altrimenti la scrittura si bloccherebbe prima dell'avvio
+        int chunk = millisToBytes(settings.getWriteChunkMillis(), sampleRate, frameBytes);
+        startThreshold = Math.min(millisToBytes(settings.getStartThresholdMillis(), sampleRate, frameBytes),
+                                  Math.max(0, line.getBufferSize() - chunk));
+        bufferedSinceStart = 0;
+        started = false;
+
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        startIfReady();
+    }
+
+    private static int millisToBytes(int millis, int sampleRate, int frameBytes) {
+        return (int) ((long) sampleRate * millis / 1000) * frameBytes;
+    }
+
+    @Override
+    public boolean hasFormat(int sampleRate, int channels) {
+        return line != null && this.sampleRate == sampleRate && this.channels == channels;
+    }
+
+    @Override
+    public void write(short[] samples, int offs, int len) {
+        int size = len * 2;
+        if (bytes.length < size) bytes = new byte[size];
+
+        for (int i = 0, j = 0; i < len; i++) {
+            short s = samples[offs + i];
+            bytes[j++] = (byte) s;
+            bytes[j++] = (byte) (s >>> 8);
+        }
+        line.write(bytes, 0, size);
+
+        synchronized (this) {
+            bufferedSinceStart += size;
+            startIfReady();
+        }
+    }
+
+    private void startIfReady() {
+        if (!started && !paused && line != null && bufferedSinceStart >= startThreshold) {
+            line.start();
+            started = true;
+        }
+    }
+
+    @Override
+    public synchronized void pause() {
+        paused = true;
+        if (line != null) line.stop();
+    }
+
+    @Override
+    public synchronized void resume() {
+        paused = false;
+        if (line == null) return;
+
+        if (started) line.start();
+        else startIfReady();
+    }
+
+    @Override
+    public void drain() {
+        synchronized (this) {
+            // una traccia più corta della soglia di avvio va comunque riprodotta
+            if (!started && !paused && line != null) {
+                line.start();
+                started = true;
+            }
+        }
+        // su una linea ferma drain() non terminerebbe mai
+        if (line != null && line.isRunning()) line.drain();
+    }
+
+    /**
+     * Scarta i campioni in attesa; la linea ripartirà dopo aver accumulato di nuovo la soglia di avvio.
+     */
+    @Override
+    public synchronized void discard() {
+        if (line == null) return;
+
+        line.stop();
+        line.flush();
+        started = false;
+        bufferedSinceStart = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (line != null) {
+            line.close();
+            line = null;
+        }
+    }
+
+    @Override
+    public int getWriteChunkMillis() {
+        return settings.getWriteChunkMillis();
+    }
+}
@@ -0,0 +1,122 @@
+package com.dreamteam.audio;
+
+/**
+ * Decodifica minimale dell'header a 4 byte di un frame MPEG audio.
+ * <p>
+ * Non dipende da JLayer: serve per scandire velocemente un file MP3
+ * (indice dei frame, lettura degli header Xing/VBRI) senza decodificare l'audio.
+ * </p>
+ */
+final class MP3FrameHeader {
+    static final int MPEG1 = 3;
+    static final int MPEG2 = 2;
+    static final int MPEG25 = 0;
+
+    static final int LAYER1 = 3;
+    static final int LAYER2 = 2;
+    static final int LAYER3 = 1;
+
+    private static final int[][] BITRATES_V1 = {
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // Layer I
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},    // Layer II
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}      // Layer III
+    };
+
+    private static final int[][] BITRATES_V2 = {
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},    // Layer I
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},         // Layer II
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}          // Layer III
+    };
+
+    private static final int[][] SAMPLE_RATES = {
+        {11025, 12000, 8000},  // MPEG 2.5
+        {0, 0, 0},             // riservato
+        {22050, 24000, 16000}, // MPEG 2
+        {44100, 48000, 32000}  // MPEG 1
+    };
+
+    final int version;
+    final int layer;
+    final int bitrate;
+    final int sampleRate;
+    final int channels;
+    final int frameLength;
+    final int samplesPerFrame;
+
+    private MP3FrameHeader(int version, int layer, int bitrate, int sampleRate, int channels,
+                           int frameLength, int samplesPerFrame) {
+        this.version = version;
+        this.layer = layer;
+        this.bitrate = bitrate;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frameLength = frameLength;
+        this.samplesPerFrame = samplesPerFrame;
+    }
+
+    /**
+     * Interpreta i 4 byte di header a partire da {@code off}.
+     *
+     * @return L'header decodificato, oppure {@code null} se i byte non sono un header valido.
+     */
+    static MP3FrameHeader parse(byte[] buf, int off) {
+        int b0 = buf[off] & 0xFF;
+        int b1 = buf[off + 1] & 0xFF;
+        int b2 = buf[off + 2] & 0xFF;
+        int b3 = buf[off + 3] & 0xFF;
+
+        if (b0 != 0xFF || (b1 & 0xE0) != 0xE0) return null;
+
+        int version = (b1 >> 3) & 0x03;
+        int layer = (b1 >> 1) & 0x03;
+        int bitrateIndex = (b2 >> 4) & 0x0F;
+        int rateIndex = (b2 >> 2) & 0x03;
+        int padding = (b2 >> 1) & 0x01;
+        int mode = (b3 >> 6) & 0x03;
+
+        // versione riservata, layer riservato, bitrate libero/non valido, frequenza non valida
+        if (version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15 || rateIndex == 3) return null;
+
+        int[][] table = version == MPEG1 ? BITRATES_V1 : BITRATES_V2;
+        int bitrate = table[3 - layer][bitrateIndex] * 1000;
+        int sampleRate = SAMPLE_RATES[version][rateIndex];
+
+        int samplesPerFrame;
+        int frameLength;
+        if (layer == LAYER1) {
+            samplesPerFrame = 384;
+            frameLength = (12 * bitrate / sampleRate + padding) * 4;
+        } else if (layer == LAYER2 || version == MPEG1) {
+            samplesPerFrame = 1152;
+            frameLength = 144 * bitrate / sampleRate + padding;
+        } else {
+            samplesPerFrame = 576;
+            frameLength = 72 * bitrate / sampleRate + padding;
+        }
+
+        if (frameLength < 4) return null;
+
+        return new MP3FrameHeader(version, layer, bitrate, sampleRate, mode == 3 ? 1 : 2,
+                                  frameLength, samplesPerFrame);
+    }
+
+    /**
+     * Verifica che un altro header appartenga allo stesso flusso (stessa versione, layer e frequenza).
+     * Serve a scartare le false sincronizzazioni dentro i dati audio.
+     */
+    boolean sameStream(MP3FrameHeader other) {
+        return other != null && other.version == version && other.layer == layer && other.sampleRate == sampleRate;
+    }
+
+    /**
+     * Restituisce la dimensione complessiva del tag ID3v2 presente all'inizio del buffer.
+     *
+     * @return Numero di byte del tag (header e footer compresi), 0 se il tag non c'è.
+     */
+    static int id3v2Size(byte[] buf, int len) {
+        if (len < 10 || buf[0] != 'I' || buf[1] != 'D' || buf[2] != '3') return 0;
+        int size = ((buf[6] & 0x7F) << 21) | ((buf[7] & 0x7F) << 14) | ((buf[8] & 0x7F) << 7) | (buf[9] & 0x7F);
+        boolean footer = (buf[5] & 0x10) != 0;
+        return 10 + size + (footer ? 10 : 0);
+    }
+}
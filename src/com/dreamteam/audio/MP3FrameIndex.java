@@ -0,0 +1,233 @@
+package com.dreamteam.audio;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Indice dei frame di un file MP3: per ogni frame memorizza l'offset in byte nel file
+ * e il numero di campioni che lo precedono.
+ * <p>
+ * Permette di trasformare una posizione temporale in un confine di frame esatto,
+ * anche per file VBR o con tag ID3v2, senza dover rileggere il file a ogni seek.
+ * Tutti i frame di un flusso condividono versione e layer, quindi hanno lo stesso numero
+ * di campioni: il conteggio cumulativo del frame {@code i} è {@code i * samplesPerFrame}.
+ * </p>
+ */
+public final class MP3FrameIndex {
+    private static final int MAGIC = 0x4D334958; // "M3IX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int WINDOW_SIZE = 256 * 1024;
+
+    private final long fileSize;
+    private final long lastModified;
+    private final int sampleRate;
+    private final int samplesPerFrame;
+    private final long[] offsets;
+
+    private MP3FrameIndex(long fileSize, long lastModified, int sampleRate, int samplesPerFrame, long[] offsets) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.sampleRate = sampleRate;
+        this.samplesPerFrame = samplesPerFrame;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Scandisce il file leggendo solo gli header dei frame e costruisce l'indice.
+     *
+     * @param file Il file MP3 da indicizzare.
+     * @return L'indice dei frame (eventualmente vuoto se il file non contiene audio MPEG).
+     * @throws IOException In caso di errore di lettura.
+     */
+    public static MP3FrameIndex build(File file) throws IOException {
+        long size = file.length();
+        long modified = file.lastModified();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Window window = new Window(channel, size);
+
+            long pos = 0;
+            if (window.ensure(0, 10)) {
+                pos = MP3FrameHeader.id3v2Size(window.buf, window.available(0));
+            }
+
+            long[] found = new long[4096];
+            int count = 0;
+            MP3FrameHeader first = null;
+
+            while (window.ensure(pos, 4)) {
+                MP3FrameHeader h = MP3FrameHeader.parse(window.buf, window.index(pos));
+
+                boolean valid = h != null && (first == null ? isConfirmed(window, pos, h) : first.sameStream(h));
+                if (!valid) {
+                    pos++;
+                    continue;
+                }
+                if (first == null) first = h;
+
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = pos;
+                pos += h.frameLength;
+            }
+
+            if (first == null) return new MP3FrameIndex(size, modified, 0, 0, new long[0]);
+
+            return new MP3FrameIndex(size, modified, first.sampleRate, first.samplesPerFrame, Arrays.copyOf(found, count));
+        }
+    }
+
+    /**
+     * Il primo frame viene accettato solo se è seguito da un altro header coerente,
+     * così da non agganciarsi a una falsa sincronizzazione dentro i metadati.
+     */
+    private static boolean isConfirmed(Window window, long pos, MP3FrameHeader h) throws IOException {
+        long next = pos + h.frameLength;
+        if (!window.ensure(next, 4)) return next >= window.size - 4;
+        return h.sameStream(MP3FrameHeader.parse(window.buf, window.index(next)));
+    }
+
+    /**
+     * Restituisce il frame che contiene la posizione temporale indicata.
+     *
+     * @param millis Posizione in millisecondi dall'inizio della traccia.
+     * @return Indice del frame, limitato all'intervallo valido.
+     */
+    public int findFrame(long millis) {
+        if (offsets.length == 0 || millis <= 0) return 0;
+        long sample = millis * sampleRate / 1000;
+        long frame = sample / samplesPerFrame;
+        return (int) Math.min(frame, offsets.length - 1);
+    }
+
+    /** @return L'offset in byte del frame indicato. */
+    public long getFrameOffset(int frame) {
+        return offsets.length == 0 ? 0 : offsets[frame];
+    }
+
+    /** @return Il numero di campioni (per canale) che precedono il frame indicato. */
+    public long getFrameSamples(int frame) {
+        return (long) frame * samplesPerFrame;
+    }
+
+    /** @return La posizione in millisecondi dell'inizio del frame indicato. */
+    public long getFrameMillis(int frame) {
+        return sampleRate == 0 ? 0 : getFrameSamples(frame) * 1000 / sampleRate;
+    }
+
+    /** @return Il numero totale di campioni (per canale) della traccia. */
+    public long getTotalSamples() {
+        return getFrameSamples(offsets.length);
+    }
+
+    /** @return La durata esatta della traccia in millisecondi. */
+    public long getDurationMillis() {
+        return getFrameMillis(offsets.length);
+    }
+
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    /**
+     * Verifica che l'indice sia ancora valido per il file (stessa dimensione e data di modifica).
+     */
+    public boolean matches(File file) {
+        return file.length() == fileSize && file.lastModified() == lastModified;
+    }
+
+    /**
+     * Serializza l'indice in forma compatta: gli offset sono salvati come differenze tra frame consecutivi.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(fileSize);
+        out.writeLong(lastModified);
+        out.writeInt(sampleRate);
+        out.writeInt(samplesPerFrame);
+        out.writeInt(offsets.length);
+
+        long previous = 0;
+        for (long offset : offsets) {
+            out.writeInt((int) (offset - previous));
+            previous = offset;
+        }
+    }
+
+    /**
+     * Legge un indice salvato con {@link #writeTo(DataOutputStream)}.
+     *
+     * @throws IOException Se il formato non è riconosciuto o il file è troncato.
+     */
+    public static MP3FrameIndex readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Formato indice non riconosciuto");
+        }
+
+        long size = in.readLong();
+        long modified = in.readLong();
+        int rate = in.readInt();
+        int spf = in.readInt();
+        int count = in.readInt();
+
+        long[] offsets = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += in.readInt();
+            offsets[i] = previous;
+        }
+
+        return new MP3FrameIndex(size, modified, rate, spf, offsets);
+    }
+
+    /**
+     * Finestra di lettura scorrevole sul file: evita di caricare l'intero MP3 in memoria.
+     */
+    private static final class Window {
+        private final FileChannel channel;
+        private final long size;
+        private final byte[] buf = new byte[WINDOW_SIZE];
+        private long start = -1;
+        private int length = 0;
+
+        Window(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        boolean ensure(long pos, int n) throws IOException {
+            if (pos + n > size) return false;
+            if (start >= 0 && pos >= start && pos + n <= start + length) return true;
+
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            start = pos;
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, pos + bb.position()) < 0) break;
+            }
+            length = bb.position();
+            return pos + n <= start + length;
+        }
+
+        int index(long pos) {
+            return (int) (pos - start);
+        }
+
+        int available(long pos) {
+            return length - index(pos);
+        }
+    }
+}
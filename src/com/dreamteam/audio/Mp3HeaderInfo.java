@@ -0,0 +1,123 @@
+package com.dreamteam.audio;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Informazioni su un file MP3 ricavate dagli header, senza decodificare l'audio.
+ * <p>
+ * Se il file ha un header Xing/Info o VBRI la durata è esatta; altrimenti viene stimata
+ * dalla dimensione del file e dal bitrate del primo frame (corretta per i file CBR).
+ * </p>
+ */
+public final class Mp3HeaderInfo {
+    public enum BitrateMode { CBR, ABR, VBR }
+
+    private final int sampleRate;
+    private final int channels;
+    private final int samplesPerFrame;
+    private final long frames;
+    private final int bitrate;
+    private final BitrateMode mode;
+    private final int encoderDelay;
+    private final int encoderPadding;
+    private final boolean exact;
+
+    Mp3HeaderInfo(int sampleRate, int channels, int samplesPerFrame, long frames, int bitrate, BitrateMode mode,
+                  int encoderDelay, int encoderPadding, boolean exact) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.samplesPerFrame = samplesPerFrame;
+        this.frames = frames;
+        this.bitrate = bitrate;
+        this.mode = mode;
+        this.encoderDelay = encoderDelay;
+        this.encoderPadding = encoderPadding;
+        this.exact = exact;
+    }
+
+    /** @return La durata della traccia in millisecondi, esclusi ritardo e padding dell'encoder. */
+    public long getDurationMillis() {
+        return sampleRate == 0 ? 0 : getPlayableSamples() * 1000 / sampleRate;
+    }
+
+    /** @return I campioni (per canale) prodotti dal decoder, ritardo e padding compresi. */
+    public long getTotalSamples() {
+        return frames * samplesPerFrame;
+    }
+
+    /** @return I campioni (per canale) effettivamente appartenenti al brano. */
+    public long getPlayableSamples() {
+        return Math.max(0, getTotalSamples() - encoderDelay - encoderPadding);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /** @return Il bitrate medio in bit al secondo. */
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public BitrateMode getBitrateMode() {
+        return mode;
+    }
+
+    /** @return I campioni di silenzio aggiunti dall'encoder all'inizio (dal tag LAME, 0 se assente). */
+    public int getEncoderDelay() {
+        return encoderDelay;
+    }
+
+    /** @return I campioni di silenzio aggiunti dall'encoder alla fine (dal tag LAME, 0 se assente). */
+    public int getEncoderPadding() {
+        return encoderPadding;
+    }
+
+    /** @return true se il numero di frame viene da un header Xing/Info o VBRI, false se è stimato. */
+    public boolean isExact() {
+        return exact;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(sampleRate);
+        out.writeByte(channels);
+        out.writeShort(samplesPerFrame);
+        out.writeLong(frames);
+        out.writeInt(bitrate);
+        out.writeByte(mode.ordinal());
+        out.writeShort(encoderDelay);
+        out.writeShort(encoderPadding);
+        out.writeBoolean(exact);
+    }
+
+    public static Mp3HeaderInfo readFrom(DataInputStream in) throws IOException {
+        int rate = in.readInt();
+        int ch = in.readByte();
+        int spf = in.readShort();
+        long frames = in.readLong();
+        int bitrate = in.readInt();
+        int mode = in.readByte();
+        int delay = in.readShort();
+        int padding = in.readShort();
+        boolean exact = in.readBoolean();
+
+        if (mode < 0 || mode >= BitrateMode.values().length) throw new IOException("Modalità bitrate non valida");
+        return new Mp3HeaderInfo(rate, ch, spf, frames, bitrate, BitrateMode.values()[mode], delay, padding, exact);
+    }
+
+    @Override
+    public String toString() {
+        return mode + " " + bitrate / 1000 + " kbps, " + sampleRate + " Hz, " + getDurationMillis() + " ms"
+                + (exact ? "" : " (stima)");
+    }
+}
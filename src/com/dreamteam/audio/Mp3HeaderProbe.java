@@ -0,0 +1,272 @@
+package com.dreamteam.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lettura veloce delle informazioni di un file MP3 dagli header Xing/Info, VBRI e LAME.
+ * <p>
+ * Legge solo pochi KB all'inizio del file (più gli ultimi 128 byte per riconoscere
+ * un eventuale tag ID3v1), quindi è adatta a calcolare la durata di un'intera libreria.
+ * </p>
+ */
+public final class Mp3HeaderProbe {
+    private static final int PROBE_SIZE = 16 * 1024;
+    private static final int ID3V1_SIZE = 128;
+
+    private Mp3HeaderProbe() {
+    }
+
+    /**
+     * Analizza gli header del file.
+     *
+     * @param file Il file MP3.
+     * @return Le informazioni lette, oppure {@code null} se il file non contiene audio MPEG riconoscibile.
+     * @throws IOException In caso di errore di lettura.
+     */
+    public static Mp3HeaderInfo probe(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            byte[] head = read(channel, 0, 10);
+            long audioStart = MP3FrameHeader.id3v2Size(head, head.length);
+
+            byte[] buf = read(channel, audioStart, PROBE_SIZE);
+            int pos = findFirstFrame(buf);
+            if (pos < 0) return null;
+
+            MP3FrameHeader h = MP3FrameHeader.parse(buf, pos);
+            int sideInfo = sideInfoSize(h);
+
+            Mp3HeaderInfo info = parseXing(buf, pos + 4 + sideInfo, h);
+            if (info == null) info = parseVbri(buf, pos + 36, h);
+            if (info != null) return info;
+
+            // nessun header: si assume un file CBR e si stima la durata dalla dimensione
+            long audioBytes = size - audioStart - pos;
+            byte[] tail = read(channel, Math.max(0, size - ID3V1_SIZE), ID3V1_SIZE);
+            if (tail.length == ID3V1_SIZE && tail[0] == 'T' && tail[1] == 'A' && tail[2] == 'G') {
+                audioBytes -= ID3V1_SIZE;
+            }
+
+            long frames = audioBytes * 8 * h.sampleRate / ((long) h.bitrate * h.samplesPerFrame);
+            return new Mp3HeaderInfo(h.sampleRate, h.channels, h.samplesPerFrame, frames, h.bitrate,
+                                     Mp3HeaderInfo.BitrateMode.CBR, 0, 0, false);
+        }
+    }
+
+    /**
+     * Stima dove inizia il frame che si trova alla frazione indicata della durata, per posizionarsi
+     * quando l'indice dei frame non è ancora pronto. Il tempo viene convertito in byte con la tabella
+     * di seek dell'header Xing, se c'è, altrimenti in modo lineare (esatto per i file CBR). L'offset
+     * viene poi allineato al primo frame valido e riconvertito in tempo con la stessa tabella, così
+     * la posizione restituita è quella del frame effettivamente trovato.
+     *
+     * @param file     Il file MP3.
+     * @param fraction La posizione desiderata, come frazione della durata (da 0 a 1).
+     * @return Il punto trovato, oppure {@code null} se il file non contiene audio MPEG riconoscibile.
+     * @throws IOException In caso di errore di lettura.
+     */
+    static SeekPoint findSeekPoint(File file, double fraction) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            byte[] head = read(channel, 0, 10);
+            long audioStart = MP3FrameHeader.id3v2Size(head, head.length);
+
+            byte[] buf = read(channel, audioStart, PROBE_SIZE);
+            int pos = findFirstFrame(buf);
+            if (pos < 0) return null;
+
+            long first = audioStart + pos;
+            long length = size - first;
+            if (fraction <= 0 || length <= 0) return new SeekPoint(first, 0);
+
+            MP3FrameHeader h = MP3FrameHeader.parse(buf, pos);
+            int[] toc = parseXingToc(buf, pos + 4 + sideInfoSize(h));
+
+            long target = first + (long) (timeToByte(toc, Math.min(1, fraction)) * length);
+            int found = findFirstFrame(read(channel, target, PROBE_SIZE));
+            if (found < 0) return new SeekPoint(first, 0);
+
+            long offset = target + found;
+            return new SeekPoint(offset, byteToTime(toc, (double) (offset - first) / length));
+        }
+    }
+
+    /**
+     * Un punto di partenza per il decoder: l'offset di un frame e la sua posizione nel brano.
+     */
+    static final class SeekPoint {
+        /** L'offset del frame nel file. */
+        final long offset;
+        /** La posizione del frame come frazione della durata, da 0 a 1. */
+        final double fraction;
+
+        SeekPoint(long offset, double fraction) {
+            this.offset = offset;
+            this.fraction = Math.min(1, Math.max(0, fraction));
+        }
+    }
+
+    /**
+     * Legge la tabella di seek dell'header Xing: 100 valori da 0 a 255, dove l'elemento {@code i}
+     * è la posizione in byte (in 256esimi dei dati audio) dell'{@code i}% della durata.
+     *
+     * @return La tabella con in coda il valore 256 (fine dei dati), oppure {@code null} se assente.
+     */
+    private static int[] parseXingToc(byte[] buf, int p) {
+        if (p + 8 > buf.length) return null;
+
+        boolean xing = buf[p] == 'X' && buf[p + 1] == 'i' && buf[p + 2] == 'n' && buf[p + 3] == 'g';
+        boolean info = buf[p] == 'I' && buf[p + 1] == 'n' && buf[p + 2] == 'f' && buf[p + 3] == 'o';
+        if (!xing && !info) return null;
+
+        int flags = readInt(buf, p + 4);
+        int q = p + 8;
+        if ((flags & 0x1) != 0) q += 4; // numero di frame
+        if ((flags & 0x2) != 0) q += 4; // numero di byte
+        if ((flags & 0x4) == 0 || q + 100 > buf.length) return null;
+
+        int[] toc = new int[101];
+        for (int i = 0; i < 100; i++) {
+            toc[i] = buf[q + i] & 0xFF;
+            // la tabella deve essere crescente, altrimenti non è affidabile
+            if (i > 0 && toc[i] < toc[i - 1]) return null;
+        }
+        toc[100] = 256;
+        return toc;
+    }
+
+    /** Converte una frazione della durata in una frazione dei dati audio. */
+    private static double timeToByte(int[] toc, double time) {
+        if (toc == null) return time;
+
+        double percent = time * 100;
+        int i = (int) Math.min(99, percent);
+        return (toc[i] + (toc[i + 1] - toc[i]) * (percent - i)) / 256;
+    }
+
+    /** Converte una frazione dei dati audio in una frazione della durata: l'inversa di {@link #timeToByte}. */
+    private static double byteToTime(int[] toc, double bytes) {
+        if (toc == null) return bytes;
+
+        double value = bytes * 256;
+        int i = 0;
+        while (i < 99 && toc[i + 1] <= value) i++;
+        int span = toc[i + 1] - toc[i];
+        return (i + (span > 0 ? Math.min(1, (value - toc[i]) / span) : 0)) / 100;
+    }
+
+    private static int sideInfoSize(MP3FrameHeader h) {
+        return h.version == MP3FrameHeader.MPEG1 ? (h.channels == 1 ? 17 : 32) : (h.channels == 1 ? 9 : 17);
+    }
+
+    /**
+     * Cerca il primo header di frame seguito da un secondo header coerente.
+     */
+    private static int findFirstFrame(byte[] buf) {
+        for (int i = 0; i + 4 <= buf.length; i++) {
+            MP3FrameHeader h = MP3FrameHeader.parse(buf, i);
+            if (h == null) continue;
+
+            int next = i + h.frameLength;
+            if (next + 4 > buf.length) return i;
+            if (h.sameStream(MP3FrameHeader.parse(buf, next))) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Header Xing (VBR) o Info (CBR), scritto da LAME e dalla maggior parte degli encoder
+     * nel primo frame, subito dopo le side information. Può essere seguito dal tag LAME
+     * con la modalità di codifica e il ritardo/padding dell'encoder.
+     */
+    private static Mp3HeaderInfo parseXing(byte[] buf, int p, MP3FrameHeader h) {
+        if (p + 8 > buf.length) return null;
+
+        boolean xing = buf[p] == 'X' && buf[p + 1] == 'i' && buf[p + 2] == 'n' && buf[p + 3] == 'g';
+        boolean info = buf[p] == 'I' && buf[p + 1] == 'n' && buf[p + 2] == 'f' && buf[p + 3] == 'o';
+        if (!xing && !info) return null;
+
+        int flags = readInt(buf, p + 4);
+        int q = p + 8;
+        long frames = -1;
+        long bytes = -1;
+
+        if ((flags & 0x1) != 0 && q + 4 <= buf.length) {
+            frames = readInt(buf, q) & 0xFFFFFFFFL;
+            q += 4;
+        }
+        if ((flags & 0x2) != 0 && q + 4 <= buf.length) {
+            bytes = readInt(buf, q) & 0xFFFFFFFFL;
+            q += 4;
+        }
+        if ((flags & 0x4) != 0) q += 100; // tabella per il seek
+        if ((flags & 0x8) != 0) q += 4;   // qualità
+
+        if (frames <= 0) return null;
+
+        Mp3HeaderInfo.BitrateMode mode = info ? Mp3HeaderInfo.BitrateMode.CBR : Mp3HeaderInfo.BitrateMode.VBR;
+        int delay = 0;
+        int padding = 0;
+
+        // tag LAME: 9 byte di versione, poi metodo di codifica, ..., ritardo e padding a 12 bit
+        if (q + 24 <= buf.length && isLameTag(buf, q)) {
+            int method = buf[q + 9] & 0x0F;
+            if (method == 1 || method == 8) mode = Mp3HeaderInfo.BitrateMode.CBR;
+            else if (method == 2) mode = Mp3HeaderInfo.BitrateMode.ABR;
+            else if (method >= 3 && method <= 6) mode = Mp3HeaderInfo.BitrateMode.VBR;
+
+            delay = ((buf[q + 21] & 0xFF) << 4) | ((buf[q + 22] & 0xFF) >> 4);
+            padding = ((buf[q + 22] & 0x0F) << 8) | (buf[q + 23] & 0xFF);
+        }
+
+        int bitrate = averageBitrate(bytes, frames, h);
+        return new Mp3HeaderInfo(h.sampleRate, h.channels, h.samplesPerFrame, frames, bitrate, mode, delay, padding, true);
+    }
+
+    /**
+     * Header VBRI, scritto dall'encoder Fraunhofer sempre 32 byte dopo le side information.
+     */
+    private static Mp3HeaderInfo parseVbri(byte[] buf, int p, MP3FrameHeader h) {
+        if (p + 18 > buf.length) return null;
+        if (buf[p] != 'V' || buf[p + 1] != 'B' || buf[p + 2] != 'R' || buf[p + 3] != 'I') return null;
+
+        int delay = ((buf[p + 6] & 0xFF) << 8) | (buf[p + 7] & 0xFF);
+        long bytes = readInt(buf, p + 10) & 0xFFFFFFFFL;
+        long frames = readInt(buf, p + 14) & 0xFFFFFFFFL;
+        if (frames <= 0) return null;
+
+        int bitrate = averageBitrate(bytes, frames, h);
+        return new Mp3HeaderInfo(h.sampleRate, h.channels, h.samplesPerFrame, frames, bitrate,
+                                 Mp3HeaderInfo.BitrateMode.VBR, delay, 0, true);
+    }
+
+    private static boolean isLameTag(byte[] buf, int q) {
+        return (buf[q] == 'L' && buf[q + 1] == 'A' && buf[q + 2] == 'M' && buf[q + 3] == 'E')
+            || (buf[q] == 'L' && buf[q + 1] == 'a' && buf[q + 2] == 'v');
+    }
+
+    private static int averageBitrate(long bytes, long frames, MP3FrameHeader h) {
+        if (bytes <= 0) return h.bitrate;
+        return (int) (bytes * 8 * h.sampleRate / (frames * h.samplesPerFrame));
+    }
+
+    private static int readInt(byte[] buf, int off) {
+        return ((buf[off] & 0xFF) << 24) | ((buf[off + 1] & 0xFF) << 16) | ((buf[off + 2] & 0xFF) << 8) | (buf[off + 3] & 0xFF);
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        long available = Math.max(0, channel.size() - position);
+        ByteBuffer bb = ByteBuffer.allocate((int) Math.min(length, available));
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, position + bb.position()) < 0) break;
+        }
+        return bb.position() == bb.capacity() ? bb.array() : Arrays.copyOf(bb.array(), bb.position());
+    }
+}
@@ -0,0 +1,304 @@
+package com.dreamteam.audio;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+import com.dreamteam.control.Logger;
+import com.dreamteam.data.FrameIndexManager;
+import com.dreamteam.model.Song;
+
+/**
+ * Stadio di uscita del motore: un thread dedicato che svuota il buffer PCM verso il dispositivo audio.
+ * <p>
+ * Lo stadio di decodifica lavora in anticipo rispetto a questo thread, per cui una pausa del GC
+ * o un rallentamento del disco vengono assorbiti dal buffer invece di diventare un'interruzione
+ * udibile. Quando il buffer si svuota mentre si sta riproducendo viene contato un underrun.
+ * </p>
+ * <p>
+ * È questo thread a far avanzare l'orologio di riproduzione, perché è l'unico che sa quali
+ * campioni stanno effettivamente andando al dispositivo, e a pubblicare gli eventi di avanzamento.
+ * </p>
+ */
+final class OutputStage implements Runnable {
+    /** Marcatore di fine riproduzione: i campioni precedenti vanno riprodotti fino in fondo. */
+    static final Object END = new Object();
+    /** Marcatore di chiusura: il dispositivo audio va rilasciato. */
+    static final Object CLOSE = new Object();
+
+    private static final int READ_TIMEOUT_MILLIS = 50;
+    private static final int DURATION_CHECK_CHUNKS = 50;
+    private static final int PROGRESS_INTERVAL_MILLIS = 200;
+
+    private final PcmRingBuffer ring;
+    private final PlaybackClock clock;
+    private final PlaybackEngine engine;
+    private final Supplier<AudioOutput> outputs;
+    private final Thread thread;
+    private int chunkMillis = 20;
+    private short[] chunk = new short[48000 * 2 * chunkMillis / 1000];
+    private volatile boolean running = true;
+    private volatile boolean paused;
+    private volatile AudioOutput device;
+
+    // metriche
+    private volatile long underruns;
+    private volatile long lowestFillMillis;
+    private volatile int sampleRate;
+    private volatile int channels;
+
+    // stato del thread di uscita
+    private Segment segment;
+    private boolean segmentStarted;
+    private boolean starving;
+    private int chunksSinceCheck;
+    private long samplesSinceProgress;
+
+    /**
+     * @param outputs Crea il dispositivo di uscita, ogni volta che serve aprirne uno nuovo.
+     */
+    OutputStage(PcmRingBuffer ring, PlaybackClock clock, PlaybackEngine engine, Supplier<AudioOutput> outputs) {
+        this.ring = ring;
+        this.clock = clock;
+        this.engine = engine;
+        this.outputs = outputs;
+
+        thread = new Thread(this, "AudioOutput");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    // ─────────────── chiamati dal thread del motore ───────────────
+
+    /**
+     * Sospende subito l'uscita: i campioni restano sia nel buffer PCM sia in quello della linea.
+     */
+    void pause() {
+        paused = true;
+        AudioOutput d = device;
+        if (d != null) d.pause();
+    }
+
+    void resume() {
+        paused = false;
+        AudioOutput d = device;
+        if (d != null) d.resume();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Scarta tutto l'audio non ancora riprodotto, sia nel buffer PCM sia nella linea.
+     */
+    void discard() {
+        ring.clear();
+        AudioOutput d = device;
+        if (d != null) d.discard();
+    }
+
+    void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    // ─────────────── thread di uscita ───────────────
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (paused) {
+                    synchronized (this) {
+                        if (paused) wait(READ_TIMEOUT_MILLIS);
+                    }
+                    continue;
+                }
+
+                Object marker = ring.takeMarker();
+                if (marker != null) {
+                    apply(marker);
+                    continue;
+                }
+
+                int max = chunk.length;
+                if (segment != null) {
+                    max = Math.min(max, segment.sampleRate * segment.channels * chunkMillis / 1000);
+                    max -= max % segment.channels;
+                }
+                int n = ring.read(chunk, max, READ_TIMEOUT_MILLIS);
+                if (n == 0) {
+                    // l'attesa dei primi campioni di una traccia non è un underrun
+                    if (segmentStarted && !paused && !starving) {
+                        starving = true;
+                        underruns++;
+                    }
+                    continue;
+                }
+                starving = false;
+
+                write(n);
+            } catch (InterruptedException e) {
+                Logger.writeLog("AudioOutput: thread interrotto");
+            } catch (Exception e) {
+                Logger.writeLog("AudioOutput: errore sul dispositivo audio - " + e.getMessage());
+                closeDevice();
+                segment = null;
+                segmentStarted = false;
+                engine.outputFailed();
+            }
+        }
+
+        closeDevice();
+    }
+
+    private void write(int n) {
+        int generation = ring.readGeneration();
+        AudioOutput d = device;
+        if (segment == null || d == null) return;
+
+        d.write(chunk, 0, n);
+        segmentStarted = true;
+
+        // se nel frattempo c'è stato un seek, quanto appena scritto è già superato
+        if (ring.generation() != generation) {
+            d.discard();
+            return;
+        }
+
+        clock.advance(n / segment.channels, segment.sampleRate);
+
+        samplesSinceProgress += n / segment.channels;
+        if (samplesSinceProgress * 1000 >= (long) segment.sampleRate * PROGRESS_INTERVAL_MILLIS) {
+            samplesSinceProgress = 0;
+            publishProgress();
+        }
+
+        long fill = (long) ring.size() / segment.channels * 1000 / segment.sampleRate;
+        if (fill < lowestFillMillis) lowestFillMillis = fill;
+
+        if (segment.totalSamples == 0 && ++chunksSinceCheck >= DURATION_CHECK_CHUNKS) {
+            chunksSinceCheck = 0;
+            MP3FrameIndex index = FrameIndexManager.getCachedIndex(segment.file);
+            if (index != null) {
+                segment = segment.withTotalSamples(index.getTotalSamples());
+                clock.setTotalSamples(segment.totalSamples);
+            }
+        }
+    }
+
+    private void apply(Object marker) throws Exception {
+        if (marker instanceof Segment) {
+            Segment next = (Segment) marker;
+            AudioOutput d = device;
+
+            if (d == null || !d.hasFormat(next.sampleRate, next.channels)) {
+                if (d != null) d.drain();
+                closeDevice();
+
+                d = outputs.get();
+                if (paused) d.pause();
+                d.open(next.sampleRate, next.channels);
+
+                // il blocco di lettura segue la dimensione di scrittura del dispositivo (48 kHz stereo al massimo)
+                chunkMillis = d.getWriteChunkMillis();
+                int size = 48000 * 2 * chunkMillis / 1000;
+                if (chunk.length < size) chunk = new short[size];
+                device = d;
+            }
+
+            segment = next;
+            segmentStarted = false;
+            sampleRate = next.sampleRate;
+            channels = next.channels;
+            starving = false;
+            chunksSinceCheck = 0;
+            lowestFillMillis = Long.MAX_VALUE;
+            clock.reset(next.sampleRate, next.startSamples, next.totalSamples);
+
+            if (next.spliced) engine.outputTrackChanged(next.song);
+            samplesSinceProgress = 0;
+            publishProgress();
+        } else if (marker == END) {
+            int generation = ring.readGeneration();
+
+            // in pausa la linea è ferma: la fine arriva solo dopo la ripresa
+            synchronized (this) {
+                while (paused && running && ring.generation() == generation) wait(READ_TIMEOUT_MILLIS);
+            }
+
+            AudioOutput d = device;
+            if (d != null) d.drain();
+
+            if (segment != null) {
+                Logger.writeLog("AudioOutput: fine di \"" + segment.song.getTitle() + "\", underrun totali: " + underruns);
+            }
+            segment = null;
+            segmentStarted = false;
+            engine.outputFinished(generation);
+        } else if (marker == CLOSE) {
+            segment = null;
+            segmentStarted = false;
+            closeDevice();
+            clock.reset(0, 0, 0);
+        }
+    }
+
+    private void publishProgress() {
+        engine.outputProgress(segment.song, clock.getPositionMillis(), clock.getDurationMillis());
+    }
+
+    private void closeDevice() {
+        AudioOutput d = device;
+        device = null;
+        if (d != null) d.close();
+    }
+
+    // ─────────────── metriche ───────────────
+
+    long getUnderrunCount() {
+        return underruns;
+    }
+
+    /** @return L'audio decodificato in attesa nel buffer, in millisecondi. */
+    long getBufferedMillis() {
+        int rate = sampleRate;
+        int ch = channels;
+        return rate == 0 || ch == 0 ? 0 : (long) ring.size() / ch * 1000 / rate;
+    }
+
+    /** @return Il livello minimo raggiunto dal buffer durante la traccia corrente, in millisecondi. */
+    long getLowestBufferedMillis() {
+        long lowest = lowestFillMillis;
+        return lowest == Long.MAX_VALUE ? getBufferedMillis() : lowest;
+    }
+
+    /**
+     * Inizio di un tratto di audio omogeneo nel buffer: una traccia (o la sua ripresa dopo un seek)
+     * con il proprio formato e la propria posizione di partenza.
+     */
+    static final class Segment {
+        final Song song;
+        final File file;
+        final int sampleRate;
+        final int channels;
+        final long startSamples;
+        final long totalSamples;
+        final boolean spliced;
+
+        Segment(Song song, File file, int sampleRate, int channels, long startSamples, long totalSamples,
+                boolean spliced) {
+            this.song = song;
+            this.file = file;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.startSamples = startSamples;
+            this.totalSamples = totalSamples;
+            this.spliced = spliced;
+        }
+
+        Segment withTotalSamples(long total) {
+            return new Segment(song, file, sampleRate, channels, startSamples, total, spliced);
+        }
+    }
+}
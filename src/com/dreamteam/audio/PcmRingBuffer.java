@@ -0,0 +1,143 @@
+package com.dreamteam.audio;
+
+import java.util.ArrayDeque;
+
+/**
+ * Buffer circolare di campioni PCM tra lo stadio di decodifica e quello di uscita.
+ * <p>
+ * L'array viene allocato una sola volta. Un solo thread scrive (il decoder) e un solo thread
+ * legge (l'uscita audio). Oltre ai campioni, il buffer trasporta dei marcatori posizionati
+ * nel flusso (inizio di una traccia, fine della riproduzione): una lettura non oltrepassa mai
+ * il marcatore successivo, così il lettore lo applica esattamente nel punto in cui è stato scritto.
+ * </p>
+ */
+final class PcmRingBuffer {
+    private final short[] data;
+    private final ArrayDeque<Marker> markers = new ArrayDeque<>();
+    private long writePos;
+    private long readPos;
+    private int generation;
+    private int readGeneration;
+
+    /**
+     * @param capacity La capacità in campioni (tutti i canali).
+     */
+    PcmRingBuffer(int capacity) {
+        this.data = new short[capacity];
+    }
+
+    int capacity() {
+        return data.length;
+    }
+
+    /** @return I campioni scritti e non ancora letti. */
+    synchronized int size() {
+        return (int) (writePos - readPos);
+    }
+
+    /** @return Lo spazio libero in campioni. */
+    synchronized int free() {
+        return data.length - (int) (writePos - readPos);
+    }
+
+    /**
+     * Scrive quanti più campioni possibile senza bloccare, senza mai spezzare un frame PCM
+     * (un campione per ciascun canale).
+     *
+     * @param channels Il numero di canali dei campioni.
+     * @return Il numero di campioni effettivamente scritti.
+     */
+    synchronized int write(short[] src, int off, int len, int channels) {
+        int n = Math.min(len, data.length - (int) (writePos - readPos));
+        n -= n % channels;
+        if (n <= 0) return 0;
+
+        int start = (int) (writePos % data.length);
+        int first = Math.min(n, data.length - start);
+        System.arraycopy(src, off, data, start, first);
+        System.arraycopy(src, off + first, data, 0, n - first);
+
+        writePos += n;
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Inserisce un marcatore nella posizione di scrittura corrente.
+     */
+    synchronized void mark(Object tag) {
+        markers.add(new Marker(writePos, tag));
+        notifyAll();
+    }
+
+    /**
+     * Restituisce il marcatore raggiunto dal lettore, se presente.
+     *
+     * @return Il marcatore da applicare prima di leggere altri campioni, oppure {@code null}.
+     */
+    synchronized Object takeMarker() {
+        Marker m = markers.peek();
+        if (m == null || m.position > readPos) return null;
+        markers.poll();
+        readGeneration = generation;
+        return m.tag;
+    }
+
+    /**
+     * Legge fino a {@code max} campioni, fermandosi al marcatore successivo.
+     * Lo scrittore non spezza mai i frame PCM, quindi basta che {@code max} sia un multiplo
+     * del numero di canali perché anche la lettura resti allineata.
+     * Se il buffer è vuoto attende al più {@code timeoutMillis}.
+     *
+     * @return Il numero di campioni letti (0 se il buffer è rimasto vuoto o c'è un marcatore da applicare).
+     */
+    synchronized int read(short[] dst, int max, long timeoutMillis) throws InterruptedException {
+        if (readPos == writePos && markers.isEmpty()) wait(timeoutMillis);
+
+        long limit = writePos;
+        Marker m = markers.peek();
+        if (m != null && m.position < limit) limit = m.position;
+
+        int n = (int) Math.min(max, limit - readPos);
+        readGeneration = generation;
+        if (n <= 0) return 0;
+
+        int start = (int) (readPos % data.length);
+        int first = Math.min(n, data.length - start);
+        System.arraycopy(data, start, dst, 0, first);
+        System.arraycopy(data, 0, dst, first, n - first);
+
+        readPos += n;
+        return n;
+    }
+
+    /**
+     * Scarta tutti i campioni e i marcatori non ancora letti (seek, stop, nuova traccia).
+     */
+    synchronized void clear() {
+        readPos = writePos;
+        markers.clear();
+        generation++;
+        notifyAll();
+    }
+
+    /** @return Il contatore degli svuotamenti, incrementato a ogni {@link #clear()}. */
+    synchronized int generation() {
+        return generation;
+    }
+
+    /** @return La generazione a cui appartenevano gli ultimi campioni o l'ultimo marcatore letti. */
+    synchronized int readGeneration() {
+        return readGeneration;
+    }
+
+    private static final class Marker {
+        final long position;
+        final Object tag;
+
+        Marker(long position, Object tag) {
+            this.position = position;
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.dreamteam.audio;
+
+/**
+ * Orologio di riproduzione basato sui campioni decodificati.
+ * <p>
+ * Viene aggiornato solo dal thread di uscita ("AudioOutput", vedi {@link OutputStage}), a ogni
+ * blocco scritto sul dispositivo, con il numero esatto di campioni (per canale) appena riprodotti.
+ * Avere un unico scrittore è ciò che rende corretto il contatore di sequenza descritto sotto.
+ * Le letture non usano lock né chiamate di sistema: l'interfaccia e le statistiche possono
+ * interrogarlo con la frequenza che preferiscono.
+ * </p>
+ * <p>
+ * Per leggere in modo coerente posizione, durata e frequenza (che cambiano insieme a ogni
+ * cambio traccia) si usa un contatore di sequenza: lo scrittore lo rende dispari durante
+ * l'aggiornamento e il lettore ripete la lettura se lo trova dispari o cambiato.
+ * </p>
+ */
+public final class PlaybackClock {
+    private volatile int sequence;
+    private volatile long samples;
+    private volatile long totalSamples;
+    private volatile int sampleRate;
+
+    /**
+     * Reimposta l'orologio per una nuova traccia o dopo un seek.
+     *
+     * @param sampleRate   La frequenza di campionamento, 0 se non ancora nota.
+     * @param startSamples I campioni che precedono il punto di partenza.
+     * @param totalSamples I campioni totali della traccia, 0 se non ancora noti.
+     */
+    void reset(int sampleRate, long startSamples, long totalSamples) {
+        int s = sequence;
+        sequence = s + 1;
+        this.sampleRate = sampleRate;
+        this.samples = startSamples;
+        this.totalSamples = totalSamples;
+        sequence = s + 2;
+    }
+
+    /**
+     * Fa avanzare l'orologio dei campioni appena scritti sul dispositivo.
+     *
+     * @param count      Campioni per canale contenuti nel blocco.
+     * @param sampleRate La frequenza di uscita del decoder.
+     */
+    void advance(int count, int sampleRate) {
+        int s = sequence;
+        sequence = s + 1;
+        this.sampleRate = sampleRate;
+        this.samples += count;
+        sequence = s + 2;
+    }
+
+    /**
+     * Imposta la durata della traccia quando diventa disponibile (ad esempio a indice costruito).
+     */
+    void setTotalSamples(long totalSamples) {
+        int s = sequence;
+        sequence = s + 1;
+        this.totalSamples = totalSamples;
+        sequence = s + 2;
+    }
+
+    /** @return La posizione corrente in millisecondi. */
+    public long getPositionMillis() {
+        while (true) {
+            int s = sequence;
+            long n = samples;
+            int rate = sampleRate;
+            if ((s & 1) == 0 && s == sequence) return rate == 0 ? 0 : n * 1000 / rate;
+            Thread.onSpinWait();
+        }
+    }
+
+    /** @return La durata della traccia in millisecondi, 0 se non ancora nota. */
+    public long getDurationMillis() {
+        while (true) {
+            int s = sequence;
+            long total = totalSamples;
+            int rate = sampleRate;
+            if ((s & 1) == 0 && s == sequence) return rate == 0 ? 0 : total * 1000 / rate;
+            Thread.onSpinWait();
+        }
+    }
+
+    /** @return La percentuale di traccia già riprodotta (0–100), 0 se la durata non è nota. */
+    public int getPercentage() {
+        return getProgress(100);
+    }
+
+    /**
+     * Restituisce la frazione di traccia già riprodotta con la risoluzione richiesta,
+     * ad esempio in millesimi per uno slider largo. Non alloca nulla.
+     *
+     * @param scale Il valore che corrisponde alla traccia intera.
+     * @return Un valore tra 0 e {@code scale}, 0 se la durata non è nota.
+     */
+    public int getProgress(int scale) {
+        while (true) {
+            int s = sequence;
+            long n = samples;
+            long total = totalSamples;
+            if ((s & 1) == 0 && s == sequence) return total <= 0 ? 0 : (int) Math.min(scale, n * scale / total);
+            Thread.onSpinWait();
+        }
+    }
+
+    /** @return I campioni (per canale) riprodotti dall'inizio della traccia. */
+    public long getPositionSamples() {
+        while (true) {
+            int s = sequence;
+            long n = samples;
+            if ((s & 1) == 0 && s == sequence) return n;
+            Thread.onSpinWait();
+        }
+    }
+
+    /** @return I campioni totali (per canale) della traccia, 0 se non ancora noti. */
+    public long getTotalSamples() {
+        while (true) {
+            int s = sequence;
+            long total = totalSamples;
+            if ((s & 1) == 0 && s == sequence) return total;
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,796 @@
+package com.dreamteam.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.dreamteam.control.Logger;
+import com.dreamteam.data.ConfigManager;
+import com.dreamteam.data.FrameIndexManager;
+import com.dreamteam.data.TrackInfoManager;
+import com.dreamteam.model.Song;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+/**
+ * Motore di riproduzione audio.
+ * <p>
+ * Un unico thread di lunga durata possiede il decoder e consuma una coda limitata di comandi
+ * (PLAY, PAUSE, RESUME, SEEK, STOP). I comandi vengono quindi eseguiti in ordine, uno alla volta,
+ * e chi li invia (tipicamente l'EDT) non resta mai bloccato. Tra un frame e l'altro il thread
+ * controlla la coda, per cui la latenza di un comando è al più la decodifica di un frame.
+ * </p>
+ * <p>
+ * Decodifica e uscita audio sono separate: questo thread scrive i campioni in un buffer PCM
+ * circolare, mantenendo un anticipo configurabile ({@code audio.lookahead.ms}), e un secondo
+ * thread ({@link OutputStage}) lo svuota verso il dispositivo audio. Il dispositivo è un
+ * {@link AudioOutput}: per default una linea javax.sound configurata da {@link AudioOutputSettings}.
+ * </p>
+ * <p>
+ * La pausa non chiude nulla: flusso, bitstream e decoder restano aperti e l'uscita audio
+ * viene solo sospesa, per cui la ripresa è immediata e riparte dal campione esatto.
+ * </p>
+ * <p>
+ * Il motore può anche ricevere in anticipo la traccia successiva: la apre e ne decodifica
+ * i primi frame, così a fine brano i suoi campioni seguono subito quelli della traccia corrente.
+ * </p>
+ * <p>
+ * Il motore non dipende dall'interfaccia grafica: riceve comandi, risponde alle interrogazioni
+ * sullo stato e pubblica i propri eventi sul {@link PlaybackEventBus}, per cui può funzionare
+ * anche senza finestra (riga di comando, server, test di carico).
+ * </p>
+ */
+public class PlaybackEngine implements Runnable {
+    public enum State { STOPPED, PLAYING, PAUSED }
+
+    private enum CommandType { PLAY, PAUSE, RESUME, SEEK, STOP, PRELOAD, FINISHED, FAILED }
+
+    private static final int QUEUE_CAPACITY = 32;
+    private static final int PRELOAD_FRAMES = 8;
+    /** Campioni di un frame MPEG-1 Layer III stereo: il frame più grande che il decoder può produrre. */
+    private static final int MAX_FRAME_SAMPLES = 1152 * 2;
+    private static final int MAX_SAMPLE_RATE = 48000;
+    private static final long BUFFER_WAIT_MILLIS = 5;
+
+    private final BlockingQueue<Command> commands = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private volatile boolean running;
+
+    private volatile State state = State.STOPPED;
+    // ultimo comando inviato: numero di sequenza << 1 | 1 se porta in riproduzione
+    private final AtomicLong request = new AtomicLong();
+    // numero di sequenza dell'ultimo comando eseguito quando il motore si è fermato da solo
+    private volatile long idleAfter;
+    private long handledRequest;  // solo thread del motore
+    private final PlaybackEventBus events = new PlaybackEventBus();
+    private final PlaybackClock clock = new PlaybackClock();
+    private final int lookaheadMillis;
+    private final PcmRingBuffer ring;
+    private final OutputStage output;
+
+    // statistiche sulla latenza dei comandi, scritte solo dal thread del motore
+    private volatile long lastLatencyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile long handledCommands;
+    private volatile long totalLatencyNanos;
+
+    // stato del decoder: usato solo dal thread del motore
+    private Song song;
+    private File file;
+    private InputStream input;
+    private Bitstream bitstream;
+    private Decoder decoder;
+    private MP3FrameIndex index;
+    private boolean decoding;
+    private NextTrack next;
+
+    // inizio del tratto corrente, segnalato all'uscita insieme al primo frame decodificato
+    private boolean segmentPending;
+    private long segmentStartSamples;
+
+    // campioni decodificati che non sono ancora entrati nel buffer
+    private short[] pending;
+    private int pendingOffset;
+    private int pendingLength;
+    private int pendingChannels;
+
+    /**
+     * Crea il motore con l'uscita javax.sound e i parametri letti dal file di configurazione.
+     */
+    public PlaybackEngine() {
+        this(createDefaultOutputs());
+    }
+
+    /**
+     * Crea il motore e avvia i suoi thread.
+     *
+     * @param outputs Crea il dispositivo di uscita audio ogni volta che ne serve uno nuovo
+     *                (alla prima traccia e a ogni cambio di formato).
+     */
+    public PlaybackEngine(Supplier<AudioOutput> outputs) {
+        lookaheadMillis = Math.max(50, ConfigManager.loadLookaheadMillis());
+
+        int capacity = (int) ((long) MAX_SAMPLE_RATE * 2 * lookaheadMillis / 1000);
+        ring = new PcmRingBuffer(Math.max(capacity, MAX_FRAME_SAMPLES * 2) & ~1);
+        output = new OutputStage(ring, clock, this, outputs);
+
+        running = true;
+        thread = new Thread(this, "AudioEngine");
+        thread.setDaemon(true);
+        thread.start();
+
+        Logger.writeLog("AudioEngine: buffer PCM di " + ring.capacity() + " campioni (" + lookaheadMillis + " ms)");
+    }
+
+    private static Supplier<AudioOutput> createDefaultOutputs() {
+        AudioOutputSettings settings = AudioOutputSettings.load();
+        Logger.writeLog("AudioEngine: uscita javax.sound, profilo " + settings);
+        return () -> new JavaSoundOutput(settings);
+    }
+
+    // ─────────────── comandi (thread-safe, non bloccanti) ───────────────
+
+    /** Avvia la riproduzione della canzone dall'inizio. */
+    public void play(Song song) {
+        submit(new Command(CommandType.PLAY, song, 0, 0), true);
+    }
+
+    /** Mette in pausa la riproduzione corrente. */
+    public void pause() {
+        submit(new Command(CommandType.PAUSE, null, 0, 0), false);
+    }
+
+    /** Riprende la canzone dal punto esatto in cui era stata messa in pausa. */
+    public void resume() {
+        submit(new Command(CommandType.RESUME, null, 0, 0), true);
+    }
+
+    /** Salta a una percentuale della durata della canzone e ne avvia la riproduzione. */
+    public void seekToPercentage(Song song, int percentage) {
+        seekToFraction(song, percentage, 100);
+    }
+
+    /**
+     * Salta alla frazione {@code value / scale} della durata della canzone e ne avvia la riproduzione,
+     * ad esempio alla posizione di uno slider con una risoluzione più fine della percentuale.
+     */
+    public void seekToFraction(Song song, int value, int scale) {
+        submit(new Command(CommandType.SEEK, song, value, scale), true);
+    }
+
+    /** Salta alla posizione indicata in millisecondi e ne avvia la riproduzione. */
+    public void seekToMillis(Song song, long millis) {
+        submit(new Command(CommandType.SEEK, song, millis, 0), true);
+    }
+
+    /** Ferma la riproduzione e rilascia il dispositivo audio. */
+    public void stop() {
+        submit(new Command(CommandType.STOP, null, 0, 0), false);
+    }
+
+    /**
+     * Comunica al motore la traccia che seguirà quella corrente, così che possa prepararla
+     * in anticipo e passarvi senza interruzioni. Una nuova chiamata sostituisce la precedente.
+     *
+     * @param song La traccia successiva, oppure {@code null} per annullare il precaricamento.
+     */
+    public void preloadNext(Song song) {
+        enqueue(new Command(CommandType.PRELOAD, song, 0, 0));
+    }
+
+    /**
+     * Restituisce il bus su cui il motore pubblica inizio e fine delle tracce, avanzamento,
+     * cambi di stato ed errori.
+     */
+    public PlaybackEventBus getEvents() {
+        return events;
+    }
+
+    /**
+     * Ferma definitivamente i thread del motore.
+     */
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+        output.shutdown();
+    }
+
+    /**
+     * Accoda un comando dell'utente senza mai bloccare il chiamante. Il comando riceve un numero
+     * di sequenza, registrato insieme alla sua intenzione (riprodurre o no) prima di entrare in coda,
+     * per cui {@link #isActive()} lo riflette anche se il motore lo esegue subito.
+     *
+     * @param activates true se il comando porta il motore in riproduzione.
+     */
+    private void submit(Command cmd, boolean activates) {
+        long ticket = request.updateAndGet(v -> ((v >>> 1) + 1) << 1 | (activates ? 1 : 0));
+        cmd.sequence = ticket >>> 1;
+        enqueue(cmd);
+    }
+
+    /**
+     * Accoda un comando senza bloccare. Se la coda è piena si tolgono prima i seek in attesa,
+     * superati comunque da quelli successivi, e poi gli altri comandi dell'utente, resi superati
+     * dal nuovo. Precaricamento, fine traccia ed errori dell'uscita non vengono mai scartati.
+     */
+    private void enqueue(Command cmd) {
+        if (commands.offer(cmd)) return;
+
+        Logger.writeLog("AudioEngine: coda comandi piena, scarto i seek in attesa");
+        commands.removeIf(c -> c.type == CommandType.SEEK);
+        if (commands.offer(cmd)) return;
+
+        Logger.writeLog("AudioEngine: coda comandi piena, scarto i comandi dell'utente in attesa");
+        commands.removeIf(c -> c.sequence > 0);
+        if (!commands.offer(cmd)) {
+            Logger.writeLog("AudioEngine: coda comandi piena, comando " + cmd.type + " perso");
+        }
+    }
+
+    // ─────────────── notifiche dal thread di uscita ───────────────
+
+    /**
+     * L'uscita ha riprodotto tutto l'audio fino al marcatore di fine.
+     *
+     * @param generation La generazione del buffer a cui apparteneva il marcatore.
+     */
+    void outputFinished(int generation) {
+        enqueue(new Command(CommandType.FINISHED, null, generation, 0));
+    }
+
+    /** Il dispositivo audio ha smesso di funzionare. */
+    void outputFailed() {
+        enqueue(new Command(CommandType.FAILED, null, 0, 0));
+    }
+
+    /** L'uscita ha iniziato a riprodurre la traccia precaricata. */
+    void outputTrackChanged(Song started) {
+        Logger.writeLog("AudioEngine: passaggio senza pause a \"" + started.getTitle() + "\"");
+
+        events.publish(new PlaybackEvent.TrackStarted(started, true));
+    }
+
+    /** L'uscita ha riprodotto un altro tratto della traccia. */
+    void outputProgress(Song playing, long positionMillis, long durationMillis) {
+        events.publish(new PlaybackEvent.Progress(playing, positionMillis, durationMillis));
+    }
+
+    // ─────────────── thread del motore ───────────────
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Command cmd;
+                if (state == State.PLAYING && decoding) {
+                    // finché c'è spazio nel buffer si decodifica, altrimenti si attende un comando o lo svuotamento
+                    cmd = canDecode() ? commands.poll() : commands.poll(BUFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } else {
+                    cmd = commands.take();
+                }
+
+                if (cmd != null) {
+                    handle(cmd);
+                    continue;
+                }
+
+                if (canDecode()) produce();
+            } catch (InterruptedException e) {
+                Logger.writeLog("AudioEngine: thread interrotto");
+            } catch (Exception e) {
+                Logger.writeLog("AudioEngine: errore durante la riproduzione - " + e.getMessage());
+                closeDecoder();
+                output.discard();
+                ring.mark(OutputStage.CLOSE);
+                setState(State.STOPPED);
+                goIdle();
+                fail(String.valueOf(e.getMessage()));
+            }
+        }
+
+        closeDecoder();
+        Logger.writeLog("AudioEngine: thread terminato");
+    }
+
+    private void handle(Command cmd) throws IOException, JavaLayerException {
+        if (cmd.sequence > 0) handledRequest = cmd.sequence;
+
+        switch (cmd.type) {
+            case PLAY:
+                closeNext();
+                if (openTrack(cmd.song, 0)) events.publish(new PlaybackEvent.TrackStarted(cmd.song, false));
+                break;
+
+            case PAUSE:
+                if (state == State.PLAYING) {
+                    output.pause();
+                    setState(State.PAUSED);
+                }
+                break;
+
+            case RESUME:
+                if (state == State.PAUSED) {
+                    output.resume();
+                    setState(State.PLAYING);
+                } else if (state == State.STOPPED) {
+                    goIdle();
+                }
+                break;
+
+            case SEEK:
+                // una serie di seek ravvicinati (trascinamento dello slider): conta solo l'ultimo
+                Command next = commands.peek();
+                if (next != null && next.type == CommandType.SEEK) return;
+                if (cmd.song == null) return;
+
+                long millis = cmd.scale > 0 ? durationMillis(new File(cmd.song.getPath())) * cmd.position / cmd.scale : cmd.position;
+                openTrack(cmd.song, millis);
+                break;
+
+            case STOP:
+                closeDecoder();
+                closeNext();
+                output.discard();
+                ring.mark(OutputStage.CLOSE);
+                output.resume();
+                setState(State.STOPPED);
+                break;
+
+            case PRELOAD:
+                closeNext();
+                if (cmd.song != null) prepareNext(cmd.song);
+                break;
+
+            case FINISHED:
+                // ignorato se nel frattempo è partita un'altra traccia o c'è stato un seek
+                if (cmd.position == ring.generation() && state != State.STOPPED && !decoding) {
+                    endOfTrack();
+                }
+                return;
+
+            case FAILED:
+                closeDecoder();
+                output.discard();
+                setState(State.STOPPED);
+                goIdle();
+                fail("dispositivo audio non disponibile");
+                return;
+        }
+
+        recordLatency(cmd);
+    }
+
+    /**
+     * Apre la canzone e posiziona il flusso all'inizio del frame che contiene la posizione richiesta.
+     * L'audio ancora nel buffer appartiene alla posizione precedente e viene scartato.
+     * <p>
+     * Il file non viene mai indicizzato su questo thread: se l'indice dei frame non è ancora pronto
+     * viene costruito in background e intanto la posizione è stimata con la tabella di seek dell'header
+     * Xing (o in modo lineare, per i file CBR) e allineata al primo frame valido; l'orologio parte dalla
+     * posizione del frame trovato.
+     * </p>
+     *
+     * @return false se il file non esiste.
+     */
+    private boolean openTrack(Song target, long millis) throws IOException, JavaLayerException {
+        closeDecoder();
+        output.discard();
+
+        File targetFile = new File(target.getPath());
+        if (!targetFile.exists()) {
+            Logger.writeLog("AudioEngine: file non trovato - " + targetFile.getAbsolutePath());
+            ring.mark(OutputStage.CLOSE);
+            setState(State.STOPPED);
+            goIdle();
+            song = target;
+            fail("file non trovato - " + targetFile.getPath());
+            return false;
+        }
+
+        song = target;
+        file = targetFile;
+
+        index = FrameIndexManager.getCachedIndex(file);
+        if (index == null) FrameIndexManager.preload(file);
+
+        long offset = 0;
+        segmentStartSamples = 0;
+        if (millis > 0 && index != null) {
+            int frame = index.findFrame(millis);
+            offset = index.getFrameOffset(frame);
+            segmentStartSamples = index.getFrameSamples(frame);
+        } else if (millis > 0) {
+            Mp3HeaderInfo info = TrackInfoManager.getInfo(file);
+            if (info != null && info.getFrameCount() > 0) {
+                long frames = info.getFrameCount();
+                double fraction = (double) millis * info.getSampleRate() / 1000 / info.getTotalSamples();
+                Mp3HeaderProbe.SeekPoint point = Mp3HeaderProbe.findSeekPoint(file, fraction);
+                if (point != null) {
+                    long frame = Math.min(frames - 1, Math.round(point.fraction * frames));
+                    offset = point.offset;
+                    segmentStartSamples = info.getTotalSamples() / frames * frame;
+                }
+            }
+        }
+
+        input = AudioSources.open(file, offset);
+        bitstream = new Bitstream(input);
+        decoder = new Decoder();
+
+        segmentPending = true;
+        decoding = true;
+
+        output.resume();
+        setState(State.PLAYING);
+        Logger.writeLog("AudioEngine: riproduzione di \"" + song.getTitle() + "\" da " + millis + " ms" + (millis > 0 && index == null ? " (posizione stimata)" : ""));
+        return true;
+    }
+
+    private boolean canDecode() {
+        return pendingLength > 0 ? ring.free() > 0 : ring.free() >= MAX_FRAME_SAMPLES;
+    }
+
+    /**
+     * Porta avanti la decodifica di un passo: completa la scrittura dei campioni in sospeso
+     * oppure decodifica un nuovo frame. A fine flusso passa alla traccia precaricata, se c'è,
+     * altrimenti segnala all'uscita la fine della riproduzione.
+     */
+    private void produce() throws JavaLayerException {
+        if (pendingLength > 0) {
+            writePending();
+            return;
+        }
+
+        if (!decodeFrame() && !spliceNext()) {
+            closeDecoder();
+            ring.mark(OutputStage.END);
+        }
+    }
+
+    /**
+     * Decodifica un frame e ne scrive i campioni nel buffer PCM.
+     *
+     * @return false quando il flusso è terminato.
+     */
+    private boolean decodeFrame() throws JavaLayerException {
+        Header header = bitstream.readFrame();
+        if (header == null) return false;
+
+        SampleBuffer output = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+        bitstream.closeFrame();
+
+        if (segmentPending) {
+            ring.mark(new OutputStage.Segment(song, file, decoder.getOutputFrequency(), decoder.getOutputChannels(),
+                                              segmentStartSamples, knownTotalSamples(), false));
+            segmentPending = false;
+        }
+
+        pending = output.getBuffer();
+        pendingOffset = 0;
+        pendingLength = output.getBufferLength();
+        pendingChannels = decoder.getOutputChannels();
+        writePending();
+        return true;
+    }
+
+    private void writePending() {
+        int n = ring.write(pending, pendingOffset, pendingLength, pendingChannels);
+        pendingOffset += n;
+        pendingLength -= n;
+    }
+
+    /**
+     * Apre la traccia successiva e ne decodifica i primi frame in memoria.
+     * Se il file non è leggibile la traccia non viene precaricata, ma quella in riproduzione
+     * prosegue: l'errore emergerà, se persiste, quando la traccia verrà avviata.
+     */
+    private void prepareNext(Song target) {
+        File targetFile = new File(target.getPath());
+        if (!targetFile.exists()) return;
+
+        NextTrack prepared = new NextTrack(target, targetFile);
+        try {
+            prepared.input = AudioSources.open(targetFile, 0);
+            prepared.bitstream = new Bitstream(prepared.input);
+            prepared.decoder = new Decoder();
+
+            for (int i = 0; i < PRELOAD_FRAMES; i++) {
+                Header header = prepared.bitstream.readFrame();
+                if (header == null) break;
+
+                SampleBuffer output = (SampleBuffer) prepared.decoder.decodeFrame(header, prepared.bitstream);
+                prepared.append(output.getBuffer(), output.getBufferLength());
+                prepared.bitstream.closeFrame();
+
+                prepared.frames++;
+            }
+        } catch (IOException | JavaLayerException | RuntimeException e) {
+            Logger.writeLog("AudioEngine: impossibile precaricare \"" + target.getTitle() + "\" - " + e.getMessage());
+            prepared.close();
+            return;
+        }
+
+        if (prepared.frames == 0) {
+            prepared.close();
+            return;
+        }
+
+        FrameIndexManager.preload(targetFile);
+        next = prepared;
+        Logger.writeLog("AudioEngine: precaricata \"" + target.getTitle() + "\" (" + prepared.frames + " frame)");
+    }
+
+    /**
+     * Prosegue la decodifica con la traccia precaricata: i suoi campioni entrano nel buffer
+     * subito dopo quelli della traccia corrente, preceduti da un marcatore che l'uscita
+     * usa per aggiornare l'orologio e avvisare del cambio traccia.
+     *
+     * @return false se non c'è una traccia pronta.
+     */
+    private boolean spliceNext() {
+        if (next == null || decoder == null) return false;
+
+        closeStream();
+
+        NextTrack prepared = next;
+        next = null;
+
+        song = prepared.song;
+        file = prepared.file;
+        input = prepared.input;
+        bitstream = prepared.bitstream;
+        decoder = prepared.decoder;
+        index = FrameIndexManager.getCachedIndex(file);
+
+        ring.mark(new OutputStage.Segment(song, file, decoder.getOutputFrequency(), decoder.getOutputChannels(),
+                                          0, knownTotalSamples(), true));
+        segmentPending = false;
+
+        pending = prepared.pcm;
+        pendingOffset = 0;
+        pendingLength = prepared.pcmLength;
+        pendingChannels = decoder.getOutputChannels();
+        writePending();
+        return true;
+    }
+
+    /**
+     * La durata della traccia in campioni: dall'indice dei frame se è già pronto, altrimenti
+     * dagli header Xing/VBRI (letti in pochi KB), così lo slider funziona fin dal primo istante.
+     */
+    private long knownTotalSamples() {
+        if (index != null) return index.getTotalSamples();
+
+        Mp3HeaderInfo info = TrackInfoManager.getInfo(file);
+        return info != null ? info.getTotalSamples() : 0;
+    }
+
+    /**
+     * La durata della traccia in millisecondi, per convertire la posizione dello slider:
+     * dall'indice se è già in memoria, altrimenti dagli header, senza mai costruire l'indice.
+     */
+    private static long durationMillis(File target) {
+        MP3FrameIndex cached = FrameIndexManager.getCachedIndex(target);
+        if (cached != null) return cached.getDurationMillis();
+
+        Mp3HeaderInfo info = TrackInfoManager.getInfo(target);
+        return info != null && info.getSampleRate() > 0 ? info.getTotalSamples() * 1000 / info.getSampleRate() : 0;
+    }
+
+    private void endOfTrack() {
+        setState(State.STOPPED);
+        goIdle();
+
+        Logger.writeLog("AudioEngine: fine della traccia \"" + (song != null ? song.getTitle() : "") + "\"");
+
+        events.publish(new PlaybackEvent.TrackEnded(song));
+    }
+
+    /**
+     * Il motore si è fermato da solo (fine traccia, errore): non è più attivo, a meno che nel
+     * frattempo non sia stato inviato un comando che non ha ancora eseguito.
+     */
+    private void goIdle() {
+        idleAfter = handledRequest;
+    }
+
+    private void setState(State newState) {
+        if (state == newState) return;
+
+        state = newState;
+        events.publish(new PlaybackEvent.StateChanged(song, newState));
+    }
+
+    private void fail(String message) {
+        events.publish(new PlaybackEvent.Error(song, message));
+    }
+
+    private void closeDecoder() {
+        closeStream();
+        decoder = null;
+        decoding = false;
+        pendingLength = 0;
+    }
+
+    private void closeStream() {
+        if (bitstream != null) {
+            try {
+                bitstream.close();
+            } catch (Exception e) {
+                Logger.writeLog("AudioEngine: " + e.getMessage());
+            }
+            bitstream = null;
+        }
+        if (input != null) {
+            try {
+                input.close();
+            } catch (IOException e) {
+                Logger.writeLog("AudioEngine: " + e.getMessage());
+            }
+            input = null;
+        }
+    }
+
+    private void closeNext() {
+        if (next != null) {
+            next.close();
+            next = null;
+        }
+    }
+
+    /**
+     * Registra la latenza di un comando eseguito; i seek superati da uno successivo non contano.
+     * Eseguito solo dal thread del motore, unico a scrivere le statistiche. Non scrive nel log,
+     * che costa un accesso al disco: il riepilogo viene scritto alla chiusura dell'applicazione.
+     */
+    private void recordLatency(Command cmd) {
+        long latency = System.nanoTime() - cmd.enqueuedAt;
+        lastLatencyNanos = latency;
+        if (latency > maxLatencyNanos) maxLatencyNanos = latency;
+        totalLatencyNanos += latency;
+        handledCommands++;
+    }
+
+    // ─────────────── stato ───────────────
+
+    /**
+     * Indica se il motore sta riproducendo o ha un comando di riproduzione in arrivo.
+     * Il valore cambia subito all'invio del comando, senza attendere il thread del motore:
+     * è vero se l'ultimo comando inviato porta in riproduzione e il motore non si è fermato
+     * da solo dopo averlo eseguito.
+     */
+    public boolean isActive() {
+        long last = request.get();
+        return (last & 1) != 0 && idleAfter < (last >>> 1);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** @return La percentuale di traccia riprodotta, calcolata dall'orologio a campioni. */
+    public int getCurrentPercentage() {
+        return clock.getPercentage();
+    }
+
+    /** @return La posizione corrente nella traccia, in millisecondi. */
+    public long getPositionMillis() {
+        return clock.getPositionMillis();
+    }
+
+    /** @return La durata della traccia corrente in millisecondi, 0 se non ancora nota. */
+    public long getDurationMillis() {
+        return clock.getDurationMillis();
+    }
+
+    /**
+     * Restituisce l'orologio di riproduzione, leggibile da qualsiasi thread senza lock.
+     */
+    public PlaybackClock getClock() {
+        return clock;
+    }
+
+    /** @return L'anticipo di decodifica configurato, in millisecondi. */
+    public int getLookaheadMillis() {
+        return lookaheadMillis;
+    }
+
+    /** @return L'audio già decodificato e in attesa di essere riprodotto, in millisecondi. */
+    public long getBufferedMillis() {
+        return output.getBufferedMillis();
+    }
+
+    /** @return Il livello minimo raggiunto dal buffer durante la traccia corrente, in millisecondi. */
+    public long getLowestBufferedMillis() {
+        return output.getLowestBufferedMillis();
+    }
+
+    /** @return Quante volte l'uscita ha trovato il buffer vuoto durante la riproduzione. */
+    public long getUnderrunCount() {
+        return output.getUnderrunCount();
+    }
+
+    /** @return La latenza (attesa in coda + esecuzione) dell'ultimo comando, in nanosecondi. */
+    public long getLastCommandLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    /** @return La latenza massima osservata da un comando, in nanosecondi. */
+    public long getMaxCommandLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /** @return La latenza media dei comandi eseguiti, in nanosecondi. */
+    public long getAverageCommandLatencyNanos() {
+        long n = handledCommands;
+        return n == 0 ? 0 : totalLatencyNanos / n;
+    }
+
+    /**
+     * Traccia successiva già aperta, con i primi frame decodificati e pronti da scrivere.
+     */
+    private static final class NextTrack {
+        final Song song;
+        final File file;
+        InputStream input;
+        Bitstream bitstream;
+        Decoder decoder;
+        short[] pcm = new short[PRELOAD_FRAMES * MAX_FRAME_SAMPLES];
+        int pcmLength;
+        int frames;
+
+        NextTrack(Song song, File file) {
+            this.song = song;
+            this.file = file;
+        }
+
+        void append(short[] samples, int length) {
+            if (pcmLength + length > pcm.length) {
+                pcm = Arrays.copyOf(pcm, Math.max(pcm.length * 2, pcmLength + length));
+            }
+            System.arraycopy(samples, 0, pcm, pcmLength, length);
+            pcmLength += length;
+        }
+
+        void close() {
+            try {
+                if (bitstream != null) bitstream.close();
+            } catch (Exception e) {
+                Logger.writeLog("AudioEngine: " + e.getMessage());
+            }
+            try {
+                if (input != null) input.close();
+            } catch (Exception e) {
+                Logger.writeLog("AudioEngine: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Command {
+        final CommandType type;
+        final Song song;
+        final long position;
+        // 0 se position è in millisecondi, altrimenti il denominatore della frazione di durata
+        final int scale;
+        final long enqueuedAt;
+        long sequence; // numero di sequenza dei comandi dell'utente, 0 per quelli interni
+
+        Command(CommandType type, Song song, long position, int scale) {
+            this.type = type;
+            this.song = song;
+            this.position = position;
+            this.scale = scale;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.dreamteam.audio;
+
+import com.dreamteam.model.Song;
+
+/**
+ * Evento pubblicato dal motore di riproduzione sul {@link PlaybackEventBus}.
+ * <p>
+ * Gli eventi sono immutabili: lo stesso oggetto viene consegnato a tutti gli iscritti,
+ * anche su thread diversi.
+ * </p>
+ */
+public abstract class PlaybackEvent {
+    private final Song song;
+
+    PlaybackEvent(Song song) {
+        this.song = song;
+    }
+
+    /** @return La canzone a cui si riferisce l'evento, oppure {@code null} se non nota. */
+    public Song getSong() {
+        return song;
+    }
+
+    /**
+     * Indica se, per un iscritto in ritardo, conta solo l'ultimo evento di questo tipo.
+     * Gli eventi coalescenti non ancora consegnati vengono sostituiti dal più recente.
+     */
+    boolean isCoalescing() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + (song != null ? song.getTitle() : "") + "]";
+    }
+
+    /**
+     * Una traccia ha iniziato a suonare: su richiesta (play) oppure da sola, come seguito
+     * senza pause della precedente.
+     */
+    public static final class TrackStarted extends PlaybackEvent {
+        private final boolean automatic;
+
+        TrackStarted(Song song, boolean automatic) {
+            super(song);
+            this.automatic = automatic;
+        }
+
+        /** @return true se il motore è passato da solo alla traccia precaricata. */
+        public boolean isAutomatic() {
+            return automatic;
+        }
+    }
+
+    /**
+     * Avanzamento della riproduzione, pubblicato a intervalli regolari di audio riprodotto
+     * e all'inizio di ogni tratto (nuova traccia o seek).
+     */
+    public static final class Progress extends PlaybackEvent {
+        private final long positionMillis;
+        private final long durationMillis;
+
+        Progress(Song song, long positionMillis, long durationMillis) {
+            super(song);
+            this.positionMillis = positionMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        public long getPositionMillis() {
+            return positionMillis;
+        }
+
+        /** @return La durata della traccia in millisecondi, 0 se non ancora nota. */
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /** @return La percentuale di traccia riprodotta (0–100). */
+        public int getPercentage() {
+            return durationMillis <= 0 ? 0 : (int) Math.min(100, positionMillis * 100 / durationMillis);
+        }
+
+        @Override
+        boolean isCoalescing() {
+            return true;
+        }
+    }
+
+    /**
+     * La traccia è stata riprodotta fino in fondo e non ce n'era un'altra pronta a seguirla.
+     */
+    public static final class TrackEnded extends PlaybackEvent {
+        TrackEnded(Song song) {
+            super(song);
+        }
+    }
+
+    /** Il motore è passato a un nuovo stato. */
+    public static final class StateChanged extends PlaybackEvent {
+        private final PlaybackEngine.State state;
+
+        StateChanged(Song song, PlaybackEngine.State state) {
+            super(song);
+            this.state = state;
+        }
+
+        public PlaybackEngine.State getState() {
+            return state;
+        }
+    }
+
+    /** La riproduzione si è interrotta per un errore. */
+    public static final class Error extends PlaybackEvent {
+        private final String message;
+
+        Error(Song song, String message) {
+            super(song);
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
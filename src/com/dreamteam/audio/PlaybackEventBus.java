@@ -0,0 +1,112 @@
+package com.dreamteam.audio;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.dreamteam.control.Logger;
+
+/**
+ * Bus degli eventi di riproduzione: il motore pubblica, i client si iscrivono per tipo di evento.
+ * <p>
+ * La pubblicazione non prende lock e non attende gli iscritti, per cui può avvenire dai thread
+ * audio: l'elenco degli iscritti è copy-on-write e ogni evento viene passato all'{@link Executor}
+ * scelto dall'iscritto ({@code SwingUtilities::invokeLater} per l'interfaccia, l'esecuzione diretta
+ * per i client senza interfaccia).
+ * </p>
+ * <p>
+ * Gli eventi di avanzamento non si accumulano: se un iscritto non ha ancora ricevuto il precedente,
+ * il nuovo lo sostituisce e gli arriva solo il più recente.
+ * </p>
+ */
+public final class PlaybackEventBus {
+    private static final Executor DIRECT = Runnable::run;
+
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Iscrive un gestore agli eventi del tipo indicato (e dei suoi sottotipi).
+     *
+     * @param type     Il tipo di evento, ad esempio {@code PlaybackEvent.TrackEnded.class}.
+     * @param executor Il thread su cui consegnare gli eventi.
+     * @param handler  Il gestore degli eventi.
+     * @return L'iscrizione, da annullare con {@link Subscription#cancel()}.
+     */
+    public <E extends PlaybackEvent> Subscription<E> subscribe(Class<E> type, Executor executor,
+                                                                Consumer<? super E> handler) {
+        Subscription<E> subscription = new Subscription<>(this, type, executor, handler);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Iscrive un gestore che riceve gli eventi direttamente sul thread che li pubblica.
+     * Il gestore deve essere breve e non bloccare: gira sui thread audio.
+     */
+    public <E extends PlaybackEvent> Subscription<E> subscribe(Class<E> type, Consumer<? super E> handler) {
+        return subscribe(type, DIRECT, handler);
+    }
+
+    /**
+     * Consegna l'evento a tutti gli iscritti interessati.
+     */
+    public void publish(PlaybackEvent event) {
+        for (Subscription<?> s : subscriptions) {
+            if (s.type.isInstance(event)) s.deliver(event);
+        }
+    }
+
+    /**
+     * Iscrizione di un gestore a un tipo di evento.
+     */
+    public static final class Subscription<E extends PlaybackEvent> {
+        private final PlaybackEventBus bus;
+        private final Class<E> type;
+        private final Executor executor;
+        private final Consumer<? super E> handler;
+        // ultimo evento coalescente non ancora consegnato
+        private final AtomicReference<E> latest = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        private Subscription(PlaybackEventBus bus, Class<E> type, Executor executor, Consumer<? super E> handler) {
+            this.bus = bus;
+            this.type = type;
+            this.executor = executor;
+            this.handler = handler;
+        }
+
+        /** Smette di ricevere eventi, compresi quelli già pubblicati e non ancora consegnati. */
+        public void cancel() {
+            cancelled = true;
+            bus.subscriptions.remove(this);
+        }
+
+        private void deliver(PlaybackEvent event) {
+            E e = type.cast(event);
+
+            if (event.isCoalescing()) {
+                // si pianifica una consegna solo se non ce n'è già una in attesa
+                if (latest.getAndSet(e) == null) executor.execute(this::deliverLatest);
+            } else {
+                executor.execute(() -> accept(e));
+            }
+        }
+
+        private void deliverLatest() {
+            E e = latest.getAndSet(null);
+            if (e != null) accept(e);
+        }
+
+        private void accept(E event) {
+            if (cancelled) return;
+
+            try {
+                handler.accept(event);
+            } catch (RuntimeException ex) {
+                Logger.writeLog("PlaybackEventBus: errore nella gestione di " + event + " - " + ex.getMessage());
+            }
+        }
+    }
+}
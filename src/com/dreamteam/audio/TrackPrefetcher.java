@@ -0,0 +1,363 @@
+package com.dreamteam.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dreamteam.control.Logger;
+import com.dreamteam.data.ConfigManager;
+import com.dreamteam.data.TrackInfoManager;
+
+/**
+ * Legge in anticipo in memoria l'inizio delle tracce che probabilmente verranno riprodotte dopo
+ * quella corrente (la testa della coda, il brano successivo, quello da ripetere).
+ * <p>
+ * Per ogni traccia vengono letti il tag ID3v2 e i primi {@code audio.prefetch.seconds} secondi di
+ * audio, stimati dal bitrate noto a {@link TrackInfoManager}. I dati restano in una cache LRU
+ * limitata a {@code audio.prefetch.cache.mb} MB. Quando una traccia parte dall'inizio,
+ * {@link AudioSources} la legge dalla memoria e intanto apre il resto del file in background, per cui
+ * l'avvio non attende il disco (o la cartella di rete). Una lettura già iniziata viene attesa
+ * invece di ripetuta; una ancora in coda no, perché l'avvio dipenderebbe dalla lettura di altre tracce.
+ * </p>
+ * <p>
+ * La percentuale di avvii serviti dalla memoria è disponibile con {@link #getHitRate()}.
+ * </p>
+ */
+public final class TrackPrefetcher {
+    private static final int ASSUMED_BITRATE = 320_000;
+    private static final int ID3_HEADER_SIZE = 10;
+
+    private static final int prefetchSeconds = Math.max(1, ConfigManager.loadPrefetchSeconds());
+    private static final long maxBytes = Math.max(1, ConfigManager.loadPrefetchCacheMegabytes()) * 1024L * 1024L;
+
+    // protetta da se stessa; in ordine di accesso, la prima voce è la meno usata di recente
+    private static final Map<String, CompletableFuture<Prefix>> cache = new LinkedHashMap<>(8, 0.75f, true);
+    private static long cachedBytes;
+
+    // le tracce dell'ultima richiesta, protette da cache: le letture in coda per le altre vengono scartate
+    private static Set<String> wanted = Set.of();
+    // la traccia che il thread di lettura sta leggendo, null se è fermo
+    private static volatile String loading;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "TrackPrefetch");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    // apre il resto dei file serviti dalla memoria, senza accodarsi alle letture anticipate
+    private static final ExecutorService opener = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "TrackPrefetchOpen");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private TrackPrefetcher() {
+    }
+
+    /**
+     * Chiede di leggere in anticipo l'inizio delle tracce indicate, dalla più probabile.
+     * Le letture richieste in precedenza e non ancora iniziate vengono scartate, tranne quelle
+     * delle tracce che compaiono anche in questa richiesta.
+     *
+     * @param files Le tracce, al massimo due o tre.
+     */
+    public static void prefetch(List<File> files) {
+        Set<String> keys = new HashSet<>();
+        for (File file : files) {
+            if (file != null) keys.add(file.getAbsolutePath());
+        }
+        synchronized (cache) {
+            wanted = keys;
+        }
+
+        for (File file : files) {
+            if (file == null) continue;
+
+            String key = file.getAbsolutePath();
+            CompletableFuture<Prefix> future;
+            synchronized (cache) {
+                // una lettura già in coda resta valida: la traccia è ancora tra quelle richieste
+                CompletableFuture<Prefix> cached = cache.get(key);
+                if (cached != null && !cached.isCompletedExceptionally()) continue;
+
+                future = new CompletableFuture<>();
+                cache.put(key, future);
+            }
+
+            reader.execute(() -> {
+                synchronized (cache) {
+                    // una richiesta più recente ha cambiato le tracce probabili: questa non serve più
+                    if (!wanted.contains(key)) {
+                        discard(key, future);
+                        return;
+                    }
+                    loading = key;
+                }
+                try {
+                    load(file, key, future);
+                } finally {
+                    loading = null;
+                }
+            });
+        }
+    }
+
+    /** @return Gli avvii di traccia serviti dalla memoria. */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /** @return Gli avvii di traccia che hanno dovuto leggere dal disco. */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /** @return La frazione (0–1) di avvii di traccia serviti dalla memoria, 0 se non ce ne sono stati. */
+    public static double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /** @return I byte attualmente occupati dalla cache. */
+    public static long getCachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    // ─────────────── uso da AudioSources ───────────────
+
+    /**
+     * Apre una traccia dall'inizio usando i dati letti in anticipo, se presenti e ancora validi,
+     * e conta l'avvio come successo o mancato.
+     *
+     * @return Il flusso, oppure {@code null} se la traccia non è in cache.
+     */
+    static InputStream open(File file) {
+        String key = file.getAbsolutePath();
+        CompletableFuture<Prefix> future;
+        synchronized (cache) {
+            future = cache.get(key);
+        }
+
+        Prefix prefix = null;
+        if (future != null && (future.isDone() || key.equals(loading))) {
+            try {
+                // se la lettura è in corso conviene attenderla piuttosto che ripeterla
+                prefix = future.join();
+            } catch (RuntimeException e) {
+                prefix = null;
+            }
+        } else if (future != null) {
+            // ancora in coda dietro altre letture: la traccia viene letta dal disco e la lettura anticipata non serve più
+            discard(key, future);
+        }
+
+        if (prefix == null || prefix.size != file.length() || prefix.lastModified != file.lastModified()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        if (prefix.data.length >= prefix.size) return new PrefetchedInputStream(prefix.data, null);
+
+        // il resto del file viene aperto subito, mentre il decoder consuma la parte in memoria
+        Prefix p = prefix;
+        CompletableFuture<InputStream> rest = CompletableFuture.supplyAsync(() -> {
+            try {
+                return AudioSources.openFromDisk(file, p.data.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, opener);
+        return new PrefetchedInputStream(prefix.data, rest);
+    }
+
+    // ─────────────── thread di lettura ───────────────
+
+    private static void load(File file, String key, CompletableFuture<Prefix> future) {
+        try {
+            long size = file.length();
+            long modified = file.lastModified();
+
+            byte[] data;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                int length = (int) Math.min(size, id3Size(channel) + audioBytes(file));
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+                    // lettura fino al riempimento
+                }
+                data = buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+            }
+
+            Prefix prefix = new Prefix(data, size, modified);
+            synchronized (cache) {
+                if (cache.get(key) != future) {
+                    // la voce è stata scartata nel frattempo
+                    future.complete(prefix);
+                    return;
+                }
+                cachedBytes += data.length;
+                evict(key);
+            }
+            future.complete(prefix);
+        } catch (IOException | RuntimeException e) {
+            Logger.writeLog("TrackPrefetcher: impossibile leggere " + file.getName() + " - " + e.getMessage());
+            discard(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /** Libera le voci meno usate finché la cache non rientra nel limite, tenendo quella appena letta. */
+    private static void evict(String keep) {
+        Iterator<Map.Entry<String, CompletableFuture<Prefix>>> it = cache.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, CompletableFuture<Prefix>> entry = it.next();
+            if (entry.getKey().equals(keep)) continue;
+
+            Prefix prefix = entry.getValue().getNow(null);
+            if (prefix == null) continue; // lettura ancora in corso
+            cachedBytes -= prefix.data.length;
+            it.remove();
+        }
+    }
+
+    private static void discard(String key, CompletableFuture<Prefix> future) {
+        synchronized (cache) {
+            if (cache.get(key) == future) cache.remove(key);
+        }
+        future.complete(null);
+    }
+
+    /** @return La dimensione del tag ID3v2 all'inizio del file, 0 se assente. */
+    private static long id3Size(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ID3_HEADER_SIZE);
+        channel.read(header, 0);
+        byte[] h = header.array();
+        if (header.position() < ID3_HEADER_SIZE || h[0] != 'I' || h[1] != 'D' || h[2] != '3') return 0;
+
+        // dimensione in formato "syncsafe": 7 bit per byte
+        int size = ((h[6] & 0x7F) << 21) | ((h[7] & 0x7F) << 14) | ((h[8] & 0x7F) << 7) | (h[9] & 0x7F);
+        boolean footer = (h[5] & 0x10) != 0;
+        return ID3_HEADER_SIZE + size + (footer ? ID3_HEADER_SIZE : 0);
+    }
+
+    /** @return I byte di audio corrispondenti ai secondi da leggere in anticipo. */
+    private static long audioBytes(File file) {
+        Mp3HeaderInfo info = TrackInfoManager.getCachedInfo(file);
+        int bitrate = info != null && info.getBitrate() > 0 ? info.getBitrate() : ASSUMED_BITRATE;
+        return (long) bitrate / 8 * prefetchSeconds;
+    }
+
+    private static final class Prefix {
+        final byte[] data;
+        final long size;
+        final long lastModified;
+
+        Prefix(byte[] data, long size, long lastModified) {
+            this.data = data;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Flusso che legge prima i dati in memoria e poi il resto del file, aperto in background.
+     */
+    private static final class PrefetchedInputStream extends InputStream {
+        private final byte[] head;
+        private final CompletableFuture<InputStream> rest;
+        private int position;
+        private InputStream tail;
+
+        PrefetchedInputStream(byte[] head, CompletableFuture<InputStream> rest) {
+            this.head = head;
+            this.rest = rest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position < head.length) return head[position++] & 0xFF;
+            InputStream in = tail();
+            return in != null ? in.read() : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position < head.length) {
+                int n = Math.min(len, head.length - position);
+                System.arraycopy(head, position, b, off, n);
+                position += n;
+                return n;
+            }
+            InputStream in = tail();
+            return in != null ? in.read(b, off, len) : -1;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) return 0;
+            if (position < head.length) {
+                int skipped = (int) Math.min(n, head.length - position);
+                position += skipped;
+                return skipped;
+            }
+            InputStream in = tail();
+            return in != null ? in.skip(n) : 0;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (position < head.length) return head.length - position;
+            return tail != null ? tail.available() : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (tail != null) {
+                tail.close();
+            } else if (rest != null) {
+                rest.thenAccept(in -> {
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {
+                    }
+                });
+            }
+        }
+
+        private InputStream tail() throws IOException {
+            if (tail == null && rest != null) {
+                try {
+                    tail = rest.join();
+                } catch (RuntimeException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof UncheckedIOException u) throw u.getCause();
+                    throw new IOException(cause != null ? cause : e);
+                }
+            }
+            return tail;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.dreamteam.control;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Frame;
@@ -17,21 +18,23 @@ import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
-import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
 
 import javax.swing.AbstractAction;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
 import javax.swing.DropMode;
 import javax.swing.JButton;
@@ -58,10 +61,17 @@ import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
+import com.dreamteam.audio.PlaybackEngine;
+import com.dreamteam.audio.PlaybackEvent;
+import com.dreamteam.audio.PlaybackEventBus;
 import com.dreamteam.data.ConfigManager;
 import com.dreamteam.data.FileManager;
 import com.dreamteam.data.LanguageManager;
+import com.dreamteam.data.PlayCountManager;
+import com.dreamteam.data.PlayHistory;
+import com.dreamteam.data.PlayHistoryManager;
 import com.dreamteam.data.PlaylistDataManager;
+import com.dreamteam.data.QueueJournal;
 import com.dreamteam.languages.Languages;
 import com.dreamteam.model.MP3Player;
 import com.dreamteam.model.Playlist;
@@ -83,15 +93,17 @@ import com.dreamteam.view.Panel;
  *   <li>Gestione delle playlist: creazione, eliminazione, rinomina, importazione/esportazione, modifica.</li>
  *   <li>Gestione della coda di riproduzione personalizzata (FIFO e top insert).</li>
  *   <li>Persistenza delle configurazioni: tema, lingua, modalità di riproduzione, numero ascolti.</li>
- *   <li>Aggiornamento dello slider di avanzamento tramite un thread separato.</li>
+ *   <li>Aggiornamento dello slider di avanzamento, letto dall'orologio di riproduzione a frequenza fissa.</li>
  *   <li>Supporto per comandi da tastiera, drag & drop, e menu contestuali.</li>
  *   <li>Modalità di riproduzione: sequenziale, casuale ponderato, ripeti.</li>
  *   <li>Interfaccia multilingua e supporto per il cambio tema dinamico.</li>
  * </ul>
  * 
  * <h3>Thread:</h3>
- * La classe implementa {@code Runnable} e gestisce in modo asincrono lo stato dello slider
- * di avanzamento brano e la transizione automatica al brano successivo.
+ * Inizio e fine traccia, cambi di stato ed errori arrivano come eventi dal motore di riproduzione
+ * ({@link com.dreamteam.audio.PlaybackEventBus}) e vengono gestiti sull'EDT. Durante la riproduzione
+ * lo slider è aggiornato da un timer Swing ({@link ProgressUpdater}): nessun thread di controllo
+ * resta in attesa o interroga il player.
  * 
  * <h3>Note:</h3>
  * Ogni modifica all'interfaccia utente è eseguita nel thread EDT tramite {@link SwingUtilities#invokeLater}.
@@ -119,20 +131,34 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
     private Playlist playbackPlaylist;
 
     private Panel panel;
+    private final ProgressUpdater progressUpdater;
     
-    private PlaybackManager playbackManager;
-    private final Semaphore playbackSemaphore;
     private Random random;
+    private final FileTaskExecutor fileTasks;
+    private boolean shuffleWeighted;
+    private ShuffleDeck shuffleDeck;
+    private Playlist deckPlaylist;
+    private int deckModCount;
+    private RadioStation radio;
+    private Playlist radioPlaylist;
+    private int radioModCount;
 
     private Mode playbackMode = Mode.SEQUENZIALE;
     
-    //private Stack<String> playedSongs;
+    // ascolto in corso, registrato nella cronologia quando il brano cambia
+    private String ascoltoTitolo;
+    private String ascoltoPlaylist;
+    private long ascoltoInizio;
+    private long ascoltoMillis;
+    private long ascoltoRipresa; // istante dell'ultima ripresa, 0 se in pausa
+    private long historyCursor = -1; // ascolto raggiunto con "precedente", -1 se nessuno
     private QueueManager codaManager;
     private String currentlyPlayingTitle;
+    private String preparedTitle;
 
     /**
      * Costruttore principale.
-     * <p>Inizializza i componenti principali, avvia il thread per il controllo dello slider
+     * <p>Inizializza i componenti principali, collega lo slider all'orologio di riproduzione
      * e associa i key binding (es. spazio per play/pausa).</p>
      *
      * @param panel Il pannello principale dell'interfaccia utente.
@@ -146,8 +172,9 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
     	suppressComboBoxPlayback = false;
     	
         this.panel = panel;
-        playbackSemaphore = new Semaphore(0);
         random = new Random();
+        fileTasks = new FileTaskExecutor(panel);
+        shuffleWeighted = ConfigManager.loadShuffleWeighted();
         
         panel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("SPACE"), "playPause");
         panel.getActionMap().put("playPause", new AbstractAction() {
@@ -158,10 +185,24 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
         });
         
         //playedSongs =  new Stack<>();
-        this.codaManager = new QueueManager();
+        this.codaManager = new QueueManager(new QueueJournal(new File(QueueJournal.QUEUE_LOG_PATH),
+                                                             new File(QueueJournal.QUEUE_SNAPSHOT_PATH)));
         currentlyPlayingTitle = null;
         
-        this.playbackManager = new PlaybackManager(panel, playbackSemaphore);
+        MP3Player player = panel.getPlayer();
+        player.setTrackSequence(this::takeNextSong);
+
+        progressUpdater = new ProgressUpdater(player.getEngine().getClock(), panel.getProgressModel(),
+                                              ConfigManager.loadProgressFps());
+
+        // gli eventi arrivano dai thread audio: vengono tutti gestiti sull'EDT
+        PlaybackEventBus events = player.getEvents();
+        events.subscribe(PlaybackEvent.TrackStarted.class, SwingUtilities::invokeLater, e -> {
+            if (e.isAutomatic()) onTrackChanged(e.getSong());
+        });
+        events.subscribe(PlaybackEvent.StateChanged.class, SwingUtilities::invokeLater, e -> onStateChanged(e.getState()));
+        events.subscribe(PlaybackEvent.TrackEnded.class, SwingUtilities::invokeLater, e -> onTrackEnded());
+        events.subscribe(PlaybackEvent.Error.class, SwingUtilities::invokeLater, e -> onPlaybackError(e));
     }
 
     /**
@@ -256,32 +297,19 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
 
                         // azzera UI
                         panel.setCurrentSongLabel("");
-                        panel.getSlider().setValue(0);
+                        panel.getProgressModel().setProgress(0);
                         panel.getPlayPauseButton().setEnabled(false);
                         panel.refreshIcons();
                     }
 
-                    // sposta tutti gli MP3 nella cartella principale e poi rimuovi la playlist
+                    // sposta tutti gli MP3 nella cartella principale e poi rimuovi la playlist, in background
                     File dir = new File("resources/playlists/" + selected);
                     File root = new File("resources/playlists");
                     if (dir.exists() && dir.isDirectory()) {
-                        // sposto prima tutti i .mp3 nella root
-                        for (File f : dir.listFiles()) {
-                            if (f.isFile() && f.getName().toLowerCase().endsWith(".mp3")) {
-                                Path src = f.toPath();
-                                Path dst = root.toPath().resolve(f.getName());
-                                try {
-                                    Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
-                                } catch (IOException ex) {
-                                    Logger.writeLog("Errore spostando " + f.getName() + ": " + ex.getMessage());
-                                }
-                            }
-                        }
-                        // poi pulisco eventuali file residui (es. cover.jpg, data.json) e rimuovo la cartella
-                        for (File f : dir.listFiles()) {
-                            try { f.delete(); } catch (Exception ignore) {}
-                        }
-                        dir.delete();
+                        fileTasks.submit(selected, LanguageManager.get("item.deletePlaylist"), ctx -> {
+                            svuotaCartellaPlaylist(dir, root, ctx);
+                            return null;
+                        }, null, null);
                     }
 
                     PlaylistDataManager.savePlaylists(panel.getPlaylists());
@@ -314,34 +342,40 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                     Playlist pl = panel.getPlaylists().remove(selected);
                     pl.setName(newName);
 
-                    // Rinominazione cartella
-                    File oldDir = new File("resources/playlists/" + selected);
-                    File newDir = new File("resources/playlists/" + newName);
-                    if (oldDir.exists()) {
-                        boolean renamed = oldDir.renameTo(newDir);
-                        if (renamed && pl.getCoverImage() != null) {
-                            // Se l'immagine era nella vecchia cartella, aggiorna il percorso
-                            File oldCover = new File(pl.getCoverImage());
-                            if (oldCover.getParentFile().getName().equals(selected)) {
-                                File newCover = new File(newDir, "cover.jpg");
-                                pl.setCoverImage(newCover.getPath());
-                            }
-                        }
-                    }
-
-                    // Salva la playlist aggiornata nel nuovo percorso (aggiorna anche data.json)
-                    try {
-                        PlaylistDataManager.exportPlaylist(pl, newDir);
-                    } catch (IOException e1) {
-                        Logger.writeLog("Errore nel salvataggio dopo rinomina: " + e1.getMessage());
-                    }
-
                     panel.getPlaylistListModel().removeElement(selected);
                     panel.getPlaylists().put(newName, pl);
                     panel.getPlaylistListModel().addElement(newName);
 
                     PlaylistDataManager.savePlaylists(panel.getPlaylists());
 
+                    // Rinomina la cartella e vi salva la playlist aggiornata (aggiorna anche data.json), in background.
+                    // L'operazione va nella coda della vecchia cartella, così parte solo dopo le copie ancora in corso su di essa,
+                    // e le operazioni avviate intanto sul nuovo nome vengono accodate dopo la rinomina
+                    File oldDir = new File("resources/playlists/" + selected);
+                    File newDir = new File("resources/playlists/" + newName);
+                    Playlist copia = PlaylistDataManager.copyOf(pl);
+                    fileTasks.submit(selected, LanguageManager.get("item.renamePlaylist"), ctx -> {
+                        String copertina = null;
+                        if (oldDir.exists()) {
+                            if (!oldDir.renameTo(newDir)) {
+                                Logger.writeLog("Impossibile rinominare la cartella " + oldDir.getPath() + " in " + newDir.getName());
+                            } else if (copia.getCoverImage() != null
+                                    && new File(copia.getCoverImage()).getParentFile().getName().equals(selected)) {
+                                // l'immagine era nella vecchia cartella: aggiorna il percorso
+                                copertina = new File(newDir, "cover.jpg").getPath();
+                                copia.setCoverImage(copertina);
+                            }
+                        }
+                        PlaylistDataManager.exportPlaylist(copia, newDir, ctx);
+                        return copertina;
+                    }, copertina -> {
+                        if (copertina == null) return;
+                        pl.setCoverImage(copertina);
+                        PlaylistDataManager.savePlaylists(panel.getPlaylists());
+                        if (panel.getPlaylist() == pl) panel.refreshCoverImage();
+                    }, ex -> Logger.writeLog("Errore nel salvataggio dopo rinomina: " + ex.getMessage()));
+                    fileTasks.alias(newName, selected);
+
                     // Aggiorna GUI
                     panel.getPlaylistList().setSelectedValue(newName, true);
                     panel.setPlaylist(pl);
@@ -395,9 +429,7 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
 
                 // modello con i titoli correnti
                 DefaultListModel<String> listModel = new DefaultListModel<>();
-                for (String title : pl.getSongTitles()) {
-                    listModel.addElement(title);
-                }
+                listModel.addAll(pl.getTitles());
 
                 JList<String> songList = new JList<>(listModel);
                 songList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -510,91 +542,14 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
             }
         } 
 	    else if (source == panel.getAddSongItem()) { // AGGIUNTA CANZONI ALLA PLAYLIST
-	        // 1) cartella root da cui partire
-	        File songsRoot = new File("resources/playlists");
-	        List<File> files = new ArrayList<>();
-	
-	        try {
-	            Files.walk(songsRoot.toPath())
-	                 .filter(p -> p.toString().toLowerCase().endsWith(".mp3"))
-	                 .forEach(p -> files.add(p.toFile()));
-	        } catch (IOException ex) {
-	            Logger.writeLog("Errore scansione MP3: " + ex.getMessage());
-	        }
-	
-	        // 2) playlist corrente e titoli già presenti
+	        // 1) playlist corrente; la scansione delle cartelle avviene in background
 	        String plName = panel.getPlaylistList().getSelectedValue();
 	        Playlist target = panel.getPlaylists().get(plName);
-	        List<String> existing = Arrays.asList(target.getSongTitles());
-	
-	        // 3) costruisco mappa titolo→Song con percorso RELATIVO
-	        Map<String,Song> songMap = new LinkedHashMap<>();
-	        Path projectRoot = Paths.get("").toAbsolutePath();
-	        for (File f : files) {
-	            String title = f.getName()
-	                            .substring(0, f.getName().length() - 4)
-	                            .replace('_', ' ')
-	                            .trim();
-	            if (!songMap.containsKey(title) && !existing.contains(title)) {
-	                Path abs = f.toPath().toAbsolutePath();
-	                Path rel = projectRoot.relativize(abs);
-	                String relPath = rel.toString().replace("\\","/");
-	                songMap.put(title, new Song(title, relPath));
-	            }
-	        }
-	
-	        // 4) lista di titoli da mostrare
-	        String[] allTitles = songMap.keySet().stream()
-	                                    .sorted(String.CASE_INSENSITIVE_ORDER)
-	                                    .toArray(String[]::new);
-	
-	        // 5) dialog di selezione
-	        JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(panel),
-	                                     LanguageManager.get("playlist.add.songs"), true);
-	        dialog.setLayout(new BorderLayout());
-	        dialog.setSize(400, 400);
-	        dialog.setLocationRelativeTo(panel);
-	
-	        JTextField search = new JTextField();
-	        DefaultListModel<String> model = new DefaultListModel<>();
-	        JList<String> list = new JList<>(model);
-	        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
-	        JScrollPane scroll = new JScrollPane(list);
-	
-	        // popolo
-	        for (String t : allTitles) model.addElement(t);
-	
-	        // filtro dinamico
-	        search.getDocument().addDocumentListener(new DocumentListener() {
-	            void filter() {
-	                String q = search.getText().toLowerCase();
-	                model.clear();
-	                for (String t : allTitles) {
-	                    if (t.toLowerCase().contains(q)) model.addElement(t);
-	                }
-	            }
-	            public void insertUpdate(DocumentEvent e) { filter(); }
-	            public void removeUpdate(DocumentEvent e) { filter(); }
-	            public void changedUpdate(DocumentEvent e) { filter(); }
-	        });
-	
-	        JButton addBtn = new JButton(LanguageManager.get("label.add"));
-	        addBtn.addActionListener(ev -> {
-	            for (String t : list.getSelectedValuesList()) {
-	                Song s = songMap.get(t);
-	                if (s != null) target.addSong(s);
-	            }
-	            panel.setPlaylist(target);
-	            PlaylistDataManager.savePlaylists(panel.getPlaylists());
-	            panel.refreshComboBox();
-	            dialog.dispose();
-	        });
-	
-	        dialog.add(search, BorderLayout.NORTH);
-	        dialog.add(scroll, BorderLayout.CENTER);
-	        dialog.add(addBtn, BorderLayout.SOUTH);
-	        dialog.setVisible(true);
+	        File songsRoot = new File("resources/playlists");
 	
+	        fileTasks.submit(null, null, ctx -> cercaMP3(songsRoot, ctx),
+	                         files -> mostraAggiuntaBrani(target, files),
+	                         ex -> Logger.writeLog("Errore scansione MP3: " + ex.getMessage()));
 	    }
         else if (e.getSource() == panel.getRemoveMP3Item()) 
         {
@@ -696,48 +651,50 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                 return;
             }
 
-            // Se il titolo non è già presente
-            if (!Arrays.asList(current.getSongTitles()).contains(title)) {
-                // Path di destinazione
-                File targetDir = current.getName().equalsIgnoreCase("Tutti i brani")
-                                 ? new File("resources/playlists/")
-                                 : new File("resources/playlists/" + current.getName());
-
-                if (!targetDir.exists()) targetDir.mkdirs();
+            // Se il titolo è già presente non serve copiare nulla
+            if (current.indexOf(title) >= 0) {
+                JOptionPane.showMessageDialog(panel,
+                    LanguageManager.get("popup.song.import.success"));
+                return;
+            }
 
-                // Nuovo file di destinazione
-                File destFile = new File(targetDir, selectedFile.getName());
+            // Path di destinazione
+            File targetDir = current.getName().equalsIgnoreCase("Tutti i brani")
+                             ? new File("resources/playlists/")
+                             : new File("resources/playlists/" + current.getName());
 
-                try {
-                    Files.copy(selectedFile.toPath(), destFile.toPath(),
-                               StandardCopyOption.REPLACE_EXISTING);
-                } catch (IOException ex) {
-                    Logger.writeLog("Errore copia MP3: " + ex.getMessage());
-                    JOptionPane.showMessageDialog(panel,
-                        LanguageManager.get("popup.copy.error"),
-                        LanguageManager.get("popup.error"),
-                        JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
+            // Nuovo file di destinazione
+            File destFile = new File(targetDir, selectedFile.getName());
 
+            // la copia avviene in background, nella coda della playlist (anche la cartella va creata lì,
+            // dopo un'eventuale rinomina ancora in corso); la playlist viene aggiornata sull'EDT
+            fileTasks.submit(current.getName(), LanguageManager.get("item.import"), ctx -> {
+                if (!targetDir.exists()) targetDir.mkdirs();
+                FileManager.copyFile(selectedFile, destFile, ctx);
+                return null;
+            }, ok -> {
                 // Percorso relativo al progetto
                 Path projectRoot = Paths.get("").toAbsolutePath();
                 Path rel = projectRoot.relativize(destFile.getAbsoluteFile().toPath());
                 String relPath = rel.toString().replace("\\", "/");
 
-                current.addSong(new Song(title, relPath));
+                Song song = new Song(title, relPath);
+                if (current.indexOf(title) < 0) current.addSong(song);
                 PlaylistDataManager.savePlaylists(panel.getPlaylists());
                 panel.refreshComboBox();
 
-                // plays.count per il brano
-                File playsFile = new File("resources/plays.count");
-                Map<String,Integer> plays = FileManager.loadCounts(playsFile);
-                plays.putIfAbsent(title, 0);
-                FileManager.saveCounts(plays, playsFile);
-            }
+                // contatore degli ascolti per il brano
+                PlayCountManager.ensureSong(song);
 
-            JOptionPane.showMessageDialog(panel,
-                LanguageManager.get("popup.song.import.success"));
+                JOptionPane.showMessageDialog(panel,
+                    LanguageManager.get("popup.song.import.success"));
+            }, ex -> {
+                Logger.writeLog("Errore copia MP3: " + ex.getMessage());
+                JOptionPane.showMessageDialog(panel,
+                    LanguageManager.get("popup.copy.error"),
+                    LanguageManager.get("popup.error"),
+                    JOptionPane.ERROR_MESSAGE);
+            });
         }
         else if(source == panel.getChangeThemeItem())
         {
@@ -786,16 +743,25 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
             playbackMode = Mode.SEQUENZIALE;
             //panel.getToggleModeButton().setText("[]");
             panel.refreshIcons();
+            prepareNextTrack();
         }
         else if (source == panel.getCasualeItem()) {
             playbackMode = Mode.CASUALE;
             //panel.getToggleModeButton().setText("@@");
             panel.refreshIcons();
+            prepareNextTrack();
         }
         else if (source == panel.getRipetiItem()) {
             playbackMode = Mode.RIPETI;
             //panel.getToggleModeButton().setText("[]1");
             panel.refreshIcons();
+            prepareNextTrack();
+        }
+        else if (source == panel.getRadioItem()) {
+            playbackMode = Mode.RADIO;
+            avviaRadio();
+            panel.refreshIcons();
+            prepareNextTrack();
         }
         else if (Arrays.asList(panel.getLanguagesMenuItem()).contains(source)) 
         {
@@ -903,6 +869,11 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                     break;
                     
                 case RIPETI:
+                    playbackMode = Mode.RADIO;
+                    avviaRadio();
+                    break;
+
+                case RADIO:
                     playbackMode = Mode.SEQUENZIALE;
                     //panel.getToggleModeButton().setText("[]");
                     break;
@@ -911,6 +882,7 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
             salvaRiproduzione();
             
             panel.refreshIcons();
+            prepareNextTrack();
         }
     }
 
@@ -922,18 +894,17 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
     @Override
     public void stateChanged(ChangeEvent e) 
     {
+        // gli aggiornamenti della posizione di riproduzione non sono seek
+        if (panel.getProgressModel().isUpdatingProgress()) return;
         if (Thread.currentThread().getName().equals(NAME)) return;
 
         JSlider slider = panel.getSlider();
         
         if (e.getSource() == slider && !slider.getValueIsAdjusting()) 
         {
-            stopPlayback();
-            panel.getPlayer().setPanel(panel);
-            panel.getPlayer().setSemaphore(playbackSemaphore);
-            panel.getPlayer().seekToPercentage(slider.getValue());
+            // il motore scarta da solo l'audio della posizione precedente
+            panel.getPlayer().seekToFraction(slider.getValue(), slider.getMaximum());
             
-            playbackSemaphore.release();
         }
     }
 
@@ -972,15 +943,11 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
     }
     
     /**
-     * Ferma la riproduzione corrente svuotando i permit e chiamando stop() sul player.
+     * Ferma la riproduzione corrente chiamando stop() sul player.
      */
     private void stopPlayback() 
     {
-        playbackSemaphore.drainPermits();
-        panel.getPlayer().setPanel(panel);
-        panel.getPlayer().setSemaphore(playbackSemaphore);
         panel.getPlayer().stop();
-        //playbackManager.interruptAndRestart();
     }
 
     /**
@@ -988,8 +955,6 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
      */
     private void togglePlayPause() {
         MP3Player player = panel.getPlayer();
-        panel.getPlayer().setPanel(panel);
-        panel.getPlayer().setSemaphore(playbackSemaphore);
 
         if (!player.isPlaying()) {
             // Se non stiamo già suonando
@@ -1032,35 +997,24 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                 return;
             }
 
-            if (!Arrays.asList(panel.getPlaylist().getSongTitles()).contains(selected)) {
+            int selectedIndex = panel.getPlaylist().indexOf(selected);
+            if (selectedIndex < 0) {
                 Logger.writeLog("Errore: canzone selezionata non esiste nella playlist corrente");
                 return;
             }
-            
-            if (!Arrays.asList(panel.getPlaylist().getSongTitles()).contains(selected)) {
-        	    Logger.writeLog("Errore: canzone selezionata non esiste nella playlist corrente");
-        	    return;
-        	}
 
             if (selected != null) 
             {
                 MP3Player player = panel.getPlayer();
-                panel.getPlayer().setPanel(panel);
-                panel.getPlayer().setSemaphore(playbackSemaphore);
 
                 stopPlayback();
-                
-                /*
-                if (currentlyPlayingTitle != null) {
-                    playedSongs.push(currentlyPlayingTitle); // salva nello storico
-                }
-                */
 
                 Logger.writeLog(selected);
 
-                panel.getPlayer().setCurrentSong(panel.getPlaylist().getSong(selected));
+                Song song = panel.getPlaylist().getSongAt(selectedIndex);
+                panel.getPlayer().setCurrentSong(song);
    
-                player.play(panel.getPlaylist().getSong(selected));
+                player.play(song);
 
                 panel.getComboBox().setSelectedValue(selected, true);
                 //panel.getPlayPauseButton().setText("||");
@@ -1069,21 +1023,12 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                 currentlyPlayingTitle = selected; // salva la canzone attuale
                 playbackPlaylist = panel.getPlaylist(); // salvo la playlist
                 
-                playbackSemaphore.release();
             }
             
             panel.setCurrentSongLabel(currentlyPlayingTitle);
             
-            File playsFile = new File("resources/plays.count");
-            Map<String,Integer> riproduzioni = FileManager.loadCounts(playsFile);
-            riproduzioni.put(selected, riproduzioni.getOrDefault(selected, 0) + 1);
-            FileManager.saveCounts(riproduzioni, playsFile);
-
-            String plName = playbackPlaylist.getName();
-            File plPlaysFile = new File("resources/playlist_plays.count");
-            Map<String,Integer> ascolti = FileManager.loadCounts(plPlaysFile);
-            ascolti.put(plName, ascolti.getOrDefault(plName, 0) + 1);
-            FileManager.saveCounts(ascolti, plPlaysFile);
+            registraAscolto(selected);
+            prepareNextTrack();
     	}
     	finally
     	{
@@ -1097,51 +1042,75 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
      * <p>
      * Le canzoni con meno riproduzioni hanno una probabilità maggiore di essere selezionate,
      * in modo da bilanciare la varietà durante la riproduzione in modalità CASUALE.
-     * <br>
-     * Funzionalità dell'algoritmo:
-     * <ul>
-     * <li>Recupera tutte le canzoni nella playlist corrente.</li>
-     * <li>Carica il numero di riproduzioni per ciascuna canzone da un file.</li>
-     * <li>Trova la canzone con il numero massimo di riproduzioni e salva questo valore come maxRiproduzioni.</li>
-     * <li>Per ogni canzone, calcola il suo peso inverso: <code>peso = maxRiproduzioni - numeroRiproduzioniCanzone</code>
-     * <br>Quindi più riproduzioni ha più il peso è basso e meno copie in lista ci sono.</li>
-     * <li>Crea una lista "ponderata" (pool) in cui ogni canzone appare tante volte quanto il suo peso.</li>
-     * <li>Pesca un titolo casuale dalla pool usando random.</li>
-     * <ul><br>
+     * Il peso di ogni canzone è <code>maxRiproduzioni + 1 - numeroRiproduzioniCanzone</code>;
+     * con {@code playback.shuffle.weighted=false} l'estrazione è uniforme.
+     * </p>
+     * <p>
+     * Il brano viene pescato dal {@link ShuffleDeck} della playlist, per cui nessuna canzone si
+     * ripete finché non sono uscite tutte le altre. Il brano pescato resta il successivo
+     * finché non viene riprodotto: chiamate ripetute restituiscono lo stesso titolo.
+     * </p>
      *
      * @return Il titolo della canzone selezionata, oppure {@code null} se la playlist è vuota.
      */
     private String getBranoCasualePonderato() {
-        if (playbackPlaylist == null || playbackPlaylist.getSongTitles().length == 0)
-            return null;
-
-        String[] titles = playbackPlaylist.getSongTitles();
-        Map<String, Integer> riproduzioni = FileManager.loadCounts(new File("resources/plays.count"));
+        ShuffleDeck deck = mazzoCasuale();
+        return deck != null ? deck.peek() : null;
+    }
 
-        List<String> pool = new LinkedList<>();
-        int maxRiproduzioni = 1;
+    /**
+     * Restituisce il mazzo della modalità casuale per la playlist in riproduzione. Il mazzo viene
+     * creato quando cambia la playlist; se cambiano solo i suoi brani viene allineato, senza
+     * rimescolare quelli già ascoltati.
+     *
+     * @return Il mazzo, oppure {@code null} se la playlist è assente o vuota.
+     */
+    private ShuffleDeck mazzoCasuale() {
+        if (playbackPlaylist == null || playbackPlaylist.getSongs().isEmpty())
+            return null;
 
-        // Trova il massimo numero di riproduzioni
-        for (String title : titles) {
-            int ascolti = riproduzioni.getOrDefault(title, 0);
-            if (ascolti + 1 > maxRiproduzioni) {
-                maxRiproduzioni = ascolti + 1;
-            }
+        if (shuffleDeck == null || deckPlaylist != playbackPlaylist) {
+            Map<String, Integer> counts = shuffleWeighted ? PlayCountManager.getSongCounts(playbackPlaylist.getSongs()) : null;
+            shuffleDeck = new ShuffleDeck(playbackPlaylist.getTitles(), counts, random);
+            deckPlaylist = playbackPlaylist;
+            deckModCount = playbackPlaylist.getModCount();
+            if (currentlyPlayingTitle != null) shuffleDeck.moveTo(currentlyPlayingTitle);
+        } else if (deckModCount != playbackPlaylist.getModCount()) {
+            Map<String, Integer> counts = shuffleDeck.isWeighted() ? PlayCountManager.getSongCounts(playbackPlaylist.getSongs()) : null;
+            shuffleDeck.sync(playbackPlaylist.getTitles(), counts);
+            deckModCount = playbackPlaylist.getModCount();
         }
 
-        // Costruisce la lista ponderata
-        for (String title : titles) {
-            int ascolti = riproduzioni.getOrDefault(title, 0);
-            int weight = maxRiproduzioni - ascolti;
+        return shuffleDeck;
+    }
 
-            for (int i = 0; i < weight; i++) {
-                pool.add(title);
-            }
+    /**
+     * Restituisce la stazione della modalità radio per la playlist in riproduzione. I brani
+     * vengono passati alla stazione quando cambia la playlist o il suo contenuto.
+     *
+     * @return La stazione, oppure {@code null} se la playlist è assente o vuota.
+     */
+    private RadioStation stazioneRadio() {
+        if (playbackPlaylist == null || playbackPlaylist.getSongs().isEmpty())
+            return null;
+
+        if (radio == null) radio = new RadioStation(random);
+        if (radioPlaylist != playbackPlaylist || radioModCount != playbackPlaylist.getModCount()) {
+            radio.setSongs(playbackPlaylist.getSongs());
+            radio.played(currentlyPlayingTitle);
+            radioPlaylist = playbackPlaylist;
+            radioModCount = playbackPlaylist.getModCount();
         }
 
-        if (pool.isEmpty()) return titles[0]; // fallback sicuro
+        return radio;
+    }
 
-        return pool.get(random.nextInt(pool.size()));
+    /**
+     * Fa ripartire la stazione radio dal brano corrente, quando si entra nella modalità.
+     */
+    private void avviaRadio() {
+        RadioStation stazione = stazioneRadio();
+        if (stazione != null) stazione.played(currentlyPlayingTitle);
     }
 
 	/**
@@ -1154,74 +1123,14 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
         changingSong = true;
 
         try {
-            if (playbackPlaylist == null || playbackPlaylist.getSongTitles().length == 0) {
-                Logger.writeLog("Nessuna playlist di riproduzione attiva o vuota.");
-                return;
-            }
-
-            String[] titles = playbackPlaylist.getSongTitles();
-            String nextTitle = null;
-
-            // 1. Controlla la coda
-            if (!codaManager.isEmpty()) {
-                nextTitle = codaManager.poll();
-            } else {
-                // 2. Trova l'indice della canzone corrente
-                int currentIndex = -1;
-                for (int i = 0; i < titles.length; i++) {
-                    if (titles[i].equals(currentlyPlayingTitle)) {
-                        currentIndex = i;
-                        break;
-                    }
-                }
-
-                switch (playbackMode) {
-                    case CASUALE:
-                        nextTitle = getBranoCasualePonderato();
-                        break;
-                    case SEQUENZIALE:
-                        int nextIndex = (currentIndex < titles.length - 1 && currentIndex >= 0) ? currentIndex + 1 : 0;
-                        nextTitle = titles[nextIndex];
-                        break;
-                    case RIPETI:
-                        nextTitle = currentlyPlayingTitle;
-                        break;
-                }
-            }
-
-            if (nextTitle == null) return;
-
-            stopPlayback();
-            playbackSemaphore.drainPermits();
-
-            currentlyPlayingTitle = nextTitle;
-            Song song = playbackPlaylist.getSong(nextTitle);
-
-            if (song == null) {
-                Logger.writeLog(LanguageManager.get("popup.song.title.notfound") + nextTitle + "'");
-                Logger.writeLog(LanguageManager.get("popup.song.available"));
-                for (String titolo : playbackPlaylist.getSongTitles()) {
-                    Logger.writeLog(" - '" + titolo + "'");
-                }
-                return;
-            }
 
-            Logger.writeLog(LanguageManager.get("label.play") + nextTitle);
+            // la scelta del brano spetta a takeNextSong(), invocato dal player
+            if (panel.getPlayer().next() == null) return;
 
-            panel.getPlayer().setPanel(panel);
-            panel.getPlayer().setSemaphore(playbackSemaphore);
-            panel.getPlayer().play(song);
-            
-            File playsFile = new File("resources/plays.count");
-            Map<String,Integer> riproduzioni = FileManager.loadCounts(playsFile);
-            riproduzioni.put(song.getTitle(), riproduzioni.getOrDefault(song, 0) + 1);
-            FileManager.saveCounts(riproduzioni, playsFile);
+            Logger.writeLog(LanguageManager.get("label.play") + currentlyPlayingTitle);
 
-            String plName = playbackPlaylist.getName();
-            File plPlaysFile = new File("resources/playlist_plays.count");
-            Map<String,Integer> ascolti = FileManager.loadCounts(plPlaysFile);
-            ascolti.put(plName, ascolti.getOrDefault(plName, 0) + 1);
-            FileManager.saveCounts(ascolti, plPlaysFile);
+            registraAscolto(currentlyPlayingTitle);
+            prepareNextTrack();
 
             SwingUtilities.invokeLater(() -> {
                 panel.refreshIcons();
@@ -1235,53 +1144,364 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                 }
             });
 
-            playbackSemaphore.release();
         } finally {
             changingSong = false;
         }
     }
     
+    /**
+     * Sequenza di riproduzione del player ({@link MP3Player#next()}): estrae il titolo successivo
+     * dalla coda o dalla modalità di riproduzione e restituisce la canzone corrispondente
+     * della playlist in riproduzione.
+     *
+     * @param current La canzone corrente del player.
+     * @return La canzone successiva, oppure {@code null} se non può essere determinata.
+     */
+    private Song takeNextSong(Song current) {
+        if (playbackPlaylist == null || playbackPlaylist.getSongs().isEmpty()) {
+            Logger.writeLog("Nessuna playlist di riproduzione attiva o vuota.");
+            return null;
+        }
+
+        // 1. Controlla la coda: i brani in coda sono già risolti
+        if (!codaManager.isEmpty()) {
+            Song queued = codaManager.poll();
+            currentlyPlayingTitle = queued.getTitle();
+            return queued;
+        }
+
+        String nextTitle;
+
+        if ((playbackMode == Mode.CASUALE || playbackMode == Mode.RADIO) && preparedTitle != null) {
+            // 2. In modalità casuale e radio uso il brano già estratto e precaricato
+            nextTitle = preparedTitle;
+        } else {
+            // 3. Altrimenti lo ricavo dalla modalità di riproduzione
+            nextTitle = resolveNextTitle();
+        }
+
+        if (nextTitle == null) return null;
+
+        Song song = trovaBrano(playbackPlaylist, nextTitle);
+
+        if (song == null) {
+            Logger.writeLog(LanguageManager.get("popup.song.title.notfound") + nextTitle + "'");
+            Logger.writeLog(LanguageManager.get("popup.song.available"));
+            for (String titolo : playbackPlaylist.getTitles()) {
+                Logger.writeLog(" - '" + titolo + "'");
+            }
+            return null;
+        }
+
+        currentlyPlayingTitle = nextTitle;
+        return song;
+    }
+
+    /**
+     * Cerca una canzone della playlist: per titolo esatto con l'indice delle posizioni, in O(1),
+     * altrimenti con il confronto tollerante di {@link Playlist#getSong(String)}.
+     *
+     * @return La canzone, oppure {@code null} se non fa parte della playlist.
+     */
+    private static Song trovaBrano(Playlist playlist, String title) {
+        int index = playlist.indexOf(title);
+        return index >= 0 ? playlist.getSongAt(index) : playlist.getSong(title);
+    }
+
+    /**
+     * Determina il titolo che seguirà quello corrente senza modificare la coda:
+     * la testa della coda se presente, altrimenti il brano scelto dalla modalità di riproduzione.
+     *
+     * @return Il titolo successivo, oppure {@code null} se non può essere determinato.
+     */
+    private String resolveNextTitle() {
+        if (!codaManager.isEmpty()) return codaManager.peek().getTitle();
+
+        switch (playbackMode) {
+            case CASUALE:
+                return getBranoCasualePonderato();
+            case SEQUENZIALE:
+                int size = playbackPlaylist.size();
+                int currentIndex = currentlyPlayingTitle != null ? playbackPlaylist.indexOf(currentlyPlayingTitle) : -1;
+                int nextIndex = (currentIndex < size - 1 && currentIndex >= 0) ? currentIndex + 1 : 0;
+                return playbackPlaylist.getSongAt(nextIndex).getTitle();
+            case RIPETI:
+                return currentlyPlayingTitle;
+            case RADIO:
+                RadioStation stazione = stazioneRadio();
+                return stazione != null ? stazione.peek() : null;
+        }
+        return null;
+    }
+
+    /**
+     * Comunica al player la canzone che seguirà quella corrente, così che il motore
+     * possa precaricarla e passarvi senza pause. Va richiamato ogni volta che cambiano
+     * la traccia corrente, la coda o la modalità di riproduzione.
+     */
+    private void prepareNextTrack() {
+        preparedTitle = null;
+
+        if (playbackPlaylist == null || playbackPlaylist.getSongs().isEmpty() || currentlyPlayingTitle == null) {
+            panel.getPlayer().preloadNext(null);
+            return;
+        }
+
+        String title = resolveNextTitle();
+        Song song = !codaManager.isEmpty() ? codaManager.peek()
+                  : title != null ? trovaBrano(playbackPlaylist, title) : null;
+
+        preparedTitle = song != null ? title : null;
+        panel.getPlayer().preloadNext(song);
+        panel.getPlayer().prefetch(Arrays.asList(song, trovaSecondoCandidato(title)));
+    }
+
+    /**
+     * Determina il brano più probabile dopo quello successivo, da leggere in anticipo: il secondo
+     * della coda oppure, in modalità sequenziale, quello che segue il successivo nella playlist e,
+     * in modalità radio, il primo della finestra della stazione che non sia già il successivo
+     * (il primo se il successivo è l'unico brano in coda, altrimenti il secondo).
+     *
+     * @param nextTitle Il titolo successivo già determinato.
+     * @return Il brano, oppure {@code null} se non è prevedibile.
+     */
+    private Song trovaSecondoCandidato(String nextTitle) {
+        if (nextTitle == null) return null;
+
+        Song secondoInCoda = codaManager.get(1);
+        if (secondoInCoda != null) return secondoInCoda;
+
+        if (playbackMode == Mode.RADIO && radio != null) {
+            List<String> prossimi = radio.upcoming();
+            int posizione = codaManager.isEmpty() ? 1 : 0;
+            return prossimi.size() > posizione ? trovaBrano(playbackPlaylist, prossimi.get(posizione)) : null;
+        }
+        if (playbackMode != Mode.SEQUENZIALE) return null;
+
+        int index = playbackPlaylist.indexOf(nextTitle);
+        int size = playbackPlaylist.size();
+        return index >= 0 && size > 2 ? playbackPlaylist.getSongAt((index + 1) % size) : null;
+    }
+
+    /**
+     * Chiamato sull'EDT quando le impronte dei brani della libreria sono pronte: riallinea la coda,
+     * che fino ad allora identificava i brani non ancora in cache dal percorso, e toglie da
+     * "Tutti i brani" i file che risultano presenti più volte.
+     *
+     * @param tutti La playlist con tutti i brani.
+     */
+    public void onSongIdsReady(Playlist tutti) {
+        codaManager.rekey();
+        if (!PlaylistDataManager.rimuoviDoppioni(tutti) || panel.getPlaylist() != tutti) return;
+
+        panel.refreshComboBox();
+        if (currentlyPlayingTitle != null && playbackPlaylist == tutti) {
+            suppressComboBoxPlayback = true;
+            panel.getComboBox().setSelectedValue(currentlyPlayingTitle, true);
+            suppressComboBoxPlayback = false;
+        }
+    }
+
+    /**
+     * Chiamato sull'EDT quando il motore è passato da solo alla canzone precaricata.
+     * Aggiorna coda, contatori e interfaccia come farebbe {@link #nextSong()}, ma senza
+     * toccare la riproduzione.
+     *
+     * @param song La canzone ora in riproduzione.
+     */
+    private void onTrackChanged(Song song) {
+        String title = preparedTitle != null ? preparedTitle : song.getTitle();
+        chiudiAscolto(true);
+
+        if (codaManager.indexOf(song) == 0) {
+            codaManager.poll();
+        }
+
+        currentlyPlayingTitle = title;
+        registraAscolto(title);
+
+        suppressComboBoxPlayback = true;
+        panel.setCurrentSongLabel(title);
+        panel.getComboBox().setSelectedValue(title, true);
+        suppressComboBoxPlayback = false;
+        panel.refreshIcons();
+
+        Logger.writeLog("Controller: passaggio automatico a " + title);
+        prepareNextTrack();
+    }
+
+    /**
+     * Chiamato sull'EDT quando la traccia è finita senza un seguito già pronto:
+     * passa subito alla successiva secondo coda e modalità di riproduzione.
+     */
+    private void onTrackEnded() {
+        // nel frattempo l'utente può aver già avviato un'altra canzone
+        if (panel.getPlayer().isPlaying() || suppressComboBoxPlayback) return;
+
+        Logger.writeLog("Controller: canzone finita, passo alla successiva");
+        chiudiAscolto(true);
+        nextSong();
+    }
+
+    /**
+     * Chiamato sull'EDT quando la riproduzione si interrompe per un errore.
+     *
+     * @param error L'evento con la descrizione dell'errore.
+     */
+    private void onPlaybackError(PlaybackEvent.Error error) {
+        Logger.writeLog("Controller: riproduzione interrotta - " + error.getMessage());
+        panel.refreshIcons();
+    }
+
+    /**
+     * Chiamato sull'EDT a ogni cambio di stato del motore: lo slider segue l'orologio
+     * solo mentre la traccia è in riproduzione.
+     *
+     * @param state Il nuovo stato del motore.
+     */
+    private void onStateChanged(PlaybackEngine.State state) {
+        long now = System.currentTimeMillis();
+
+        if (state == PlaybackEngine.State.PLAYING) {
+            progressUpdater.start();
+            if (ascoltoTitolo != null && ascoltoRipresa == 0) ascoltoRipresa = now;
+        } else {
+            progressUpdater.stop();
+            if (ascoltoRipresa != 0) {
+                ascoltoMillis += now - ascoltoRipresa;
+                ascoltoRipresa = 0;
+            }
+        }
+    }
+
+    /**
+     * Apre l'ascolto di un brano appena avviato, chiudendo come saltato quello precedente
+     * se non era già stato chiuso.
+     *
+     * @param title Il titolo del brano.
+     */
+    private void iniziaAscolto(String title) {
+        chiudiAscolto(false);
+
+        ascoltoTitolo = title;
+        ascoltoPlaylist = playbackPlaylist != null ? playbackPlaylist.getName() : null;
+        ascoltoInizio = System.currentTimeMillis();
+        ascoltoMillis = 0;
+        ascoltoRipresa = ascoltoInizio;
+    }
+
+    /**
+     * Registra nella cronologia l'ascolto in corso, con il tempo effettivamente ascoltato.
+     *
+     * @param finished true se il brano è arrivato alla fine, false se è stato saltato.
+     */
+    private void chiudiAscolto(boolean finished) {
+        if (ascoltoTitolo == null) return;
+
+        if (ascoltoRipresa != 0) ascoltoMillis += System.currentTimeMillis() - ascoltoRipresa;
+        PlayHistoryManager.record(ascoltoTitolo, ascoltoPlaylist, ascoltoInizio, ascoltoMillis, finished);
+
+        ascoltoTitolo = null;
+        ascoltoRipresa = 0;
+    }
+
+    /**
+     * Risale la cronologia degli ascolti a partire dal brano corrente, oppure dall'ultimo brano
+     * raggiunto con "precedente", fino al primo brano diverso da quello corrente che fa parte
+     * della playlist in riproduzione.
+     *
+     * @return Il titolo trovato, oppure {@code null} se la cronologia non ne contiene.
+     */
+    private String titoloPrecedenteInCronologia() {
+        long seq = historyCursor >= 0 ? historyCursor - 1 : PlayHistoryManager.latestSequence();
+
+        for (; seq >= 0; seq--) {
+            PlayHistory.Entry entry = PlayHistoryManager.get(seq);
+            if (entry == null) break;
+
+            String title = entry.getTitle();
+            if (!title.equals(currentlyPlayingTitle) && playbackPlaylist.indexOf(title) >= 0) {
+                historyCursor = seq;
+                return title;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Incrementa il numero di ascolti del brano e della playlist in riproduzione.
+     *
+     * @param title Il titolo del brano appena avviato.
+     */
+    private void registraAscolto(String title) {
+        // il brano in riproduzione può venire dalla coda, cioè da un'altra playlist
+        Song song = panel.getPlayer().getCurrentSong();
+        if (title != null && (song == null || !title.equals(song.getTitle()))) {
+            song = playbackPlaylist != null ? trovaBrano(playbackPlaylist, title) : null;
+        }
+        PlayCountManager.registerPlay(song, playbackPlaylist != null ? playbackPlaylist.getName() : null);
+
+        // un nuovo ascolto interrompe la navigazione all'indietro nella cronologia
+        iniziaAscolto(title);
+        historyCursor = -1;
+
+        // il mazzo della modalità casuale segue il brano ascoltato e il nuovo conteggio
+        if (shuffleDeck != null && deckPlaylist == playbackPlaylist) {
+            shuffleDeck.setPlays(title, song != null ? PlayCountManager.getSongPlays(song) : 0);
+            shuffleDeck.moveTo(title);
+        }
+
+        // la radio toglie il brano dalla sua finestra e ne sceglie un altro in background
+        if (playbackMode == Mode.RADIO && radio != null && radioPlaylist == playbackPlaylist) {
+            radio.played(title);
+        }
+    }
+    
     /**
      * Torna alla canzone precedente nella lista, oppure all'ultima se si è all'inizio.
+     * In modalità CASUALE torna invece al brano ascoltato prima, finché il giro del mazzo lo consente;
+     * nelle altre modalità, o all'inizio del giro, risale la cronologia degli ascolti.
      */
     private void previousSong() {
         try {
             if (panel.getPlayer().getCurrentPercentage() <= 4) {
-                if (playbackPlaylist == null || playbackPlaylist.getSongTitles().length == 0) {
+                if (playbackPlaylist == null || playbackPlaylist.getSongs().isEmpty()) {
                     Logger.writeLog("Nessuna playlist di riproduzione attiva o vuota.");
                     return;
                 }
 
-                String[] titles = playbackPlaylist.getSongTitles();
+                String prevTitle = null;
+                if (playbackMode == Mode.CASUALE) {
+                    ShuffleDeck deck = mazzoCasuale();
+                    if (deck != null) prevTitle = deck.previous();
+                }
 
-                int currentIndex = -1;
-                for (int i = 0; i < titles.length; i++) {
-                    if (titles[i].equals(currentlyPlayingTitle)) {
-                        currentIndex = i;
-                        break;
-                    }
+                if (prevTitle == null) {
+                    prevTitle = titoloPrecedenteInCronologia();
                 }
 
-                if (currentIndex == -1) currentIndex = 0;
+                if (prevTitle == null) {
+                    int size = playbackPlaylist.size();
+                    int currentIndex = currentlyPlayingTitle != null ? playbackPlaylist.indexOf(currentlyPlayingTitle) : -1;
 
-                int prevIndex = (currentIndex > 0) ? currentIndex - 1 : titles.length - 1;
+                    if (currentIndex == -1) currentIndex = 0;
+
+                    int prevIndex = (currentIndex > 0) ? currentIndex - 1 : size - 1;
+                    prevTitle = playbackPlaylist.getSongAt(prevIndex).getTitle();
+                }
 
-                currentlyPlayingTitle = titles[prevIndex];
+                currentlyPlayingTitle = prevTitle;
                 panel.setCurrentSongLabel(currentlyPlayingTitle);
 
                 // Riproduci la canzone precedente
                 stopPlayback();
-                Song song = playbackPlaylist.getSong(currentlyPlayingTitle);
-                panel.getPlayer().setPanel(panel);
-                panel.getPlayer().setSemaphore(playbackSemaphore);
+                Song song = trovaBrano(playbackPlaylist, currentlyPlayingTitle);
                 panel.getPlayer().play(song);
-                playbackSemaphore.release();
+                iniziaAscolto(currentlyPlayingTitle);
+                prepareNextTrack();
             } else {
                 stopPlayback();
-                panel.getPlayer().setPanel(panel);
-                panel.getPlayer().setSemaphore(playbackSemaphore);
                 panel.getPlayer().seekToPercentage(0);
-                playbackSemaphore.release();
             }
         } catch (Exception e) {
             Logger.writeLog(e.getMessage());
@@ -1298,8 +1518,8 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
         }
 
         StringBuilder sb = new StringBuilder(LanguageManager.get("queue.show") + ":\n");
-        for (String song : codaManager.asList()) {
-            sb.append("- ").append(song).append("\n");
+        for (Song song : codaManager.asList()) {
+            sb.append("- ").append(song.getTitle()).append("\n");
         }
 
         JTextArea textArea = new JTextArea(sb.toString());
@@ -1330,12 +1550,23 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
             dialog.setSize(400, 300);
             dialog.setLocationRelativeTo(panel);
 
-            DefaultListModel<String> codaModel = new DefaultListModel<>();
-            for (String song : codaManager.asList()) {
+            DefaultListModel<Song> codaModel = new DefaultListModel<>();
+            for (Song song : codaManager.asList()) {
                 codaModel.addElement(song);
             }
+            // spostamenti fatti nella finestra, applicati alla coda solo al salvataggio
+            List<Runnable> modifiche = new ArrayList<>();
 
-            JList<String> codaList = new JList<>(codaModel);
+            JList<Song> codaList = new JList<>(codaModel);
+            codaList.setCellRenderer(new DefaultListCellRenderer() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                              boolean isSelected, boolean cellHasFocus) {
+                    return super.getListCellRendererComponent(list, ((Song) value).getTitle(), index, isSelected, cellHasFocus);
+                }
+            });
             codaList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
             codaList.setDragEnabled(true);
             codaList.setDropMode(DropMode.INSERT);
@@ -1345,7 +1576,7 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                 @Override
                 protected Transferable createTransferable(JComponent c) {
                     fromIndex = codaList.getSelectedIndex();
-                    return new StringSelection(codaList.getSelectedValue());
+                    return new StringSelection(codaList.getSelectedValue().getTitle());
                 }
 
                 @Override
@@ -1362,19 +1593,19 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
                 public boolean importData(TransferHandler.TransferSupport support) {
                     try {
                         int toIndex = ((JList.DropLocation) support.getDropLocation()).getIndex();
-                        String dragged = (String) support.getTransferable().getTransferData(DataFlavor.stringFlavor);
 
                         if (fromIndex >= 0 && toIndex >= 0 && fromIndex != toIndex) {
                             // Rimuovi prima l'elemento
-                            codaModel.remove(fromIndex);
+                            Song dragged = codaModel.remove(fromIndex);
 
                             // Se l'hai trascinato in fondo (oltre la fine), rimuove dalla coda
                             if (toIndex >= codaModel.getSize()) {
-                                //toIndex = codaModel.getSize();
-                            	codaModel.remove(toIndex);
+                                modifiche.add(() -> codaManager.remove(dragged));
+                                return true;
                             }
 
                             codaModel.add(toIndex, dragged);
+                            modifiche.add(() -> codaManager.moveTo(dragged, toIndex));
                             return true;
                         }
 
@@ -1390,12 +1621,9 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
 
             JButton salvaButton = new JButton(LanguageManager.get("label.save"));
             salvaButton.addActionListener(e -> {
-                // Aggiorna la vera coda
-            	List<String> nuovaCoda = new ArrayList<>();
-            	for (int i = 0; i < codaModel.size(); i++) {
-            	    nuovaCoda.add(codaModel.getElementAt(i));
-            	}
-            	codaManager.replaceAll(nuovaCoda);
+                // Aggiorna la vera coda: i brani partiti nel frattempo non vengono rimessi in coda
+            	modifiche.forEach(Runnable::run);
+            	prepareNextTrack();
 
                 dialog.dispose();
             });
@@ -1461,10 +1689,12 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
             List<String> selectedSongs = songList.getSelectedValuesList();
             if (!selectedSongs.isEmpty()) {
                 for (String song : selectedSongs) {
-                    if (!codaManager.contains(song)) {
-                        codaManager.add(song);
+                    Song brano = trovaBrano(current, song);
+                    if (brano != null) {
+                        codaManager.add(brano);
                     }
                 }
+                prepareNextTrack();
                 dialog.dispose();
                 JOptionPane.showMessageDialog(panel,
                     LanguageManager.get("queue.added.multiple"),
@@ -1485,9 +1715,7 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
      * Mostra i 10 brani più ascoltati con un grafico
      */
     private void mostraTopBrani() {
-    	Map<String, Integer> riproduzioni = FileManager.loadCounts(new File("resources/plays.count"));
-
-        List<Map.Entry<String, Integer>> top = new ArrayList<>(riproduzioni.entrySet());
+        List<Map.Entry<String, Integer>> top = PlayCountManager.getSongCountsWithTitles();
         top.sort((a, b) -> b.getValue() - a.getValue()); // ordinati decrescente
 
         int maxAscolti = top.isEmpty() ? 1 : top.get(0).getValue();
@@ -1519,7 +1747,7 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
     }
     
     private void mostraTopPlaylist() {
-    	Map<String, Integer> ascolti = FileManager.loadCounts(new File("resources/playlist_plays.count"));
+    	Map<String, Integer> ascolti = PlayCountManager.getPlaylistCounts();
         List<Map.Entry<String, Integer>> top = new ArrayList<>(ascolti.entrySet());
         top.sort((a, b) -> b.getValue() - a.getValue());
 
@@ -1554,8 +1782,10 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
      * @param titolo Il titolo della canzone da aggiungere.
      */
     public void aggiungiAllaCoda(String titolo) {
-        if (!codaManager.contains(titolo)) {
-        	codaManager.add(titolo);
+        Song brano = trovaBrano(panel.getPlaylist(), titolo);
+        if (brano != null && !codaManager.contains(brano)) {
+        	codaManager.add(brano);
+        	prepareNextTrack();
             Logger.writeLog(LanguageManager.get("queue.added") + titolo);
             JOptionPane.showMessageDialog(panel, LanguageManager.get("queue.added") + titolo);
         }
@@ -1567,14 +1797,111 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
      * @param titolo Il titolo della canzone da posizionare in testa alla coda.
      */
     public void aggiungiAllaCodaTop(String titolo) {
-        if (!codaManager.contains(titolo)) {
-            List<String> attuale = codaManager.asList();
-            attuale.add(0, titolo); // inserisce in testa
-            codaManager.replaceAll(attuale);
+        Song brano = trovaBrano(panel.getPlaylist(), titolo);
+        if (brano != null && !codaManager.contains(brano)) {
+            codaManager.addToTop(brano);
+            prepareNextTrack();
             Logger.writeLog(LanguageManager.get("queue.added") + titolo);
         }
     }
     
+    /**
+     * Cerca tutti i file MP3 sotto la cartella indicata. Eseguito in background.
+     *
+     * @return I file trovati; in caso di errore quelli trovati fino a quel momento.
+     */
+    private static List<File> cercaMP3(File root, FileTaskExecutor.Context ctx) {
+        List<File> files = new ArrayList<>();
+
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            Iterator<Path> it = paths.iterator();
+            while (it.hasNext()) {
+                ctx.checkCancelled();
+                Path p = it.next();
+                if (p.toString().toLowerCase().endsWith(".mp3")) files.add(p.toFile());
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            Logger.writeLog("Errore scansione MP3: " + ex.getMessage());
+        }
+        return files;
+    }
+
+    /**
+     * Mostra la finestra per aggiungere alla playlist i brani trovati che non ne fanno già parte.
+     *
+     * @param target La playlist a cui aggiungere i brani.
+     * @param files  I file MP3 trovati nelle cartelle delle playlist.
+     */
+    private void mostraAggiuntaBrani(Playlist target, List<File> files) {
+        // 2) costruisco mappa titolo→Song con percorso RELATIVO
+        Map<String,Song> songMap = new LinkedHashMap<>();
+        Path projectRoot = Paths.get("").toAbsolutePath();
+        for (File f : files) {
+            String title = f.getName()
+                            .substring(0, f.getName().length() - 4)
+                            .replace('_', ' ')
+                            .trim();
+            if (!songMap.containsKey(title) && target.indexOf(title) < 0) {
+                Path abs = f.toPath().toAbsolutePath();
+                Path rel = projectRoot.relativize(abs);
+                String relPath = rel.toString().replace("\\","/");
+                songMap.put(title, new Song(title, relPath));
+            }
+        }
+
+        // 3) lista di titoli da mostrare
+        String[] allTitles = songMap.keySet().stream()
+                                    .sorted(String.CASE_INSENSITIVE_ORDER)
+                                    .toArray(String[]::new);
+
+        // 4) dialog di selezione
+        JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(panel),
+                                     LanguageManager.get("playlist.add.songs"), true);
+        dialog.setLayout(new BorderLayout());
+        dialog.setSize(400, 400);
+        dialog.setLocationRelativeTo(panel);
+
+        JTextField search = new JTextField();
+        DefaultListModel<String> model = new DefaultListModel<>();
+        JList<String> list = new JList<>(model);
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        JScrollPane scroll = new JScrollPane(list);
+
+        // popolo
+        for (String t : allTitles) model.addElement(t);
+
+        // filtro dinamico
+        search.getDocument().addDocumentListener(new DocumentListener() {
+            void filter() {
+                String q = search.getText().toLowerCase();
+                model.clear();
+                for (String t : allTitles) {
+                    if (t.toLowerCase().contains(q)) model.addElement(t);
+                }
+            }
+            public void insertUpdate(DocumentEvent e) { filter(); }
+            public void removeUpdate(DocumentEvent e) { filter(); }
+            public void changedUpdate(DocumentEvent e) { filter(); }
+        });
+
+        JButton addBtn = new JButton(LanguageManager.get("label.add"));
+        addBtn.addActionListener(ev -> {
+            for (String t : list.getSelectedValuesList()) {
+                Song s = songMap.get(t);
+                if (s != null) target.addSong(s);
+            }
+            panel.setPlaylist(target);
+            PlaylistDataManager.savePlaylists(panel.getPlaylists());
+            panel.refreshComboBox();
+            dialog.dispose();
+        });
+
+        dialog.add(search, BorderLayout.NORTH);
+        dialog.add(scroll, BorderLayout.CENTER);
+        dialog.add(addBtn, BorderLayout.SOUTH);
+        dialog.setVisible(true);
+    }
+
     /**
      * Esporta un singolo file MP3 in una directory scelta dall'utente.
      */
@@ -1591,12 +1918,12 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
             result = destChooser.showSaveDialog(panel);
 
             if (result == JFileChooser.APPROVE_OPTION) {
-                try {
-                    Files.copy(source.toPath(), destChooser.getSelectedFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.export.mp3"));
-                } catch (IOException ex) {
-                    JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.error.export"), LanguageManager.get("popup.error"), JOptionPane.ERROR_MESSAGE);
-                }
+                File dest = destChooser.getSelectedFile();
+                fileTasks.submit(null, LanguageManager.get("item.export"), ctx -> {
+                    FileManager.copyFile(source, dest, ctx);
+                    return null;
+                }, ok -> JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.export.mp3")),
+                   ex -> JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.error.export"), LanguageManager.get("popup.error"), JOptionPane.ERROR_MESSAGE));
             }
         }
     }
@@ -1620,14 +1947,15 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
         if (chooser.showOpenDialog(panel) == JFileChooser.APPROVE_OPTION) {
             File destDir = chooser.getSelectedFile();
             File exportFolder = new File(destDir, pl.getName());
+            Playlist copia = PlaylistDataManager.copyOf(pl);
 
-            try {
-                PlaylistDataManager.exportPlaylist(pl, exportFolder);
-                JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.export.success"));
-            } catch (IOException e) {
+            fileTasks.submit(pl.getName(), LanguageManager.get("item.exportPlaylist"), ctx -> {
+                PlaylistDataManager.exportPlaylist(copia, exportFolder, ctx);
+                return null;
+            }, ok -> JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.export.success")), e -> {
                 Logger.writeLog(e.getMessage());
                 JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.error.export"), LanguageManager.get("popup.error"), JOptionPane.ERROR_MESSAGE);
-            }
+            });
         }
     }
 
@@ -1642,61 +1970,97 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = chooser.getSelectedFile();
 
-            try {
-                // 1) import della playlist
-                Playlist imported = PlaylistDataManager.importPlaylist(file);
-                String name = imported.getName();
-
-                // 2) controllo titoli non validi
-                for (String title : imported.getSongTitles()) {
-                    if (title.contains(".")) {
-                        JOptionPane.showMessageDialog(panel,
-                            "Il brano \"" + title + "\" contiene un punto (.) nel titolo e non può essere importato.\n" +
-                            "Rinomina il file o modifica il titolo prima di procedere.",
-                            "Importazione annullata",
-                            JOptionPane.ERROR_MESSAGE);
-                        return;
-                    }
-                }
+            // 1) import della playlist in background: la cartella esportata porta il nome della playlist
+            File folder = file.getAbsoluteFile().getParentFile();
+            String key = folder != null ? folder.getName() : null;
 
-                // 3) verifica duplicato
-                if (panel.getPlaylists().containsKey(name)) {
-                    JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.import.duplicate"));
-                    return;
-                }
+            fileTasks.submit(key, LanguageManager.get("item.importPlaylist"),
+                             ctx -> PlaylistDataManager.importPlaylist(file, ctx),
+                             this::aggiungiPlaylistImportata, e -> {
+                Logger.writeLog(e.getMessage());
+                JOptionPane.showMessageDialog(panel,
+                    LanguageManager.get("popup.error.import") + "\n" + e.getMessage(),
+                    LanguageManager.get("popup.error"),
+                    JOptionPane.ERROR_MESSAGE);
+            });
+        }
+    }
 
-                // 4) aggiungo la playlist all'app
-                panel.getPlaylists().put(name, imported);
-                panel.getPlaylistListModel().addElement(name);
-                PlaylistDataManager.savePlaylists(panel.getPlaylists());
+    /**
+     * Aggiunge all'applicazione una playlist appena importata, dopo averne controllato i titoli.
+     *
+     * @param imported La playlist letta e copiata da {@link PlaylistDataManager#importPlaylist}.
+     */
+    private void aggiungiPlaylistImportata(Playlist imported) {
+        String name = imported.getName();
 
-                // ────────────── inizializzo i contatori ──────────────
+        // 2) controllo titoli non validi
+        for (String title : imported.getTitles()) {
+            if (title.contains(".")) {
+                JOptionPane.showMessageDialog(panel,
+                    "Il brano \"" + title + "\" contiene un punto (.) nel titolo e non può essere importato.\n" +
+                    "Rinomina il file o modifica il titolo prima di procedere.",
+                    "Importazione annullata",
+                    JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
 
-                // 5) per ogni canzone, assicuro un contatore in plays.count
-                File playsFile = new File("resources/plays.count");
-                Map<String, Integer> plays = FileManager.loadCounts(playsFile);
-                for (String title : imported.getSongTitles()) {
-                    plays.putIfAbsent(title, 0);
-                }
-                FileManager.saveCounts(plays, playsFile);
+        // 3) verifica duplicato
+        if (panel.getPlaylists().containsKey(name)) {
+            JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.import.duplicate"));
+            return;
+        }
 
-                // 6) per la playlist appena importata, inizializzo in playlist_plays.count
-                File plPlaysFile = new File("resources/playlist_plays.count");
-                Map<String, Integer> plPlays = FileManager.loadCounts(plPlaysFile);
-                plPlays.putIfAbsent(name, 0);
-                FileManager.saveCounts(plPlays, plPlaysFile);
+        // 4) aggiungo la playlist all'app
+        panel.getPlaylists().put(name, imported);
+        panel.getPlaylistListModel().addElement(name);
+        PlaylistDataManager.savePlaylists(panel.getPlaylists());
 
-                // ───────────────────────────────────────────────────────
+        // ────────────── inizializzo i contatori ──────────────
 
-                JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.import.success"));
-            } catch (IOException e) {
-                Logger.writeLog(e.getMessage());
-                JOptionPane.showMessageDialog(panel,
-                    LanguageManager.get("popup.error.import") + "\n" + e.getMessage(),
-                    LanguageManager.get("popup.error"),
-                    JOptionPane.ERROR_MESSAGE);
+        // 5) per ogni canzone, assicuro un contatore degli ascolti
+        for (Song song : imported.getSongs()) {
+            PlayCountManager.ensureSong(song);
+        }
+
+        // 6) e lo stesso per la playlist appena importata
+        PlayCountManager.ensurePlaylist(name);
+
+        // ───────────────────────────────────────────────────────
+
+        JOptionPane.showMessageDialog(panel, LanguageManager.get("popup.import.success"));
+    }
+
+    /**
+     * Sposta gli MP3 di una playlist eliminata nella cartella principale e rimuove la sua cartella.
+     * Eseguito in background.
+     */
+    private static void svuotaCartellaPlaylist(File dir, File root, FileTaskExecutor.Context ctx) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        // sposto prima tutti i .mp3 nella root
+        for (int i = 0; i < files.length; i++) {
+            ctx.checkCancelled();
+            ctx.setProgress(i, files.length);
+
+            File f = files[i];
+            if (f.isFile() && f.getName().toLowerCase().endsWith(".mp3")) {
+                Path src = f.toPath();
+                Path dst = root.toPath().resolve(f.getName());
+                try {
+                    Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    Logger.writeLog("Errore spostando " + f.getName() + ": " + ex.getMessage());
+                }
             }
         }
+        // poi pulisco eventuali file residui (es. cover.jpg, data.json) e rimuovo la cartella
+        for (File f : dir.listFiles()) {
+            try { f.delete(); } catch (Exception ignore) {}
+        }
+        dir.delete();
     }
     
     /**
@@ -1721,6 +2085,10 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
     		case CASUALE:
     			r = "CASUALE";
     			break;
+
+    		case RADIO:
+    			r = "RADIO";
+    			break;
     	}
     	
     	try 
@@ -1898,18 +2266,13 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
 	                } 
 	                else 
 	                {
-	                	panel.getPlayer().setPanel(panel);
-	                	panel.getPlayer().setSemaphore(playbackSemaphore);
 	                    panel.getPlayer().resume();
 	                }
 	                
 	                //panel.getPlayPauseButton().setText("||");
-	                playbackSemaphore.release();
 	            } 
 	            else 
 	            {
-	            	panel.getPlayer().setPanel(panel);
-	            	panel.getPlayer().setSemaphore(playbackSemaphore);
 	                panel.getPlayer().pause();
 	                //panel.getPlayPauseButton().setText(">");
 	            }
@@ -2051,8 +2414,10 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
 	public void changedUpdate(DocumentEvent e) {panel.filterSongs();}
 	
 	public Mode getPlaybackMode() { return playbackMode; }
-	
-	public Semaphore getPlaybackSemaphore() { return playbackSemaphore; }
+
+	public FileTaskExecutor getFileTasks() { return fileTasks; }
+
+	public QueueManager getCodaManager() { return codaManager; }
 	
 	public void setSuppressComboBoxPlayback(boolean value) {
 	    this.suppressComboBoxPlayback = value;
@@ -2060,4 +2425,4 @@ public class Controller implements ActionListener, ChangeListener, DocumentListe
 	public boolean isSuppressComboBoxPlayback() {
 	    return this.suppressComboBoxPlayback;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
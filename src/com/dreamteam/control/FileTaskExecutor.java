@@ -0,0 +1,304 @@
+package com.dreamteam.control;
+
+import java.awt.Component;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+/**
+ * Esegue lontano dall'EDT le operazioni sui file avviate dall'interfaccia: copie di MP3,
+ * spostamenti, esportazioni e importazioni di playlist, scansioni delle cartelle.
+ * <p>
+ * Il pool ha {@value #THREADS} thread e una coda di {@value #QUEUE_CAPACITY} operazioni: oltre
+ * quel limite la richiesta viene rifiutata invece di accumularsi. Le operazioni sulla stessa
+ * playlist vengono eseguite una alla volta, nell'ordine in cui sono state richieste, così due
+ * modifiche concorrenti alla stessa cartella non si sovrappongono; quelle su playlist diverse
+ * procedono in parallelo. Quando una playlist viene rinominata mentre ha operazioni in coda, il
+ * nuovo nome viene instradato sulla stessa coda ({@link #alias}) finché questa non si svuota.
+ * </p>
+ * <p>
+ * L'operazione riceve un {@link Context} con cui riportare l'avanzamento e sapere se è stata
+ * annullata. L'avanzamento viene mostrato in un {@link ProgressMonitor} con il pulsante Annulla,
+ * e il risultato o l'errore vengono consegnati sull'EDT, dove si può aggiornare l'interfaccia.
+ * </p>
+ */
+public class FileTaskExecutor {
+    static final int THREADS = 2;
+    static final int QUEUE_CAPACITY = 16;
+
+    private final Component parent;
+    private final ThreadPoolExecutor pool;
+    // code delle playlist con un'operazione in corso, protette da lanes
+    private final Map<String, ArrayDeque<Task<?>>> lanes = new HashMap<>();
+    // nomi instradati sulla coda di un altro nome finché questa esiste, protetti da lanes
+    private final Map<String, String> aliases = new HashMap<>();
+
+    /**
+     * Lavoro da eseguire su un thread del pool.
+     *
+     * @param <T> Il tipo del risultato, consegnato sull'EDT.
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Context context) throws Exception;
+    }
+
+    /**
+     * Contesto di un'operazione in corso, usato dal thread del pool.
+     */
+    public interface Context {
+        /**
+         * Riporta l'avanzamento. Si può chiamare spesso: l'interfaccia riceve solo l'ultimo valore.
+         */
+        void setProgress(int done, int total);
+
+        boolean isCancelled();
+
+        /**
+         * Interrompe l'operazione se è stata annullata.
+         *
+         * @throws CancellationException se l'utente ha annullato l'operazione.
+         */
+        default void checkCancelled() {
+            if (isCancelled()) throw new CancellationException();
+        }
+    }
+
+    /**
+     * @param parent Il componente su cui centrare le finestre di avanzamento.
+     */
+    public FileTaskExecutor(Component parent) {
+        this.parent = parent;
+
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                                      new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+            Thread t = new Thread(r, "FileTask-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Avvia un'operazione. Va chiamato dall'EDT.
+     *
+     * @param playlist  Il nome della playlist su cui lavora l'operazione, oppure {@code null}
+     *                  se non va serializzata con nessun'altra.
+     * @param message   Il testo della finestra di avanzamento, oppure {@code null} per non mostrarla.
+     * @param work      Il lavoro, eseguito su un thread del pool.
+     * @param onSuccess Chiamato sull'EDT con il risultato; non viene chiamato se l'operazione è annullata.
+     * @param onError   Chiamato sull'EDT se il lavoro lancia un'eccezione o il pool è pieno.
+     * @return L'operazione, che si può annullare.
+     */
+    public <T> Task<T> submit(String playlist, String message, Work<T> work,
+                              Consumer<? super T> onSuccess, Consumer<? super Exception> onError) {
+        Task<T> task = new Task<>(this, message, work, onSuccess, onError);
+
+        try {
+            if (playlist == null) {
+                pool.execute(task);
+                return task;
+            }
+
+            String key;
+            synchronized (lanes) {
+                key = aliases.getOrDefault(playlist, playlist);
+                ArrayDeque<Task<?>> lane = lanes.get(key);
+                if (lane != null) {
+                    // c'è già un'operazione sulla playlist: questa partirà dopo
+                    lane.add(task);
+                    return task;
+                }
+                lanes.put(key, new ArrayDeque<>());
+            }
+
+            try {
+                pool.execute(() -> drain(key, task));
+            } catch (RejectedExecutionException e) {
+                synchronized (lanes) {
+                    lanes.remove(key);
+                    aliases.values().removeIf(key::equals);
+                }
+                throw e;
+            }
+        } catch (RejectedExecutionException e) {
+            Logger.writeLog("FileTaskExecutor: troppe operazioni in attesa, richiesta rifiutata");
+            task.fail(e);
+        }
+        return task;
+    }
+
+    /**
+     * Accoda le operazioni avviate su {@code name} a quelle di {@code playlist}, finché la coda di
+     * quest'ultima non si svuota. Serve quando una playlist viene rinominata: le operazioni sul nuovo
+     * nome devono partire solo dopo quelle ancora in coda sul vecchio, rinomina della cartella compresa.
+     * Se {@code playlist} non ha operazioni in coda la chiamata non ha effetto. Va chiamato dall'EDT.
+     *
+     * @param name     Il nuovo nome della playlist.
+     * @param playlist Il nome con cui sono state avviate le operazioni ancora in coda.
+     */
+    public void alias(String name, String playlist) {
+        synchronized (lanes) {
+            String key = aliases.getOrDefault(playlist, playlist);
+            if (lanes.containsKey(key) && !key.equals(name)) aliases.put(name, key);
+        }
+    }
+
+    /**
+     * Attende che le operazioni in corso e in coda terminino, ad esempio prima di chiudere
+     * l'applicazione, e non ne accetta altre.
+     *
+     * @return true se sono terminate tutte entro il tempo indicato.
+     */
+    public boolean shutdown(long timeoutMillis) {
+        pool.shutdown();
+        try {
+            return pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Esegue sullo stesso thread le operazioni della playlist finché la sua coda non è vuota.
+     */
+    private void drain(String playlist, Task<?> first) {
+        Task<?> task = first;
+        while (task != null) {
+            task.run();
+
+            synchronized (lanes) {
+                task = lanes.get(playlist).poll();
+                if (task == null) {
+                    lanes.remove(playlist);
+                    aliases.values().removeIf(playlist::equals);
+                }
+            }
+        }
+    }
+
+    /**
+     * Un'operazione avviata con {@link #submit}.
+     */
+    public static final class Task<T> implements Runnable, Context {
+        private static final long NO_PROGRESS = -1;
+
+        private final FileTaskExecutor owner;
+        private final String message;
+        private final Work<T> work;
+        private final Consumer<? super T> onSuccess;
+        private final Consumer<? super Exception> onError;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        // ultimo avanzamento non ancora mostrato: done << 32 | total
+        private final AtomicLong pendingProgress = new AtomicLong(NO_PROGRESS);
+        private ProgressMonitor monitor; // solo EDT
+
+        private Task(FileTaskExecutor owner, String message, Work<T> work,
+                     Consumer<? super T> onSuccess, Consumer<? super Exception> onError) {
+            this.owner = owner;
+            this.message = message;
+            this.work = work;
+            this.onSuccess = onSuccess;
+            this.onError = onError;
+        }
+
+        /** Annulla l'operazione: se non è ancora partita non partirà, altrimenti si fermerà al prossimo controllo. */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public void setProgress(int done, int total) {
+            long packed = ((long) Math.max(0, done) << 32) | (Math.max(0, total) & 0xFFFFFFFFL);
+            // si pianifica un aggiornamento solo se non ce n'è già uno in attesa
+            if (pendingProgress.getAndSet(packed) == NO_PROGRESS && message != null) {
+                SwingUtilities.invokeLater(this::showProgress);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                finish(null, null);
+                return;
+            }
+
+            try {
+                T result = work.run(this);
+                finish(result, null);
+            } catch (CancellationException e) {
+                finish(null, null);
+            } catch (Exception e) {
+                finish(null, e);
+            }
+        }
+
+        private void fail(Exception e) {
+            finish(null, e);
+        }
+
+        private void finish(T result, Exception error) {
+            done = true;
+            SwingUtilities.invokeLater(() -> {
+                closeMonitor();
+                if (error != null) {
+                    Logger.writeLog("FileTaskExecutor: operazione fallita - " + error.getMessage());
+                    if (onError != null) onError.accept(error);
+                } else if (cancelled) {
+                    Logger.writeLog("FileTaskExecutor: operazione annullata" + (message != null ? " - " + message : ""));
+                } else if (onSuccess != null) {
+                    onSuccess.accept(result);
+                }
+            });
+        }
+
+        private void showProgress() {
+            long packed = pendingProgress.getAndSet(NO_PROGRESS);
+            if (packed == NO_PROGRESS || done) return;
+
+            int current = (int) (packed >>> 32);
+            int total = (int) packed;
+
+            if (monitor == null) {
+                // la finestra compare solo se l'operazione dura abbastanza
+                monitor = new ProgressMonitor(owner.parent, message, null, 0, Math.max(1, total));
+            }
+            if (monitor.isCanceled()) {
+                cancel();
+                return;
+            }
+            monitor.setMaximum(Math.max(1, total));
+            monitor.setProgress(Math.min(current, Math.max(1, total) - 1));
+        }
+
+        private void closeMonitor() {
+            if (monitor != null) {
+                monitor.close();
+                monitor = null;
+            }
+        }
+    }
+}
@@ -3,5 +3,6 @@ package com.dreamteam.control;
 public enum Mode {
     SEQUENZIALE,
     CASUALE,
-    RIPETI
+    RIPETI,
+    RADIO
 }
\ No newline at end of file
@@ -67,7 +67,7 @@ public class PlaylistRenderer extends JPanel implements ListCellRenderer<String>
 	public Component getListCellRendererComponent(JList<? extends String> list, String value, int index, boolean isSelected, boolean cellHasFocus) {
 	    Playlist pl = panel.getPlaylists().get(value);
 	    nameLabel.setText(value);
-	    countLabel.setText((pl != null ? pl.getSongTitles().length : 0) + " " + LanguageManager.get("label.tracks"));
+	    countLabel.setText((pl != null ? pl.size() : 0) + " " + LanguageManager.get("label.tracks"));
 
 	    // Copertina
 	    if (pl != null && pl.getCoverImage() != null) {
@@ -0,0 +1,59 @@
+package com.dreamteam.control;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import com.dreamteam.audio.PlaybackClock;
+import com.dreamteam.view.ProgressSliderModel;
+
+/**
+ * Aggiorna lo slider di avanzamento leggendo l'orologio di riproduzione a frequenza fissa.
+ * <p>
+ * Un unico {@link Timer} Swing, attivo solo durante la riproduzione, legge la posizione
+ * dall'orologio (senza lock) e la passa al modello dello slider. Ogni tick lavora solo
+ * con valori primitivi e non alloca oggetti; se la posizione non è cambiata non viene
+ * notificato nessun listener.
+ * </p>
+ */
+public class ProgressUpdater implements ActionListener {
+	private final PlaybackClock clock;
+	private final ProgressSliderModel model;
+	private final Timer timer;
+
+	/**
+	 * @param clock L'orologio del motore di riproduzione.
+	 * @param model Il modello dello slider da aggiornare.
+	 * @param fps   Aggiornamenti al secondo.
+	 */
+	public ProgressUpdater(PlaybackClock clock, ProgressSliderModel model, int fps) {
+		this.clock = clock;
+		this.model = model;
+
+		int delay = 1000 / Math.max(1, Math.min(fps, 1000));
+		timer = new Timer(delay, this);
+		timer.setCoalesce(true);
+	}
+
+	/** Avvia gli aggiornamenti periodici (riproduzione in corso). */
+	public void start() {
+		if (!timer.isRunning()) timer.start();
+	}
+
+	/** Ferma gli aggiornamenti periodici, mostrando un'ultima volta la posizione. */
+	public void stop() {
+		timer.stop();
+		refresh();
+	}
+
+	/** Mostra subito la posizione corrente. */
+	public void refresh() {
+		model.setProgress(clock.getProgress(ProgressSliderModel.RESOLUTION));
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		refresh();
+	}
+}
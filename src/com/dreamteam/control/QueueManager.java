@@ -1,49 +1,342 @@
 package com.dreamteam.control;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
+import com.dreamteam.data.QueueJournal;
+import com.dreamteam.model.Song;
+
+/**
+ * Coda di riproduzione personalizzata.
+ * <p>
+ * I brani sono identificati dal contenuto del loro file ({@link Song#getId()}) e non dal titolo
+ * mostrato: due brani con lo stesso titolo restano distinti, mentre lo stesso file presente in più
+ * playlist entra in coda una volta sola. L'ordine è tenuto in un treap implicito (un albero binario
+ * bilanciato in modo casuale in cui la posizione di un nodo è data dalla dimensione dei sottoalberi
+ * alla sua sinistra), e una mappa associa ogni brano al suo nodo.
+ * </p>
+ * <p>
+ * Finché l'impronta di un file non è pronta il brano è identificato dal percorso; quando le impronte
+ * sono state calcolate {@link #rekey()} riallinea la mappa.
+ * </p>
+ * <p>
+ * {@link #contains} costa O(1); inserimento in testa o in coda, estrazione, rimozione e spostamento
+ * in una posizione qualsiasi costano O(log n) attesi, senza copiare la coda.
+ * </p>
+ * <p>
+ * Con un {@link QueueJournal} la coda sopravvive alla chiusura e agli arresti improvvisi:
+ * ogni modifica aggiunge una riga al registro e all'avvio la coda viene ricostruita da lì.
+ * </p>
+ * <p>
+ * Non è thread-safe: viene usata solo dall'EDT.
+ * </p>
+ */
 public class QueueManager {
-    private final Queue<String> queue = new LinkedList<>();
+    private static final long SAVE_TIMEOUT_MILLIS = 2000;
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private Node root;
+    private final QueueJournal journal; // null se la coda non è persistente
+
+    private static final class Node {
+        final Song song;
+        String key; // identità con cui il nodo è nella mappa
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int size = 1;
+        Node left;
+        Node right;
+        Node parent;
+
+        Node(Song song) {
+            this.song = song;
+        }
+    }
+
+    /**
+     * Crea una coda vuota che vive solo in memoria.
+     */
+    public QueueManager() {
+        this.journal = null;
+    }
+
+    /**
+     * Crea una coda persistente, ripristinando quella salvata nel registro.
+     */
+    public QueueManager(QueueJournal journal) {
+        journal.replay(this);
+        this.journal = journal;
+        // riparte da un'istantanea, che scarta anche un'eventuale riga troncata del registro
+        journal.snapshot(asList());
+    }
+
+    /**
+     * Aggiunge un brano in fondo alla coda, se non è già presente.
+     */
+    public void add(Song song) {
+        if (contains(song)) return;
+        root = merge(root, newNode(song));
+        if (journal != null) journal.add(song);
+        compactJournal();
+    }
+
+    /**
+     * Aggiunge un brano in testa alla coda, se non è già presente.
+     */
+    public void addToTop(Song song) {
+        if (contains(song)) return;
+        root = merge(newNode(song), root);
+        if (journal != null) journal.addToTop(song);
+        compactJournal();
+    }
+
+    public boolean contains(Song song) {
+        return song != null && nodes.containsKey(key(song));
+    }
 
-    public void add(String song) {
-        if (!queue.contains(song)) queue.add(song);
+    /**
+     * Estrae il brano in testa alla coda.
+     *
+     * @return Il brano, oppure {@code null} se la coda è vuota.
+     */
+    public Song poll() {
+        if (root == null) return null;
+
+        Node[] parts = split(root, 1);
+        root = parts[1];
+        unmap(parts[0]);
+        if (journal != null) journal.poll();
+        compactJournal();
+        return parts[0].song;
+    }
+
+    /** @return Il brano in testa alla coda, oppure {@code null} se è vuota. */
+    public Song peek() {
+        return get(0);
+    }
+
+    /**
+     * @return Il brano nella posizione indicata, oppure {@code null} se la posizione è fuori dalla coda.
+     */
+    public Song get(int index) {
+        if (index < 0 || index >= size()) return null;
+
+        Node node = root;
+        while (true) {
+            int left = size(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index == left) {
+                return node.song;
+            } else {
+                index -= left + 1;
+                node = node.right;
+            }
+        }
     }
 
-    public void addToTop(String song) {
-        if (!queue.contains(song)) {
-            Queue<String> temp = new LinkedList<>();
-            temp.add(song);
-            temp.addAll(queue);
-            queue.clear();
-            queue.addAll(temp);
+    /**
+     * @return La posizione del brano nella coda, oppure -1 se non è in coda.
+     */
+    public int indexOf(Song song) {
+        Node node = song != null ? nodes.get(key(song)) : null;
+        if (node == null) return -1;
+
+        // risalendo, ogni volta che si arriva da destra si contano il genitore e il suo sottoalbero sinistro
+        int index = size(node.left);
+        for (Node child = node, parent = node.parent; parent != null; child = parent, parent = parent.parent) {
+            if (parent.right == child) index += size(parent.left) + 1;
         }
+        return index;
     }
-    
-    public boolean contains(String song) {
-        return queue.contains(song);
+
+    /**
+     * Toglie un brano dalla coda.
+     *
+     * @return true se il brano era in coda.
+     */
+    public boolean remove(Song song) {
+        int index = indexOf(song);
+        if (index < 0) return false;
+
+        detach(index);
+        if (journal != null) journal.remove(song);
+        compactJournal();
+        return true;
+    }
+
+    /**
+     * Sposta un brano già in coda nella posizione indicata, calcolata dopo averlo tolto.
+     * Le posizioni oltre la fine lo portano in fondo.
+     *
+     * @return true se il brano era in coda.
+     */
+    public boolean moveTo(Song song, int position) {
+        int index = indexOf(song);
+        if (index < 0) return false;
+
+        Node node = detach(index);
+        nodes.put(node.key, node);
+        Node[] parts = split(root, Math.max(0, Math.min(position, size())));
+        root = merge(merge(parts[0], node), parts[1]);
+        if (journal != null) journal.moveTo(song, position);
+        compactJournal();
+        return true;
     }
 
-    public String poll() {
-        return queue.poll();
+    public int size() {
+        return size(root);
     }
 
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return root == null;
+    }
+
+    /** @return Una copia dei brani in coda, dalla testa. */
+    public List<Song> asList() {
+        List<Song> list = new ArrayList<>(size());
+        forEach(root, node -> list.add(node.song));
+        return list;
     }
 
-    public List<String> asList() {
-        return new LinkedList<>(queue);
+    /**
+     * Ricalcola l'identità dei brani in coda. Va chiamato quando le impronte dei file sono pronte,
+     * perché i brani aggiunti prima erano identificati dal percorso. Se due brani in coda risultano
+     * lo stesso file restano entrambi, ma solo il primo viene trovato da {@link #contains} e simili.
+     */
+    public void rekey() {
+        nodes.clear();
+        forEach(root, node -> {
+            node.key = key(node.song);
+            nodes.putIfAbsent(node.key, node);
+        });
     }
 
-    public void replaceAll(List<String> newQueue) {
-        queue.clear();
-        queue.addAll(newQueue);
+    /**
+     * Svuota la coda.
+     */
+    public void clear() {
+        nodes.clear();
+        root = null;
+        if (journal != null) journal.clear();
+        compactJournal();
     }
-    
-    public Iterator<String> iterator() {
-        return queue.iterator();
+
+    /**
+     * Sostituisce l'intera coda, ignorando i brani ripetuti.
+     */
+    public void replaceAll(List<Song> newQueue) {
+        clear();
+        for (Song song : newQueue) add(song);
+    }
+
+    /**
+     * Salva la coda in un'istantanea, attendendo al massimo un paio di secondi.
+     * Da chiamare alla chiusura dell'applicazione; senza registro non fa nulla.
+     */
+    public void save() {
+        if (journal != null) journal.save(asList(), SAVE_TIMEOUT_MILLIS);
+    }
+
+    /** Sostituisce il registro con un'istantanea quando è diventato lungo. */
+    private void compactJournal() {
+        if (journal != null && journal.needsSnapshot()) journal.snapshot(asList());
+    }
+
+    /** @return L'identità di un brano nella coda. */
+    private static String key(Song song) {
+        return song.getId();
+    }
+
+    // ─────────────── treap ───────────────
+
+    private Node newNode(Song song) {
+        Node node = new Node(song);
+        node.key = key(song);
+        nodes.put(node.key, node);
+        return node;
+    }
+
+    /** Toglie il nodo dalla mappa, se è lui a rappresentare la sua identità. */
+    private void unmap(Node node) {
+        nodes.remove(node.key, node);
+    }
+
+    /** Stacca il nodo nella posizione indicata e lo toglie dalla mappa. */
+    private Node detach(int index) {
+        Node[] left = split(root, index);
+        Node[] right = split(left[1], 1);
+        root = merge(left[0], right[1]);
+
+        Node node = right[0];
+        unmap(node);
+        return node;
+    }
+
+    /**
+     * Divide l'albero nei primi {@code count} nodi e nei restanti.
+     */
+    private static Node[] split(Node node, int count) {
+        if (node == null) return new Node[2];
+
+        Node[] parts;
+        if (size(node.left) >= count) {
+            parts = split(node.left, count);
+            node.left = parts[1];
+            setParent(parts[1], node);
+            parts[1] = node;
+        } else {
+            parts = split(node.right, count - size(node.left) - 1);
+            node.right = parts[0];
+            setParent(parts[0], node);
+            parts[0] = node;
+        }
+        update(node);
+        setParent(parts[0], null);
+        setParent(parts[1], null);
+        return parts;
+    }
+
+    /**
+     * Unisce due alberi, con tutti i nodi di {@code a} prima di quelli di {@code b}.
+     */
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            setParent(a.right, a);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        setParent(b.left, b);
+        update(b);
+        return b;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static void setParent(Node node, Node parent) {
+        if (node != null) node.parent = parent;
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    /** Visita i nodi in ordine, dalla testa della coda. */
+    private static void forEach(Node node, Consumer<Node> action) {
+        while (node != null) {
+            forEach(node.left, action);
+            action.accept(node);
+            node = node.right;
+        }
     }
 }
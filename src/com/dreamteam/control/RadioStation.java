@@ -0,0 +1,336 @@
+package com.dreamteam.control;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.random.RandomGenerator;
+
+import com.dreamteam.data.PlayCountManager;
+import com.dreamteam.data.PlayHistory;
+import com.dreamteam.data.PlayHistoryManager;
+import com.dreamteam.model.Song;
+
+/**
+ * Modalità RADIO: una coda automatica senza fine, scelta brano per brano in base a quello che
+ * si sta ascoltando.
+ * <p>
+ * La stazione tiene una finestra dei prossimi {@value #WINDOW} brani. Quando un brano della finestra
+ * parte, il thread "RadioWorker" ne sceglie un altro da mettere in fondo, per cui passare al brano
+ * successivo è solo l'estrazione dalla testa della finestra. Ogni scelta parte dall'ultimo brano
+ * della finestra e confronta {@value #CANDIDATES} candidati: metà dello stesso autore, un quarto
+ * della stessa cartella (di solito lo stesso album) e il resto presi a caso. Vince il punteggio più
+ * alto tra somiglianza, pochi ascolti e un po' di casualità; i brani ascoltati di recente (secondo
+ * la cronologia) e quelli già nella finestra sono esclusi. Il costo di una scelta non dipende quindi
+ * dalla dimensione della playlist.
+ * </p>
+ * <p>
+ * Autori e cartelle vengono raggruppati una volta per playlist, in background, su una copia
+ * dell'elenco dei brani; quando la playlist cambia il raggruppamento viene rifatto e la finestra
+ * ricalcolata.
+ * </p>
+ * <p>
+ * I metodi pubblici vanno chiamati dall'EDT.
+ * </p>
+ */
+public class RadioStation {
+    static final int WINDOW = 5;
+    static final int CANDIDATES = 48;
+    static final int RECENT_HISTORY = 50;
+
+    private static final double SAME_AUTHOR_BONUS = 2.0;
+    private static final double SAME_FOLDER_BONUS = 1.5;
+    private static final double REPEAT_PENALTY = 1.0;
+    private static final double JITTER = 0.75;
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "RadioWorker");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private final RandomGenerator random;
+    // protetti da this
+    private final ArrayDeque<String> window = new ArrayDeque<>();
+    private List<Song> songs;      // ultima copia dei brani ricevuta
+    private Library library;       // raggruppamento di songs, null finché non è pronto
+    private String current;
+    private int generation;        // cambia quando la finestra viene ricominciata
+    private boolean refilling;
+
+    /**
+     * @param random Il generatore di numeri casuali, usato anche dal thread di sfondo.
+     */
+    public RadioStation(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * Imposta i brani tra cui scegliere. L'elenco viene copiato e raggruppato in background;
+     * la finestra viene ricalcolata.
+     *
+     * @param songs I brani della playlist in riproduzione.
+     */
+    public void setSongs(List<Song> songs) {
+        List<Song> copy = new ArrayList<>(songs);
+        synchronized (this) {
+            this.songs = copy;
+            library = null;
+            generation++;
+            window.clear();
+            refilling = true;
+        }
+
+        worker.execute(() -> {
+            Library built = new Library(copy);
+            synchronized (this) {
+                // superato da un elenco più recente, che ha già il suo raggruppamento in coda
+                if (this.songs != copy) return;
+                if (library == null) library = built;
+            }
+            refill();
+        });
+    }
+
+    /**
+     * Restituisce il brano che seguirà quello corrente senza toglierlo dalla finestra.
+     * Se il thread di sfondo non ha ancora scelto nulla, il brano viene scelto ora.
+     *
+     * @return Il titolo, oppure {@code null} se non ci sono brani.
+     */
+    public String peek() {
+        synchronized (this) {
+            if (!window.isEmpty()) return window.peekFirst();
+        }
+        return pickNow();
+    }
+
+    /** @return I prossimi brani della finestra, dal primo. */
+    public synchronized List<String> upcoming() {
+        return new ArrayList<>(window);
+    }
+
+    /**
+     * Segnala che un brano è partito. Se è la testa della finestra viene tolto, altrimenti
+     * (scelto dall'utente o dalla coda) la finestra viene ricalcolata a partire da lui.
+     */
+    public void played(String title) {
+        synchronized (this) {
+            current = title;
+            if (title != null && title.equals(window.peekFirst())) {
+                window.pollFirst();
+            } else {
+                generation++;
+                window.clear();
+            }
+            if (refilling || library == null) return;
+            refilling = true;
+        }
+        worker.execute(this::refill);
+    }
+
+    // ─────────────── scelta ───────────────
+
+    /**
+     * Sceglie subito un brano sul thread chiamante, quando la finestra è ancora vuota.
+     * Se il raggruppamento non è ancora pronto il brano viene preso a caso, per non
+     * bloccare l'interfaccia.
+     */
+    private String pickNow() {
+        Library lib;
+        List<Song> all;
+        String seed;
+        int gen;
+        synchronized (this) {
+            lib = library;
+            all = songs;
+            seed = current;
+            gen = generation;
+        }
+        if (all == null || all.isEmpty()) return null;
+
+        String title;
+        if (lib != null) {
+            title = lib.pick(seed, List.of(), excluded(null), random);
+        } else {
+            int i = random.nextInt(all.size());
+            title = all.get(i).getTitle();
+            if (all.size() > 1 && title.equals(seed)) title = all.get((i + 1) % all.size()).getTitle();
+        }
+
+        synchronized (this) {
+            if (title != null && gen == generation && window.isEmpty()) window.addLast(title);
+            return window.isEmpty() ? title : window.peekFirst();
+        }
+    }
+
+    /**
+     * Riempie la finestra sul thread di sfondo, un brano alla volta.
+     */
+    private void refill() {
+        int misses = 0;
+        while (true) {
+            int gen;
+            Library lib;
+            String seed;
+            List<String> pending;
+            synchronized (this) {
+                int target = library != null ? Math.min(WINDOW, library.titles.length - 1) : 0;
+                if (window.size() >= target || misses > 4 * WINDOW) {
+                    refilling = false;
+                    return;
+                }
+                gen = generation;
+                lib = library;
+                seed = window.isEmpty() ? current : window.peekLast();
+                pending = new ArrayList<>(window);
+            }
+
+            String title = lib.pick(seed, pending, excluded(pending), random);
+
+            synchronized (this) {
+                // se nel frattempo la finestra è stata ricominciata la scelta non vale più
+                if (gen == generation && lib == library && !window.contains(title)) {
+                    window.addLast(title);
+                } else {
+                    misses++;
+                }
+            }
+        }
+    }
+
+    /** @return I titoli da non scegliere: quelli ascoltati di recente, il corrente e quelli in finestra. */
+    private Set<String> excluded(List<String> pending) {
+        Set<String> excluded = new HashSet<>();
+        for (PlayHistory.Entry entry : PlayHistoryManager.recent(RECENT_HISTORY)) excluded.add(entry.getTitle());
+        synchronized (this) {
+            if (current != null) excluded.add(current);
+        }
+        if (pending != null) excluded.addAll(pending);
+        return excluded;
+    }
+
+    /**
+     * I brani della playlist raggruppati per autore e per cartella. Immutabile dopo la costruzione.
+     */
+    private static final class Library {
+        private static final int[] NONE = new int[0];
+
+        final Song[] songs;
+        final String[] titles;
+        final int[] author;   // gruppo dell'autore, -1 se sconosciuto
+        final int[] folder;   // gruppo della cartella
+        final int[][] authorMembers;
+        final int[][] folderMembers;
+        final Map<String, Integer> index;
+
+        Library(List<Song> songs) {
+            int n = songs.size();
+            this.songs = songs.toArray(new Song[0]);
+            titles = new String[n];
+            author = new int[n];
+            folder = new int[n];
+            index = new HashMap<>(n * 2);
+
+            Map<String, Integer> authorIds = new HashMap<>();
+            Map<String, Integer> folderIds = new HashMap<>();
+            List<List<Integer>> authorGroups = new ArrayList<>();
+            List<List<Integer>> folderGroups = new ArrayList<>();
+
+            for (int i = 0; i < n; i++) {
+                Song song = songs.get(i);
+                titles[i] = song.getTitle();
+                index.putIfAbsent(titles[i], i);
+
+                String name = song.getAuthor();
+                author[i] = name != null && !name.isBlank() ? group(name.trim().toLowerCase(), i, authorIds, authorGroups) : -1;
+
+                String path = song.getPath();
+                int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+                folder[i] = group(slash > 0 ? path.substring(0, slash) : "", i, folderIds, folderGroups);
+            }
+
+            authorMembers = toArrays(authorGroups);
+            folderMembers = toArrays(folderGroups);
+        }
+
+        /**
+         * Sceglie il brano con il punteggio migliore tra i candidati simili a {@code seed} e alcuni casuali.
+         * Gli autori già presenti nella finestra sono penalizzati, così la radio non resta sullo stesso
+         * autore all'infinito.
+         *
+         * @return Il titolo, oppure {@code null} se la playlist è vuota.
+         */
+        String pick(String seed, List<String> pending, Set<String> excluded, RandomGenerator random) {
+            int n = titles.length;
+            if (n == 0) return null;
+
+            Integer seedIndex = seed != null ? index.get(seed) : null;
+            Map<Integer, Integer> authorsInWindow = new HashMap<>();
+            for (String title : pending) {
+                Integer i = index.get(title);
+                if (i != null && author[i] >= 0) authorsInWindow.merge(author[i], 1, Integer::sum);
+            }
+            int[] sameAuthor = seedIndex != null && author[seedIndex] >= 0 ? authorMembers[author[seedIndex]] : NONE;
+            int[] sameFolder = seedIndex != null ? folderMembers[folder[seedIndex]] : NONE;
+
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < CANDIDATES; c++) {
+                int[] source = c < CANDIDATES / 2 ? sameAuthor : c < CANDIDATES * 3 / 4 ? sameFolder : null;
+                int i = source != null && source.length > 0 ? source[random.nextInt(source.length)] : random.nextInt(n);
+                if (excluded.contains(titles[i])) continue;
+
+                double score = score(i, seedIndex, random);
+                if (author[i] >= 0) score -= REPEAT_PENALTY * authorsInWindow.getOrDefault(author[i], 0);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+
+            if (best < 0) {
+                // playlist piccola o appena ascoltata tutta: basta non ripetere il brano di partenza
+                best = random.nextInt(n);
+                if (n > 1 && seedIndex != null && best == seedIndex) best = (best + 1) % n;
+            }
+            return titles[best];
+        }
+
+        private double score(int i, Integer seedIndex, RandomGenerator random) {
+            double score = 1.0 / Math.sqrt(1 + PlayCountManager.getSongPlays(songs[i]));
+            if (seedIndex != null) {
+                if (author[i] >= 0 && author[i] == author[seedIndex]) score += SAME_AUTHOR_BONUS;
+                if (folder[i] == folder[seedIndex]) score += SAME_FOLDER_BONUS;
+            }
+            return score + random.nextDouble() * JITTER;
+        }
+
+        private static int group(String key, int i, Map<String, Integer> ids, List<List<Integer>> groups) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = groups.size();
+                ids.put(key, id);
+                groups.add(new ArrayList<>());
+            }
+            groups.get(id).add(i);
+            return id;
+        }
+
+        private static int[][] toArrays(List<List<Integer>> groups) {
+            int[][] arrays = new int[groups.size()][];
+            for (int g = 0; g < arrays.length; g++) {
+                List<Integer> members = groups.get(g);
+                arrays[g] = new int[members.size()];
+                for (int k = 0; k < arrays[g].length; k++) arrays[g][k] = members.get(k);
+            }
+            return arrays;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.dreamteam.control;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+/**
+ * Mazzo della modalità CASUALE: una permutazione dei brani della playlist, generata un brano
+ * alla volta, con un cursore sul brano corrente.
+ * <p>
+ * L'ordine è diviso in due parti: i brani già distribuiti nel giro corrente, nell'ordine in cui
+ * sono usciti, e quelli ancora da distribuire. Pescare una carta significa scegliere un brano
+ * tra quelli rimasti (in modo uniforme oppure ponderato con un {@link WeightedSampler}) e
+ * scambiarlo in fondo alla parte distribuita, come un passo di Fisher–Yates: nessun brano si
+ * ripete finché il giro non è finito. Dato che i brani distribuiti restano in ordine,
+ * {@link #previous()} ripercorre quello che è stato davvero ascoltato.
+ * </p>
+ * <p>
+ * {@link #next()}, {@link #previous()} e {@link #peek()} costano O(1) nel modo uniforme e
+ * O(log n) in quello ponderato, più O(n) una volta per giro quando il mazzo viene rimescolato.
+ * Aggiungere un brano lo mette tra quelli da distribuire senza toccare il resto; togliere un brano
+ * non ancora uscito costa O(1), togliere un brano già ascoltato richiede di compattare la storia.
+ * </p>
+ * <p>
+ * Non è thread-safe: viene usato solo dall'EDT.
+ * </p>
+ */
+public class ShuffleDeck {
+    private final List<String> order = new ArrayList<>();
+    private final Map<String, Integer> index = new HashMap<>();
+    private final WeightedSampler sampler; // null nel modo uniforme
+    private final RandomGenerator random;
+    private int dealt;       // brani in [0, dealt) già distribuiti nel giro corrente
+    private int cursor = -1; // posizione del brano corrente, -1 se nessuno
+
+    /**
+     * @param titles I titoli della playlist.
+     * @param counts Gli ascolti per titolo per l'estrazione ponderata, oppure {@code null}
+     *               per un mescolamento uniforme.
+     * @param random Il generatore di numeri casuali.
+     */
+    public ShuffleDeck(List<String> titles, Map<String, Integer> counts, RandomGenerator random) {
+        this.random = random;
+        for (String title : titles) {
+            if (index.putIfAbsent(title, order.size()) == null) order.add(title);
+        }
+        this.sampler = counts != null ? new WeightedSampler(order.toArray(new String[0]), counts) : null;
+    }
+
+    public int size() {
+        return order.size();
+    }
+
+    public boolean isWeighted() {
+        return sampler != null;
+    }
+
+    /** @return Il brano corrente, oppure {@code null} se il mazzo non è ancora stato usato. */
+    public String current() {
+        return cursor >= 0 ? order.get(cursor) : null;
+    }
+
+    /**
+     * Restituisce il brano che seguirà quello corrente senza avanzare. Se non è ancora stato
+     * deciso viene pescato ora, così che {@link #next()} restituisca lo stesso brano.
+     *
+     * @return Il brano successivo, oppure {@code null} se il mazzo è vuoto.
+     */
+    public String peek() {
+        if (order.isEmpty()) return null;
+        if (cursor + 1 < dealt) return order.get(cursor + 1);
+
+        if (dealt == order.size()) startRound();
+        // il nuovo giro può aver già deciso il suo primo brano
+        if (cursor + 1 >= dealt) deal();
+        return order.get(cursor + 1);
+    }
+
+    /**
+     * Avanza al brano successivo.
+     *
+     * @return Il nuovo brano corrente, oppure {@code null} se il mazzo è vuoto.
+     */
+    public String next() {
+        String title = peek();
+        if (title != null) cursor++;
+        return title;
+    }
+
+    /**
+     * Torna al brano ascoltato prima di quello corrente nel giro.
+     *
+     * @return Il nuovo brano corrente, oppure {@code null} se si è già all'inizio del giro.
+     */
+    public String previous() {
+        if (cursor <= 0) return null;
+        return order.get(--cursor);
+    }
+
+    /**
+     * Rende corrente un brano scelto fuori dal mazzo (dall'utente o dalla coda). Se era già
+     * uscito nel giro il cursore torna su di lui, altrimenti viene distribuito subito dopo il
+     * brano corrente. Nel caso comune, cioè quando è il brano restituito da {@link #peek()},
+     * equivale a {@link #next()}.
+     *
+     * @param title Il brano; se non fa parte del mazzo la chiamata non ha effetto.
+     */
+    public void moveTo(String title) {
+        Integer position = index.get(title);
+        if (position == null) return;
+
+        int pos = position;
+        if (pos < dealt) {
+            cursor = pos;
+            return;
+        }
+
+        // distribuito fuori turno: lo porto subito dopo il brano corrente
+        swap(pos, dealt);
+        markDealt(title);
+        int target = cursor + 1;
+        if (dealt != target) {
+            order.remove(dealt);
+            order.add(target, title);
+            reindex(target, dealt + 1);
+        }
+        dealt++;
+        cursor = target;
+    }
+
+    /**
+     * Aggiunge un brano tra quelli ancora da distribuire nel giro corrente.
+     *
+     * @param title Il brano; se è già nel mazzo la chiamata non ha effetto.
+     * @param plays I suoi ascolti, usati solo nel modo ponderato.
+     */
+    public void add(String title, int plays) {
+        if (index.containsKey(title)) return;
+
+        index.put(title, order.size());
+        order.add(title);
+        if (sampler != null) sampler.add(title, plays);
+    }
+
+    /**
+     * Toglie un brano dal mazzo. Se era il brano corrente, il cursore passa a quello precedente.
+     *
+     * @param title Il brano; se non è nel mazzo la chiamata non ha effetto.
+     */
+    public void remove(String title) {
+        Integer position = index.remove(title);
+        if (position == null) return;
+        if (sampler != null) sampler.remove(title);
+
+        int pos = position;
+        if (pos >= dealt) {
+            // tra i brani da distribuire l'ordine non conta: lo sostituisco con l'ultimo
+            int last = order.size() - 1;
+            if (pos != last) {
+                String moved = order.get(last);
+                order.set(pos, moved);
+                index.put(moved, pos);
+            }
+            order.remove(last);
+            return;
+        }
+
+        order.remove(pos);
+        reindex(pos, order.size());
+        dealt--;
+        if (pos <= cursor) cursor--;
+    }
+
+    /**
+     * Allinea il mazzo ai titoli attuali della playlist, aggiungendo e togliendo solo i brani
+     * cambiati: la parte già distribuita non viene rimescolata.
+     *
+     * @param titles I titoli della playlist.
+     * @param counts Gli ascolti per titolo, oppure {@code null} se il mazzo non è ponderato.
+     */
+    public void sync(List<String> titles, Map<String, Integer> counts) {
+        Set<String> present = new HashSet<>(titles);
+
+        for (String title : new ArrayList<>(order)) {
+            if (!present.contains(title)) remove(title);
+        }
+        for (String title : titles) {
+            add(title, counts != null ? counts.getOrDefault(title, 0) : 0);
+        }
+    }
+
+    /**
+     * Aggiorna gli ascolti di un brano per l'estrazione ponderata.
+     */
+    public void setPlays(String title, int count) {
+        if (sampler != null) sampler.setPlays(title, count);
+    }
+
+    // ─────────────── distribuzione ───────────────
+
+    /**
+     * Pesca un brano tra quelli rimasti e lo mette in fondo alla parte distribuita.
+     */
+    private void deal() {
+        int pos;
+        if (sampler != null) {
+            pos = index.get(sampler.next(random));
+        } else {
+            pos = dealt + random.nextInt(order.size() - dealt);
+        }
+
+        swap(pos, dealt);
+        markDealt(order.get(dealt));
+        dealt++;
+    }
+
+    /**
+     * Comincia un nuovo giro. Il brano appena ascoltato resta fuori dalla prima estrazione,
+     * per non sentirlo due volte di fila a cavallo dei due giri.
+     */
+    private void startRound() {
+        String last = current();
+        dealt = 0;
+        cursor = -1;
+        if (sampler != null) sampler.activateAll();
+
+        if (last == null || order.size() < 2) return;
+
+        if (sampler != null) {
+            sampler.setActive(last, false);
+            deal();
+            sampler.setActive(last, true);
+        } else {
+            swap(index.get(last), order.size() - 1);
+            int pos = random.nextInt(order.size() - 1);
+            swap(pos, 0);
+            dealt = 1;
+        }
+    }
+
+    private void markDealt(String title) {
+        if (sampler != null) sampler.setActive(title, false);
+    }
+
+    private void swap(int i, int j) {
+        if (i == j) return;
+
+        String a = order.get(i);
+        String b = order.get(j);
+        order.set(i, b);
+        order.set(j, a);
+        index.put(b, i);
+        index.put(a, j);
+    }
+
+    private void reindex(int from, int to) {
+        for (int i = from; i < to; i++) index.put(order.get(i), i);
+    }
+}
@@ -0,0 +1,85 @@
+package com.dreamteam.control;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.ListCellRenderer;
+
+import com.dreamteam.audio.Mp3HeaderInfo;
+import com.dreamteam.data.TrackInfoManager;
+import com.dreamteam.model.Playlist;
+import com.dreamteam.model.Song;
+import com.dreamteam.view.Panel;
+
+public class SongRenderer extends JPanel implements ListCellRenderer<String> {
+	private static final long serialVersionUID = 1L;
+
+	private final DefaultListCellRenderer titleRenderer = new DefaultListCellRenderer();
+	private final JLabel durationLabel = new JLabel();
+	private final Map<Song, String> durations = new HashMap<>();
+	private final Panel panel;
+
+	/**
+	 * Costruttore del renderer per la lista delle canzoni.
+	 * Mostra il titolo a sinistra e, se già nota, la durata del brano a destra.
+	 *
+	 * @param panel Il pannello principale da cui leggere la playlist visualizzata.
+	 */
+	public SongRenderer(Panel panel) {
+		this.panel = panel;
+
+		setLayout(new BorderLayout());
+		durationLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 0, 6));
+		add(titleRenderer, BorderLayout.CENTER);
+		add(durationLabel, BorderLayout.EAST);
+	}
+
+	/**
+	 * Dimentica le durate già formattate, così che al prossimo ridisegno vengano rilette dalla cache.
+	 * Va chiamato quando cambia la playlist visualizzata o termina l'analisi in background.
+	 */
+	public void clearDurations() {
+		durations.clear();
+	}
+
+	/**
+	 * Metodo invocato per ogni elemento della lista delle canzoni.
+	 * La durata viene letta solo dalla cache, una volta per brano: i brani non ancora analizzati
+	 * restano senza durata finché l'analisi in background non termina e la lista viene ridisegnata.
+	 */
+	@Override
+	public Component getListCellRendererComponent(JList<? extends String> list, String value, int index, boolean isSelected, boolean cellHasFocus) {
+		Component title = titleRenderer.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+
+		durationLabel.setText(formatDuration(value));
+		durationLabel.setFont(title.getFont());
+		durationLabel.setForeground(title.getForeground());
+		setBackground(title.getBackground());
+
+		return this;
+	}
+
+	private String formatDuration(String title) {
+		Playlist playlist = panel.getPlaylist();
+		Song song = playlist != null && title != null ? playlist.getSong(title) : null;
+		if (song == null) return "";
+
+		return durations.computeIfAbsent(song, SongRenderer::readDuration);
+	}
+
+	private static String readDuration(Song song) {
+		Mp3HeaderInfo info = TrackInfoManager.getCachedInfo(new File(song.getPath()));
+		if (info == null) return "";
+
+		long seconds = info.getDurationMillis() / 1000;
+		return String.format("%d:%02d", seconds / 60, seconds % 60);
+	}
+}
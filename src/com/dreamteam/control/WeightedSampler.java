@@ -0,0 +1,290 @@
+package com.dreamteam.control;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * Estrazione casuale ponderata dei brani di una playlist, usata dalla modalità CASUALE.
+ * <p>
+ * Il peso di un brano è {@code maxAscolti + 1 - ascolti}: i brani ascoltati meno spesso escono
+ * più facilmente e nessuno ha peso nullo. Invece di replicare ogni titolo tante volte quanto
+ * il suo peso, gli ascolti sono tenuti in un albero di Fenwick: un nodo che copre {@code k}
+ * brani estraibili pesa {@code k * (maxAscolti + 1) - somma dei loro ascolti}, per cui il massimo
+ * resta un semplice fattore e cambiarlo non richiede di toccare l'albero.
+ * </p>
+ * <p>
+ * Un brano può essere escluso temporaneamente dall'estrazione ({@link #setActive}), come fa il
+ * mazzo della modalità casuale con i brani già usciti nel giro corrente, e i titoli possono essere
+ * aggiunti o tolti senza ricostruire l'albero.
+ * </p>
+ * <p>
+ * Estrazione, aggiornamento di un contatore, esclusione, aggiunta e rimozione costano O(log n)
+ * (ammortizzato) e l'estrazione non alloca memoria; la costruzione costa O(n).
+ * </p>
+ */
+public class WeightedSampler {
+    private final Map<String, Integer> positions;
+    private String[] titles;   // null per le posizioni rimosse
+    private int[] plays;
+    private boolean[] active;
+    private long[] playTree;   // albero di Fenwick sugli ascolti dei brani estraibili, indici da 1
+    private int[] countTree;   // albero di Fenwick sul numero di brani estraibili, indici da 1
+    private int slots;         // posizioni occupate, comprese quelle rimosse
+    private int size;
+    private int activeCount;
+    private long activePlays;
+    private int maxPlays;
+
+    /**
+     * @param titles I titoli tra cui estrarre, tutti estraibili.
+     * @param counts Gli ascolti per titolo; i titoli assenti valgono 0.
+     */
+    public WeightedSampler(String[] titles, Map<String, Integer> counts) {
+        int capacity = Math.max(8, titles.length);
+        this.positions = new HashMap<>(capacity * 2);
+        this.titles = new String[capacity];
+        this.plays = new int[capacity];
+        this.active = new boolean[capacity];
+
+        for (String title : titles) {
+            if (positions.containsKey(title)) continue;
+
+            positions.put(title, slots);
+            this.titles[slots] = title;
+            plays[slots] = Math.max(0, counts.getOrDefault(title, 0));
+            active[slots] = true;
+            slots++;
+        }
+        rebuild();
+    }
+
+    /** @return Il numero di titoli presenti, estraibili o meno. */
+    public int size() {
+        return size;
+    }
+
+    /** @return Il numero di titoli attualmente estraibili. */
+    public int activeCount() {
+        return activeCount;
+    }
+
+    public boolean contains(String title) {
+        return positions.containsKey(title);
+    }
+
+    /**
+     * Estrae un titolo tra quelli estraibili con probabilità proporzionale al suo peso.
+     *
+     * @return Il titolo estratto, oppure {@code null} se non ci sono titoli estraibili.
+     */
+    public String next(RandomGenerator random) {
+        if (activeCount == 0) return null;
+
+        long weight = (long) maxPlays + 1;
+        long remaining = random.nextLong(activeCount * weight - activePlays);
+
+        // discesa nell'albero: si cerca l'ultima posizione con peso cumulato <= remaining
+        int pos = 0;
+        for (int step = Integer.highestOneBit(slots); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next > slots) continue;
+
+            long nodeWeight = countTree[next] * weight - playTree[next];
+            if (nodeWeight <= remaining) {
+                pos = next;
+                remaining -= nodeWeight;
+            }
+        }
+        return titles[pos];
+    }
+
+    /**
+     * Aggiorna gli ascolti di un titolo, ad esempio dopo averlo riprodotto.
+     *
+     * @param title Il titolo; se non è presente la chiamata non ha effetto.
+     * @param count Il nuovo numero di ascolti.
+     */
+    public void setPlays(String title, int count) {
+        Integer index = positions.get(title);
+        if (index == null) return;
+
+        int i = index;
+        int old = plays[i];
+        int value = Math.max(0, count);
+        if (value == old) return;
+
+        plays[i] = value;
+        if (active[i]) {
+            activePlays += value - old;
+            update(i, 0, value - old);
+        }
+
+        if (value > maxPlays) {
+            maxPlays = value;
+        } else if (old == maxPlays) {
+            recomputeMax();
+        }
+    }
+
+    /**
+     * Include o esclude un titolo dall'estrazione, senza dimenticarne gli ascolti.
+     *
+     * @param title  Il titolo; se non è presente la chiamata non ha effetto.
+     * @param enable true per renderlo estraibile.
+     */
+    public void setActive(String title, boolean enable) {
+        Integer index = positions.get(title);
+        if (index != null) setActiveAt(index, enable);
+    }
+
+    /**
+     * Rende di nuovo estraibili tutti i titoli. Costa O(n).
+     */
+    public void activateAll() {
+        for (int i = 0; i < slots; i++) {
+            if (titles[i] != null) active[i] = true;
+        }
+        rebuild();
+    }
+
+    /**
+     * Aggiunge un titolo estraibile in coda, senza ricostruire l'albero.
+     *
+     * @param title Il titolo; se è già presente la chiamata non ha effetto.
+     * @param count I suoi ascolti.
+     */
+    public void add(String title, int count) {
+        if (positions.containsKey(title)) return;
+
+        if (slots == titles.length) {
+            grow();
+        }
+
+        int i = slots++;
+        positions.put(title, i);
+        titles[i] = title;
+        plays[i] = Math.max(0, count);
+        active[i] = true;
+        size++;
+        activeCount++;
+        activePlays += plays[i];
+        if (plays[i] > maxPlays) maxPlays = plays[i];
+
+        // il nuovo nodo somma se stesso e i nodi figli, che lo precedono
+        int k = i + 1;
+        playTree[k] = plays[i];
+        countTree[k] = 1;
+        for (int child = k - 1; child > k - (k & -k); child -= child & -child) {
+            playTree[k] += playTree[child];
+            countTree[k] += countTree[child];
+        }
+    }
+
+    /**
+     * Toglie un titolo. La posizione resta vuota finché le posizioni vuote non sono
+     * la metà del totale, poi l'albero viene compattato.
+     *
+     * @param title Il titolo; se non è presente la chiamata non ha effetto.
+     */
+    public void remove(String title) {
+        Integer index = positions.remove(title);
+        if (index == null) return;
+
+        int i = index;
+        setActiveAt(i, false);
+        int old = plays[i];
+        titles[i] = null;
+        plays[i] = 0;
+        size--;
+
+        if (size * 2 < slots) {
+            compact();
+        } else if (old == maxPlays) {
+            recomputeMax();
+        }
+    }
+
+    // ─────────────── albero ───────────────
+
+    private void setActiveAt(int i, boolean enable) {
+        if (active[i] == enable) return;
+
+        active[i] = enable;
+        int sign = enable ? 1 : -1;
+        activeCount += sign;
+        activePlays += sign * plays[i];
+        update(i, sign, sign * plays[i]);
+    }
+
+    private void update(int i, int countDelta, long playsDelta) {
+        for (int k = i + 1; k <= slots; k += k & -k) {
+            countTree[k] += countDelta;
+            playTree[k] += playsDelta;
+        }
+    }
+
+    private void recomputeMax() {
+        // il massimo può essere sceso: capita solo se un contatore diminuisce o un titolo viene tolto
+        int max = 0;
+        for (int i = 0; i < slots; i++) if (plays[i] > max) max = plays[i];
+        maxPlays = max;
+    }
+
+    private void grow() {
+        int capacity = titles.length * 2;
+        titles = Arrays.copyOf(titles, capacity);
+        plays = Arrays.copyOf(plays, capacity);
+        active = Arrays.copyOf(active, capacity);
+        playTree = Arrays.copyOf(playTree, capacity + 1);
+        countTree = Arrays.copyOf(countTree, capacity + 1);
+    }
+
+    private void compact() {
+        int n = 0;
+        for (int i = 0; i < slots; i++) {
+            if (titles[i] == null) continue;
+
+            titles[n] = titles[i];
+            plays[n] = plays[i];
+            active[n] = active[i];
+            positions.put(titles[n], n);
+            n++;
+        }
+        Arrays.fill(titles, n, slots, null);
+        Arrays.fill(plays, n, slots, 0);
+        Arrays.fill(active, n, slots, false);
+        slots = n;
+        rebuild();
+    }
+
+    private void rebuild() {
+        playTree = new long[titles.length + 1];
+        countTree = new int[titles.length + 1];
+        size = 0;
+        activeCount = 0;
+        activePlays = 0;
+        maxPlays = 0;
+
+        for (int i = 0; i < slots; i++) {
+            if (titles[i] != null) {
+                size++;
+                if (plays[i] > maxPlays) maxPlays = plays[i];
+            }
+            if (active[i]) {
+                activeCount++;
+                activePlays += plays[i];
+                playTree[i + 1] += plays[i];
+                countTree[i + 1]++;
+            }
+
+            // costruzione lineare: ogni nodo passa la propria somma al genitore
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent <= slots) {
+                playTree[parent] += playTree[i + 1];
+                countTree[parent] += countTree[i + 1];
+            }
+        }
+    }
+}
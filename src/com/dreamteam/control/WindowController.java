@@ -10,7 +10,13 @@ import java.util.Properties;
 
 import javax.swing.JOptionPane;
 
+import com.dreamteam.audio.PlaybackEngine;
+import com.dreamteam.audio.TrackPrefetcher;
+import com.dreamteam.data.PlayCountManager;
+import com.dreamteam.data.PlayHistoryManager;
 import com.dreamteam.data.PlaylistDataManager;
+import com.dreamteam.data.SongIdManager;
+import com.dreamteam.data.TrackInfoManager;
 import com.dreamteam.model.MP3Player;
 import com.dreamteam.model.Song;
 import com.dreamteam.view.Panel;
@@ -18,6 +24,8 @@ import com.dreamteam.view.Window;
 
 public class WindowController implements WindowListener
 {
+	private static final long FILE_TASKS_TIMEOUT_MS = 5000;
+
 	private Window window;
 	private Panel panel;
 	
@@ -44,10 +52,28 @@ public class WindowController implements WindowListener
 	public void windowClosing(WindowEvent e) 
 	{
     	PlaylistDataManager.savePlaylists(panel.getPlaylists());
+    	TrackInfoManager.save();
+    	SongIdManager.save();
+    	PlayCountManager.save();
+    	PlayHistoryManager.save();
+    	panel.getController().getCodaManager().save();
 
         int scelta = JOptionPane.showConfirmDialog(panel, "Sicuro di voler uscire?", "Conferma uscita", JOptionPane.YES_NO_OPTION);
 
         if (scelta == JOptionPane.YES_OPTION) {
+            // lascia finire copie ed esportazioni in corso prima di uscire
+            if (!panel.getController().getFileTasks().shutdown(FILE_TASKS_TIMEOUT_MS)) {
+                Logger.writeLog("Chiusura con operazioni sui file ancora in corso");
+            }
+            Logger.writeLog(String.format("Tracce avviate dalla memoria: %d su %d (%.0f%%)",
+                                          TrackPrefetcher.getHits(),
+                                          TrackPrefetcher.getHits() + TrackPrefetcher.getMisses(),
+                                          TrackPrefetcher.getHitRate() * 100));
+            PlaybackEngine engine = panel.getPlayer().getEngine();
+            Logger.writeLog(String.format("Latenza dei comandi audio: media %d us, massima %d us",
+                                          engine.getAverageCommandLatencyNanos() / 1000,
+                                          engine.getMaxCommandLatencyNanos() / 1000));
+
             salvaDimensioneEFinestra();
             
             Properties config = new Properties();
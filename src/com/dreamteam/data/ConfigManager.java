@@ -15,6 +15,12 @@ public class ConfigManager {
     public static final String THEME_CONFIG_PATH = "resources/theme.config";
     public static final String PLAYBACK_MODE_CONFIG_PATH = "resources/playbackMode.config";
 
+    public static final int DEFAULT_LOOKAHEAD_MS = 500;
+    public static final int DEFAULT_PROGRESS_FPS = 30;
+    public static final int DEFAULT_HISTORY_SIZE = 1000;
+    public static final int DEFAULT_PREFETCH_SECONDS = 8;
+    public static final int DEFAULT_PREFETCH_CACHE_MB = 8;
+
     public static Languages loadLanguageFromConfig() {
         try {
             File configFile = new File(CONFIG_PATH);
@@ -57,6 +63,89 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Legge dal file di configurazione quanti millisecondi di audio decodificare in anticipo
+     * ({@code audio.lookahead.ms}). Valori più alti assorbono meglio i rallentamenti del disco
+     * o del sistema, al costo di un po' di memoria.
+     */
+    public static int loadLookaheadMillis() {
+        return loadIntProperty("audio.lookahead.ms", DEFAULT_LOOKAHEAD_MS);
+    }
+
+    /**
+     * Legge quante volte al secondo aggiornare lo slider di avanzamento ({@code ui.progress.fps}).
+     */
+    public static int loadProgressFps() {
+        return loadIntProperty("ui.progress.fps", DEFAULT_PROGRESS_FPS);
+    }
+
+    /**
+     * Legge quanti ascolti tenere nella cronologia ({@code history.size}).
+     */
+    public static int loadHistorySize() {
+        return loadIntProperty("history.size", DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * Legge quanti secondi dall'inizio delle prossime tracce leggere in anticipo in memoria
+     * ({@code audio.prefetch.seconds}).
+     */
+    public static int loadPrefetchSeconds() {
+        return loadIntProperty("audio.prefetch.seconds", DEFAULT_PREFETCH_SECONDS);
+    }
+
+    /**
+     * Legge quanti MB di memoria può occupare la lettura anticipata delle tracce
+     * ({@code audio.prefetch.cache.mb}).
+     */
+    public static int loadPrefetchCacheMegabytes() {
+        return loadIntProperty("audio.prefetch.cache.mb", DEFAULT_PREFETCH_CACHE_MB);
+    }
+
+    /**
+     * Legge se la modalità casuale deve favorire i brani ascoltati meno spesso
+     * ({@code playback.shuffle.weighted}, attivo se non specificato).
+     */
+    public static boolean loadShuffleWeighted() {
+        return Boolean.parseBoolean(loadStringProperty("playback.shuffle.weighted", "true").trim());
+    }
+
+    /**
+     * Legge un valore intero da {@code config.properties}.
+     *
+     * @return Il valore configurato, oppure {@code defaultValue} se assente o non valido.
+     */
+    public static int loadIntProperty(String key, int defaultValue) {
+        String value = loadStringProperty(key, null);
+        if (value == null) return defaultValue;
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            Logger.writeLog("Valore non valido per " + key + ", uso " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Legge un valore testuale da {@code config.properties}.
+     *
+     * @return Il valore configurato, oppure {@code defaultValue} se assente.
+     */
+    public static String loadStringProperty(String key, String defaultValue) {
+        File configFile = new File(CONFIG_PATH);
+        if (!configFile.exists()) return defaultValue;
+
+        try (FileInputStream in = new FileInputStream(configFile)) {
+            Properties config = new Properties();
+            config.load(in);
+            return config.getProperty(key, defaultValue);
+        } catch (IOException e) {
+            Logger.writeLog("Errore nella lettura di " + key + " dal file config");
+            return defaultValue;
+        }
+    }
+
     public static void saveTheme(boolean isDarkMode) {
         try {
             File config = new File(THEME_CONFIG_PATH);
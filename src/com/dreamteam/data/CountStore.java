@@ -0,0 +1,245 @@
+package com.dreamteam.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.dreamteam.control.Logger;
+
+/**
+ * Insieme di contatori (ad esempio gli ascolti per brano) tenuto in memoria e reso persistente
+ * con un journal in sola aggiunta.
+ * <p>
+ * I contatori vengono letti una volta sola, alla creazione: un incremento aggiorna la mappa in memoria
+ * e accoda al thread di scrittura una riga del journal ({@code <file>.journal}), scritta in coda al file
+ * e forzata su disco. Nessun aggiornamento riscrive l'intero file.
+ * </p>
+ * <p>
+ * Ogni {@value #COMPACT_EVERY} righe, e alla chiusura, il journal viene compattato: lo stato completo
+ * viene scritto in un file temporaneo, che sostituisce in modo atomico il file dei contatori, e poi
+ * il journal viene svuotato. Ogni riga del journal ha un numero di sequenza e il file dei contatori
+ * riporta l'ultimo numero che contiene: se l'applicazione si interrompe tra la sostituzione e lo
+ * svuotamento, alla lettura le righe già comprese vengono saltate e nessun ascolto è contato due volte.
+ * </p>
+ * <p>
+ * Il file dei contatori resta nel formato {@code titolo=numero}, compatibile con le versioni precedenti.
+ * Le chiavi vengono normalizzate (vedi {@link #normalize}) sia in memoria sia nella lettura di
+ * entrambi i file, così una chiave ha lo stesso contatore prima e dopo una compattazione.
+ * </p>
+ */
+public class CountStore {
+    static final int COMPACT_EVERY = 256;
+    private static final String SEQUENCE_HEADER = "# seq ";
+
+    private final File file;
+    private final File journalFile;
+    private final ExecutorService writer;
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+
+    // stato del thread di scrittura: quanto è già sul disco
+    private final Map<String, Integer> persisted;
+    private long sequence;
+    private int journalEntries;
+    private FileChannel journal;
+
+    /**
+     * Carica i contatori dal file e dal suo journal.
+     *
+     * @param file   Il file dei contatori.
+     * @param writer L'executor a thread singolo su cui avvengono tutte le scritture.
+     */
+    public CountStore(File file, ExecutorService writer) {
+        this.file = file;
+        this.journalFile = new File(file.getPath() + ".journal");
+        this.writer = writer;
+
+        long snapshotSequence = readSnapshot();
+        replayJournal(snapshotSequence);
+        persisted = new HashMap<>(counts);
+    }
+
+    // ─────────────── lettura all'avvio ───────────────
+
+    /**
+     * @return Il numero di sequenza dell'ultima riga di journal compresa nel file, 0 se assente.
+     */
+    private long readSnapshot() {
+        if (!file.exists()) return 0;
+
+        long snapshotSequence = 0;
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (line.startsWith(SEQUENCE_HEADER)) {
+                    snapshotSequence = Long.parseLong(line.substring(SEQUENCE_HEADER.length()).trim());
+                    continue;
+                }
+
+                // il valore è sempre numerico: il titolo può contenere '='
+                int eq = line.lastIndexOf('=');
+                if (eq <= 0) continue;
+                try {
+                    counts.put(normalize(line.substring(0, eq)), Integer.parseInt(line.substring(eq + 1).trim()));
+                } catch (NumberFormatException e) {
+                    Logger.writeLog("CountStore: riga non valida in " + file.getName() + " - " + line);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Logger.writeLog("CountStore: errore nel caricamento di " + file.getName() + " - " + e.getMessage());
+        }
+
+        sequence = snapshotSequence;
+        return snapshotSequence;
+    }
+
+    private void replayJournal(long snapshotSequence) {
+        if (!journalFile.exists()) return;
+
+        try {
+            String content = new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.UTF_8);
+
+            // un'ultima riga senza a capo è stata troncata da un arresto improvviso e viene ignorata
+            int end = content.lastIndexOf('\n');
+            if (end < 0) return;
+
+            for (String line : content.substring(0, end).split("\n")) {
+                // sequenza \t incremento \t chiave
+                String[] parts = line.split("\t", 3);
+                if (parts.length < 3) continue;
+
+                long seq;
+                int delta;
+                try {
+                    seq = Long.parseLong(parts[0]);
+                    delta = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                journalEntries++;
+                if (seq <= snapshotSequence) continue;
+
+                counts.merge(normalize(parts[2]), delta, Integer::sum);
+                if (seq > sequence) sequence = seq;
+            }
+        } catch (IOException e) {
+            Logger.writeLog("CountStore: errore nella lettura di " + journalFile.getName() + " - " + e.getMessage());
+        }
+    }
+
+    // ─────────────── contatori ───────────────
+
+    /** Incrementa di uno il contatore della chiave. */
+    public void increment(String key) {
+        add(key, 1);
+    }
+
+    /** Somma {@code delta} al contatore della chiave, creandolo se necessario. */
+    public void add(String key, int delta) {
+        String k = normalize(key);
+        counts.merge(k, delta, Integer::sum);
+        writer.execute(() -> append(k, delta));
+    }
+
+    /** Crea il contatore della chiave a zero, se non esiste già. */
+    public void ensure(String key) {
+        String k = normalize(key);
+        if (counts.putIfAbsent(k, 0) == null) writer.execute(() -> append(k, 0));
+    }
+
+    public int get(String key) {
+        return counts.getOrDefault(normalize(key), 0);
+    }
+
+    /**
+     * La forma della chiave che si conserva in entrambi i formati su disco: senza spazi iniziali
+     * e finali, tolti dalla lettura di {@code titolo=numero}, e senza a capo, che separano le righe.
+     */
+    static String normalize(String key) {
+        return key.replace('\r', ' ').replace('\n', ' ').trim();
+    }
+
+    /**
+     * Restituisce i contatori come vista in sola lettura, aggiornata in tempo reale.
+     */
+    public Map<String, Integer> asMap() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Compatta il journal nel file dei contatori.
+     *
+     * @return Il completamento della compattazione, eseguita sul thread di scrittura.
+     */
+    public Future<?> compact() {
+        return writer.submit(() -> {
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                Logger.writeLog("CountStore: compattazione di " + file.getName() + " fallita - " + e.getMessage());
+            }
+        });
+    }
+
+    // ─────────────── thread di scrittura ───────────────
+
+    private void append(String key, int delta) {
+        persisted.merge(key, delta, Integer::sum);
+
+        try {
+            if (journal == null) {
+                journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                                           StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+
+            byte[] line = (++sequence + "\t" + delta + "\t" + key + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) journal.write(buffer);
+            journal.force(false);
+
+            if (++journalEntries >= COMPACT_EVERY) writeSnapshot();
+        } catch (IOException e) {
+            Logger.writeLog("CountStore: errore nella scrittura di " + journalFile.getName() + " - " + e.getMessage());
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        if (journalEntries == 0 && file.exists()) return;
+
+        StringBuilder sb = new StringBuilder(SEQUENCE_HEADER).append(sequence).append('\n');
+        for (Map.Entry<String, Integer> entry : persisted.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) out.write(buffer);
+            out.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // solo ora le righe del journal sono superflue
+        if (journal != null) {
+            journal.truncate(0);
+            journal.force(true);
+        } else if (journalFile.exists()) {
+            Files.write(journalFile.toPath(), new byte[0]);
+        }
+        journalEntries = 0;
+    }
+}
@@ -1,14 +1,19 @@
 package com.dreamteam.data;
 
+import com.dreamteam.control.FileTaskExecutor;
 import com.dreamteam.control.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class FileManager {
+    private static final long COPY_CHUNK = 1 << 20;
+
     public static Map<String, Integer> loadCounts(File file) {
         Map<String, Integer> map = new LinkedHashMap<>();
         if (file.exists()) {
@@ -49,6 +54,35 @@ public class FileManager {
         }
     }
 
+    /**
+     * Copia un file a blocchi da 1 MB, riportando l'avanzamento in KB e fermandosi se l'operazione
+     * viene annullata. Una copia interrotta non lascia file parziali.
+     *
+     * @param context Il contesto dell'operazione in background.
+     * @throws java.util.concurrent.CancellationException se l'operazione viene annullata.
+     */
+    public static void copyFile(File source, File dest, FileTaskExecutor.Context context) throws IOException {
+        long size = source.length();
+        boolean completed = false;
+
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            while (position < size) {
+                context.checkCancelled();
+
+                long copied = in.transferTo(position, Math.min(COPY_CHUNK, size - position), out);
+                if (copied <= 0) break; // il file si è accorciato nel frattempo
+                position += copied;
+                context.setProgress((int) (position >> 10), (int) (size >> 10));
+            }
+            completed = true;
+        } finally {
+            if (!completed) dest.delete();
+        }
+    }
+
     public static void deleteFolder(File folder) {
         if (folder.exists() && folder.isDirectory()) {
             for (File file : folder.listFiles()) file.delete();
@@ -0,0 +1,147 @@
+package com.dreamteam.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.dreamteam.audio.MP3FrameIndex;
+import com.dreamteam.control.Logger;
+
+/**
+ * Gestisce la cache degli indici dei frame MP3.
+ * <p>
+ * Gli indici vengono costruiti una sola volta per file e salvati in {@code resources/index},
+ * accanto alla libreria. Una piccola cache in memoria evita di rileggerli dal disco
+ * per la traccia corrente e per quelle appena riprodotte.
+ * </p>
+ */
+public abstract class FrameIndexManager {
+    public static final String INDEX_DIR = "resources/index";
+    private static final int MEMORY_ENTRIES = 8;
+
+    private static final Map<String, MP3FrameIndex> memory = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MP3FrameIndex> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "FrameIndexBuilder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Restituisce l'indice dei frame del file, costruendolo e salvandolo su disco se necessario.
+     *
+     * @param file Il file MP3.
+     * @return L'indice aggiornato del file.
+     * @throws IOException Se il file non può essere letto.
+     */
+    public static MP3FrameIndex getIndex(File file) throws IOException {
+        String key = file.getAbsolutePath();
+
+        synchronized (memory) {
+            MP3FrameIndex cached = memory.get(key);
+            if (cached != null && cached.matches(file)) return cached;
+        }
+
+        MP3FrameIndex index = loadFromDisk(file);
+        if (index == null) {
+            long start = System.nanoTime();
+            index = MP3FrameIndex.build(file);
+            Logger.writeLog("FrameIndexManager: indice creato per " + file.getName() + " ("
+                    + index.getFrameCount() + " frame, " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            saveToDisk(file, index);
+        }
+
+        synchronized (memory) {
+            memory.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Restituisce l'indice solo se è già disponibile in memoria, senza accedere al disco.
+     *
+     * @return L'indice, oppure {@code null} se non è ancora stato caricato.
+     */
+    public static MP3FrameIndex getCachedIndex(File file) {
+        synchronized (memory) {
+            MP3FrameIndex cached = memory.get(file.getAbsolutePath());
+            return cached != null && cached.matches(file) ? cached : null;
+        }
+    }
+
+    /**
+     * Prepara l'indice in background, così che il primo seek sulla traccia sia immediato.
+     *
+     * @param file Il file MP3 da indicizzare.
+     */
+    public static void preload(File file) {
+        builder.execute(() -> {
+            try {
+                getIndex(file);
+            } catch (IOException e) {
+                Logger.writeLog("FrameIndexManager: impossibile indicizzare " + file.getName() + " - " + e.getMessage());
+            }
+        });
+    }
+
+    private static File indexFileFor(File file) {
+        String name = String.format("%08x", file.getAbsolutePath().hashCode()) + ".idx";
+        return new File(INDEX_DIR, name);
+    }
+
+    private static MP3FrameIndex loadFromDisk(File file) {
+        File idx = indexFileFor(file);
+        if (!idx.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)))) {
+            String path = in.readUTF();
+            MP3FrameIndex index = MP3FrameIndex.readFrom(in);
+            if (path.equals(file.getAbsolutePath()) && index.matches(file)) return index;
+        } catch (IOException e) {
+            Logger.writeLog("FrameIndexManager: indice non valido per " + file.getName() + " - " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static void saveToDisk(File file, MP3FrameIndex index) {
+        File dir = new File(INDEX_DIR);
+        if (!dir.exists()) dir.mkdirs();
+
+        File idx = indexFileFor(file);
+        File tmp = new File(dir, idx.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeUTF(file.getAbsolutePath());
+            index.writeTo(out);
+        } catch (IOException e) {
+            Logger.writeLog("FrameIndexManager: errore nel salvataggio dell'indice - " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        try {
+            Files.move(tmp.toPath(), idx.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.writeLog("FrameIndexManager: errore nel salvataggio dell'indice - " + e.getMessage());
+            tmp.delete();
+        }
+    }
+}
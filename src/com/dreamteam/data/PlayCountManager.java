@@ -0,0 +1,193 @@
+package com.dreamteam.data;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.dreamteam.control.Logger;
+import com.dreamteam.model.Song;
+
+/**
+ * Gestisce il numero di ascolti dei brani ({@code resources/song_plays.count}) e delle playlist
+ * ({@code resources/playlist_plays.count}).
+ * <p>
+ * Gli ascolti dei brani sono contati per identificativo ({@link Song#getId()}), per cui lo stesso file
+ * in più playlist ha un solo contatore e due file con lo stesso titolo ne hanno due. I contatori per
+ * titolo delle versioni precedenti ({@code resources/plays.count}) vengono portati una volta sola sui
+ * nuovi da {@link #migrateLegacyCounts}, dopo di che il vecchio file viene rinominato.
+ * </p>
+ * <p>
+ * I contatori vengono caricati una sola volta e poi letti e aggiornati in memoria; ogni ascolto
+ * viene salvato dal thread "PlayCountJournal" in un journal in sola aggiunta (vedi {@link CountStore}),
+ * per cui il cambio di brano non legge né riscrive interi file e gli ascolti sopravvivono a una
+ * chiusura improvvisa.
+ * </p>
+ */
+public abstract class PlayCountManager {
+    public static final String SONG_COUNTS_PATH = "resources/song_plays.count";
+    public static final String LEGACY_SONG_COUNTS_PATH = "resources/plays.count";
+    public static final String PLAYLIST_COUNTS_PATH = "resources/playlist_plays.count";
+    private static final long SAVE_TIMEOUT_MILLIS = 2000;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PlayCountJournal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final CountStore songs = new CountStore(new File(SONG_COUNTS_PATH), writer);
+    private static final CountStore playlists = new CountStore(new File(PLAYLIST_COUNTS_PATH), writer);
+
+    // ascolti dei brani senza impronta in cache, per percorso, in attesa di passare sul loro contatore
+    private static final Map<String, Integer> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Registra un ascolto del brano e della playlist da cui è stato riprodotto. Non legge mai il file:
+     * se l'impronta del brano non è ancora in cache l'ascolto resta in sospeso (ed è già compreso in
+     * {@link #getSongPlays}) e passa sul contatore del brano quando il thread "SongIdHash" l'ha calcolata.
+     *
+     * @param song     Il brano, oppure {@code null} se non noto.
+     * @param playlist Il nome della playlist, oppure {@code null} se non nota.
+     */
+    public static void registerPlay(Song song, String playlist) {
+        if (song != null) {
+            String id = song.getId();
+            if (SongIdManager.isContentId(id)) {
+                songs.increment(id);
+            } else {
+                String path = song.getPath();
+                pending.merge(path, 1, Integer::sum);
+                SongIdManager.computeIdLater(song, contentId -> flushPending(path, contentId));
+            }
+        }
+        if (playlist != null) playlists.increment(playlist);
+    }
+
+    /** @return Gli ascolti del brano, 0 se non è mai stato riprodotto. */
+    public static int getSongPlays(Song song) {
+        return songs.get(song.getId()) + pending.getOrDefault(song.getPath(), 0);
+    }
+
+    /**
+     * Restituisce gli ascolti dei brani indicati per titolo, ad esempio per il mazzo della modalità
+     * casuale. Se più brani hanno lo stesso titolo vale il primo.
+     *
+     * @param songs I brani, di solito quelli di una playlist.
+     */
+    public static Map<String, Integer> getSongCounts(List<Song> songs) {
+        Map<String, Integer> counts = new HashMap<>(songs.size() * 2);
+        for (Song song : songs) counts.putIfAbsent(song.getTitle(), getSongPlays(song));
+        return counts;
+    }
+
+    /**
+     * Restituisce gli ascolti di tutti i brani noti, uno per brano, come coppie titolo-ascolti.
+     * I brani ascoltati in passato ma non più presenti in nessuna playlist sono esclusi.
+     */
+    public static List<Map.Entry<String, Integer>> getSongCountsWithTitles() {
+        List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : songs.asMap().entrySet()) {
+            String title = SongIdManager.getTitle(entry.getKey());
+            if (title != null) counts.add(new AbstractMap.SimpleImmutableEntry<>(title, entry.getValue()));
+        }
+        return counts;
+    }
+
+    /** @return Gli ascolti per playlist, come vista in sola lettura sempre aggiornata. */
+    public static Map<String, Integer> getPlaylistCounts() {
+        return playlists.asMap();
+    }
+
+    /** Crea a zero il contatore di un brano appena importato. */
+    public static void ensureSong(Song song) {
+        // senza impronta il contatore verrà creato al primo ascolto
+        String id = song.getId();
+        if (SongIdManager.isContentId(id)) songs.ensure(id);
+    }
+
+    /** Crea a zero il contatore di una playlist appena importata. */
+    public static void ensurePlaylist(String name) {
+        playlists.ensure(name);
+    }
+
+    /**
+     * Porta gli ascolti per titolo delle versioni precedenti sui contatori per identificativo, se il
+     * vecchio file esiste ancora. Ogni titolo va al primo brano della libreria con quel titolo, per cui
+     * nessun ascolto viene contato due volte; al termine il vecchio file viene rinominato in
+     * {@code .migrated} e la migrazione non si ripete.
+     * <p>
+     * Da chiamare una volta, quando le impronte dei brani sono pronte (vedi {@link SongIdManager#preload}).
+     * </p>
+     *
+     * @param library Tutti i brani della libreria.
+     */
+    public static synchronized void migrateLegacyCounts(Collection<Song> library) {
+        File legacyFile = new File(LEGACY_SONG_COUNTS_PATH);
+        if (!legacyFile.exists()) return;
+
+        CountStore legacy = new CountStore(legacyFile, writer);
+        Set<String> seen = new HashSet<>();
+        int migrated = 0;
+        for (Song song : library) {
+            String title = song.getTitle();
+            if (title == null || !seen.add(title)) continue;
+
+            int plays = legacy.get(title);
+            if (plays > 0) {
+                songs.add(song.getId(), plays);
+                migrated++;
+            }
+        }
+
+        // dopo le righe di journal appena accodate, sullo stesso thread di scrittura
+        writer.execute(() -> {
+            retire(legacyFile);
+            retire(new File(LEGACY_SONG_COUNTS_PATH + ".journal"));
+        });
+        Logger.writeLog("PlayCountManager: ascolti di " + migrated + " brani migrati da " + legacyFile.getName());
+    }
+
+    private static void retire(File file) {
+        if (file.exists() && !file.renameTo(new File(file.getPath() + ".migrated"))) {
+            Logger.writeLog("PlayCountManager: impossibile rinominare " + file.getName());
+        }
+    }
+
+    /**
+     * Compatta i journal nei file dei contatori, attendendo al massimo un paio di secondi.
+     * Da chiamare alla chiusura dell'applicazione.
+     */
+    public static void save() {
+        // gli ascolti ancora in sospeso non devono andare persi alla chiusura
+        for (String path : pending.keySet()) {
+            flushPending(path, SongIdManager.computeId(new Song(null, path)));
+        }
+
+        Future<?> songsDone = songs.compact();
+        Future<?> playlistsDone = playlists.compact();
+
+        try {
+            songsDone.get(SAVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            playlistsDone.get(SAVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Logger.writeLog("PlayCountManager: salvataggio dei contatori non completato - " + e.getMessage());
+        }
+    }
+
+    /** Porta gli ascolti in sospeso del file sul contatore indicato; chi arriva per primo li sposta. */
+    private static void flushPending(String path, String id) {
+        Integer plays = pending.remove(path);
+        if (plays != null) songs.add(id, plays);
+    }
+}
@@ -0,0 +1,346 @@
+package com.dreamteam.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.dreamteam.control.Logger;
+
+/**
+ * Cronologia degli ascolti: gli ultimi {@code capacity} brani riprodotti, in un buffer circolare
+ * in memoria reso persistente con un file in sola aggiunta.
+ * <p>
+ * Ogni ascolto ha un numero di sequenza crescente, con cui si può tornare indietro nella cronologia
+ * ({@link #get(long)}) anche mentre se ne aggiungono di nuovi. Per ogni posizione del buffer vengono
+ * tenuti anche i totali progressivi di tempo ascoltato e di brani finiti, per cui le statistiche
+ * su un intervallo di tempo ({@link #statsSince(long)}) costano una ricerca binaria sull'ora di inizio
+ * e una sottrazione, senza scorrere gli ascolti.
+ * </p>
+ * <p>
+ * Il file contiene una riga per ascolto ({@code inizio \t ascoltato \t F|S \t playlist \t titolo}),
+ * scritta e forzata su disco dal thread di scrittura. Quando supera il doppio della capacità viene
+ * riscritto con il solo contenuto del buffer, in un file temporaneo che sostituisce l'originale in
+ * modo atomico.
+ * </p>
+ */
+public class PlayHistory {
+    private final File file;
+    private final ExecutorService writer;
+    private final Entry[] ring;
+    private final long[] listenedTotals; // tempo ascoltato cumulato fino all'ascolto incluso
+    private final long[] finishedTotals; // brani finiti cumulati fino all'ascolto incluso
+    private long next;                   // numero di sequenza del prossimo ascolto
+    private int fileLines;
+    private FileChannel channel;         // solo thread di scrittura
+
+    /**
+     * Un ascolto.
+     */
+    public static final class Entry {
+        private final String title;
+        private final String playlist;
+        private final long startMillis;
+        private final long listenedMillis;
+        private final boolean finished;
+
+        /**
+         * @param title          Il titolo del brano.
+         * @param playlist       La playlist da cui è stato riprodotto, oppure {@code null}.
+         * @param startMillis    L'istante di inizio (epoch in millisecondi).
+         * @param listenedMillis Il tempo effettivamente ascoltato, pause escluse.
+         * @param finished       true se il brano è arrivato alla fine, false se è stato saltato.
+         */
+        public Entry(String title, String playlist, long startMillis, long listenedMillis, boolean finished) {
+            this.title = title;
+            this.playlist = playlist;
+            this.startMillis = startMillis;
+            this.listenedMillis = Math.max(0, listenedMillis);
+            this.finished = finished;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getPlaylist() {
+            return playlist;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getListenedMillis() {
+            return listenedMillis;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        private String toLine() {
+            return startMillis + "\t" + listenedMillis + "\t" + (finished ? 'F' : 'S') + "\t"
+                 + (playlist != null ? playlist : "") + "\t" + title + "\n";
+        }
+
+        private static Entry parse(String line) {
+            String[] parts = line.split("\t", 5);
+            if (parts.length < 5 || parts[4].isEmpty()) return null;
+
+            try {
+                return new Entry(parts[4], parts[3].isEmpty() ? null : parts[3],
+                                 Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2].equals("F"));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Statistiche degli ascolti in un intervallo di tempo.
+     */
+    public static final class Stats {
+        private final int plays;
+        private final int finished;
+        private final long listenedMillis;
+
+        Stats(int plays, int finished, long listenedMillis) {
+            this.plays = plays;
+            this.finished = finished;
+            this.listenedMillis = listenedMillis;
+        }
+
+        public int getPlays() {
+            return plays;
+        }
+
+        public int getFinished() {
+            return finished;
+        }
+
+        public int getSkipped() {
+            return plays - finished;
+        }
+
+        public long getListenedMillis() {
+            return listenedMillis;
+        }
+    }
+
+    /**
+     * Carica la cronologia dal file.
+     *
+     * @param file     Il file della cronologia.
+     * @param capacity Il numero di ascolti da tenere.
+     * @param writer   L'executor a thread singolo su cui avvengono tutte le scritture.
+     */
+    public PlayHistory(File file, int capacity, ExecutorService writer) {
+        this.file = file;
+        this.writer = writer;
+        this.ring = new Entry[Math.max(1, capacity)];
+        this.listenedTotals = new long[ring.length];
+        this.finishedTotals = new long[ring.length];
+
+        load();
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+
+            // un'ultima riga senza a capo è stata troncata da un arresto improvviso: viene tolta
+            // dal file, altrimenti la prossima riga aggiunta le finirebbe attaccata
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') end--;
+            if (end < bytes.length) {
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    out.truncate(end);
+                }
+            }
+            if (end == 0) return;
+
+            String content = new String(bytes, 0, end - 1, StandardCharsets.UTF_8);
+            for (String line : content.split("\n")) {
+                fileLines++;
+                Entry entry = Entry.parse(line);
+                if (entry != null) store(entry);
+            }
+        } catch (IOException e) {
+            Logger.writeLog("PlayHistory: errore nella lettura di " + file.getName() + " - " + e.getMessage());
+        }
+    }
+
+    // ─────────────── lettura ───────────────
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /** @return Il numero di ascolti presenti nel buffer. */
+    public synchronized int size() {
+        return (int) Math.min(next, ring.length);
+    }
+
+    /** @return Il numero di sequenza dell'ascolto più recente, -1 se la cronologia è vuota. */
+    public synchronized long latestSequence() {
+        return next - 1;
+    }
+
+    /** @return Il numero di sequenza dell'ascolto più vecchio ancora nel buffer. */
+    public synchronized long oldestSequence() {
+        return Math.max(0, next - ring.length);
+    }
+
+    /**
+     * @return L'ascolto con il numero di sequenza indicato, oppure {@code null} se non è
+     *         (o non è più) nel buffer.
+     */
+    public synchronized Entry get(long sequence) {
+        if (sequence < oldestSequence() || sequence >= next) return null;
+        return ring[slot(sequence)];
+    }
+
+    /**
+     * @return Gli ultimi {@code count} ascolti, dal più recente.
+     */
+    public synchronized List<Entry> recent(int count) {
+        int n = Math.min(count, size());
+        List<Entry> result = new ArrayList<>(n);
+        for (long seq = next - 1; seq >= next - n; seq--) result.add(ring[slot(seq)]);
+        return result;
+    }
+
+    /**
+     * Calcola le statistiche degli ascolti iniziati dall'istante indicato in poi, limitatamente
+     * a quelli ancora nel buffer. Costa O(log n).
+     *
+     * @param fromMillis L'inizio dell'intervallo (epoch in millisecondi).
+     */
+    public synchronized Stats statsSince(long fromMillis) {
+        long lo = oldestSequence();
+        long hi = next;
+
+        // primo ascolto iniziato da fromMillis in poi
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (ring[slot(mid)].startMillis < fromMillis) lo = mid + 1;
+            else hi = mid;
+        }
+        if (lo >= next) return new Stats(0, 0, 0);
+
+        int first = slot(lo);
+        int last = slot(next - 1);
+        long listened = listenedTotals[last] - listenedTotals[first] + ring[first].listenedMillis;
+        long finished = finishedTotals[last] - finishedTotals[first] + (ring[first].finished ? 1 : 0);
+        return new Stats((int) (next - lo), (int) finished, listened);
+    }
+
+    // ─────────────── scrittura ───────────────
+
+    /**
+     * Aggiunge un ascolto alla cronologia e lo accoda al thread di scrittura.
+     */
+    public synchronized void add(Entry entry) {
+        store(entry);
+        writer.execute(() -> append(entry));
+
+        if (++fileLines >= 2 * ring.length) {
+            List<Entry> snapshot = snapshot();
+            fileLines = snapshot.size();
+            writer.execute(() -> rewrite(snapshot));
+        }
+    }
+
+    /**
+     * Riscrive il file con il solo contenuto del buffer.
+     *
+     * @return Il completamento della riscrittura, eseguita sul thread di scrittura.
+     */
+    public synchronized Future<?> compact() {
+        List<Entry> snapshot = snapshot();
+        fileLines = snapshot.size();
+        return writer.submit(() -> rewrite(snapshot));
+    }
+
+    private void store(Entry entry) {
+        int s = slot(next);
+        long listened = entry.listenedMillis;
+        long finished = entry.finished ? 1 : 0;
+        if (next > 0) {
+            int prev = slot(next - 1);
+            listened += listenedTotals[prev];
+            finished += finishedTotals[prev];
+        }
+
+        ring[s] = entry;
+        listenedTotals[s] = listened;
+        finishedTotals[s] = finished;
+        next++;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+    private List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<>(size());
+        for (long seq = oldestSequence(); seq < next; seq++) entries.add(ring[slot(seq)]);
+        return entries;
+    }
+
+    // ─────────────── thread di scrittura ───────────────
+
+    private void append(Entry entry) {
+        try {
+            if (channel == null) {
+                File parent = file.getAbsoluteFile().getParentFile();
+                if (parent != null) parent.mkdirs();
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                           StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(entry.toLine().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            Logger.writeLog("PlayHistory: errore nella scrittura di " + file.getName() + " - " + e.getMessage());
+        }
+    }
+
+    private void rewrite(List<Entry> entries) {
+        StringBuilder sb = new StringBuilder();
+        for (Entry entry : entries) sb.append(entry.toLine());
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) parent.mkdirs();
+
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) out.write(buffer);
+                out.force(true);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.writeLog("PlayHistory: compattazione di " + file.getName() + " fallita - " + e.getMessage());
+        }
+    }
+}
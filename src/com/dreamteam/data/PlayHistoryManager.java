@@ -0,0 +1,80 @@
+package com.dreamteam.data;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.dreamteam.control.Logger;
+
+/**
+ * Gestisce la cronologia degli ascolti ({@code resources/history.log}): quali brani sono stati
+ * riprodotti, quando, per quanto tempo e se sono stati ascoltati fino alla fine o saltati.
+ * <p>
+ * La cronologia tiene gli ultimi {@code history.size} ascolti (vedi {@link PlayHistory}) e viene
+ * salvata dal thread "PlayHistoryWriter" una riga alla volta.
+ * </p>
+ */
+public abstract class PlayHistoryManager {
+    public static final String HISTORY_PATH = "resources/history.log";
+    private static final long SAVE_TIMEOUT_MILLIS = 2000;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PlayHistoryWriter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final PlayHistory history =
+            new PlayHistory(new File(HISTORY_PATH), ConfigManager.loadHistorySize(), writer);
+
+    /**
+     * Registra un ascolto concluso.
+     *
+     * @param title          Il titolo del brano.
+     * @param playlist       La playlist da cui è stato riprodotto, oppure {@code null}.
+     * @param startMillis    L'istante di inizio (epoch in millisecondi).
+     * @param listenedMillis Il tempo effettivamente ascoltato, pause escluse.
+     * @param finished       true se il brano è arrivato alla fine, false se è stato saltato.
+     */
+    public static void record(String title, String playlist, long startMillis, long listenedMillis, boolean finished) {
+        if (title == null) return;
+        history.add(new PlayHistory.Entry(title, playlist, startMillis, listenedMillis, finished));
+    }
+
+    /** @return Il numero di sequenza dell'ascolto più recente, -1 se la cronologia è vuota. */
+    public static long latestSequence() {
+        return history.latestSequence();
+    }
+
+    /** @return L'ascolto con il numero di sequenza indicato, oppure {@code null} se non è più in cronologia. */
+    public static PlayHistory.Entry get(long sequence) {
+        return history.get(sequence);
+    }
+
+    /** @return Gli ultimi {@code count} ascolti, dal più recente. */
+    public static List<PlayHistory.Entry> recent(int count) {
+        return history.recent(count);
+    }
+
+    /**
+     * @param windowMillis L'ampiezza dell'intervallo, ad esempio 24 ore.
+     * @return Le statistiche degli ascolti iniziati nell'intervallo che termina adesso.
+     */
+    public static PlayHistory.Stats statsForLast(long windowMillis) {
+        return history.statsSince(System.currentTimeMillis() - windowMillis);
+    }
+
+    /**
+     * Compatta il file della cronologia, attendendo al massimo un paio di secondi.
+     * Da chiamare alla chiusura dell'applicazione.
+     */
+    public static void save() {
+        try {
+            history.compact().get(SAVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Logger.writeLog("PlayHistoryManager: salvataggio della cronologia non completato - " + e.getMessage());
+        }
+    }
+}
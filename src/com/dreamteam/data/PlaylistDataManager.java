@@ -6,10 +6,16 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import com.dreamteam.control.FileTaskExecutor;
 import com.dreamteam.control.Logger;
 import com.dreamteam.model.Playlist;
 import com.dreamteam.model.Song;
@@ -170,6 +176,14 @@ public abstract class PlaylistDataManager {
         }
     }
     
+    /**
+     * Restituisce una copia indipendente della playlist, da passare a un'operazione in background
+     * mentre l'originale può continuare a cambiare sull'EDT.
+     */
+    public static Playlist copyOf(Playlist playlist) {
+        return gson.fromJson(gson.toJson(playlist), Playlist.class);
+    }
+
     /**
      * Esporta una playlist
      * 
@@ -178,6 +192,15 @@ public abstract class PlaylistDataManager {
      * @throws IOException
      */
     public static void exportPlaylist(Playlist playlist, File destDir) throws IOException {
+        exportPlaylist(playlist, destDir, null);
+    }
+
+    /**
+     * Esporta una playlist riportando l'avanzamento della copia dei file MP3.
+     *
+     * @param context Il contesto dell'operazione in background, oppure {@code null}.
+     */
+    public static void exportPlaylist(Playlist playlist, File destDir, FileTaskExecutor.Context context) throws IOException {
         if (!destDir.exists()) destDir.mkdirs();
 
         File jsonFile = new File(destDir, "data.json");
@@ -187,14 +210,17 @@ public abstract class PlaylistDataManager {
         }
 
         // Copia i file MP3 associati
-        for (String title : playlist.getSongTitles()) {
-            Song song = playlist.getSong(title);
-            if (song != null) {
-                File original = new File(song.getPath());
-                File target = new File(destDir, original.getName());
-                if (!target.exists()) {
-                    Files.copy(original.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                }
+        List<Song> songs = playlist.getSongs();
+        for (int i = 0; i < songs.size(); i++) {
+            if (context != null) {
+                context.checkCancelled();
+                context.setProgress(i, songs.size());
+            }
+
+            File original = new File(songs.get(i).getPath());
+            File target = new File(destDir, original.getName());
+            if (!target.exists()) {
+                Files.copy(original.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
             }
         }
 
@@ -216,22 +242,35 @@ public abstract class PlaylistDataManager {
      * @throws IOException
      */
     public static Playlist importPlaylist(File jsonFile) throws IOException {
+        return importPlaylist(jsonFile, null);
+    }
+
+    /**
+     * Importa una playlist riportando l'avanzamento della copia dei file MP3.
+     *
+     * @param context Il contesto dell'operazione in background, oppure {@code null}.
+     */
+    public static Playlist importPlaylist(File jsonFile, FileTaskExecutor.Context context) throws IOException {
         Gson gson = new Gson();
         try (FileReader reader = new FileReader(jsonFile)) {
             Playlist pl = gson.fromJson(reader, Playlist.class);
 
             File dir = jsonFile.getParentFile();
 
-            for (String title : pl.getSongTitles()) {
-                Song song = pl.getSong(title);
-                if (song != null) {
-                    File songFile = new File(dir, new File(song.getPath()).getName());
-                    File dest = new File("resources/playlists/" + songFile.getName());
-                    if (!dest.exists() && songFile.exists()) {
-                        Files.copy(songFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    }
-                    song.setPath(dest.getPath());
+            List<Song> songs = pl.getSongs();
+            for (int i = 0; i < songs.size(); i++) {
+                if (context != null) {
+                    context.checkCancelled();
+                    context.setProgress(i, songs.size());
                 }
+
+                Song song = songs.get(i);
+                File songFile = new File(dir, new File(song.getPath()).getName());
+                File dest = new File("resources/playlists/" + songFile.getName());
+                if (!dest.exists() && songFile.exists()) {
+                    Files.copy(songFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                song.setPath(dest.getPath());
             }
 
             // Copia la cover se presente
@@ -248,6 +287,12 @@ public abstract class PlaylistDataManager {
         }
     }
     
+    /**
+     * Crea la playlist con tutti i brani della libreria, ordinati per titolo.
+     * I brani sono distinti per identificativo ({@link Song#getId()}): lo stesso file presente in più
+     * playlist compare una volta sola, mentre file diversi con lo stesso titolo compaiono tutti, con
+     * un titolo reso distinto da {@link #conTitoloDistinto}.
+     */
     public static Playlist creaPlaylistTuttiIBrani() {
         Playlist tutti = new Playlist();
         LinkedHashMap<String, Song> unici = new LinkedHashMap<>();
@@ -257,10 +302,9 @@ public abstract class PlaylistDataManager {
         for (Playlist pl : playlists.values()) {
             if (pl.getName().equals(LanguageManager.get("playlist.all"))) continue;
 
-            for (String title : pl.getSongTitles()) {
-                Song s = pl.getSong(title);
-                if (s != null && new File(s.getPath()).exists()) {
-                    unici.putIfAbsent(title, s);
+            for (Song s : pl.getSongs()) {
+                if (new File(s.getPath()).exists()) {
+                    unici.putIfAbsent(s.getId(), s);
                 }
             }
         }
@@ -272,9 +316,10 @@ public abstract class PlaylistDataManager {
         }
 
         // Aggiungi tutti i brani alla playlist "Tutti i Brani"
-        unici.entrySet().stream()
-            .sorted(Map.Entry.comparingByKey(String.CASE_INSENSITIVE_ORDER))
-            .forEach(entry -> tutti.addSong(entry.getValue()));
+        unici.values().stream()
+            .sorted(Comparator.comparing(Song::getTitle, String.CASE_INSENSITIVE_ORDER))
+            .forEach(s -> tutti.addSong(tutti.getSong(s.getTitle().replace('_', ' ')) != null
+                                        ? conTitoloDistinto(tutti, s) : s));
 
         tutti.setName(LanguageManager.get("playlist.all"));
         tutti.setCoverImage(PLAYLIST_ALL_ICON);
@@ -282,6 +327,50 @@ public abstract class PlaylistDataManager {
         return tutti;
     }
     
+    /**
+     * Restituisce una copia del brano con un titolo non ancora presente nella playlist. Lista,
+     * modalità di riproduzione e coda ritrovano i brani per titolo, per cui due file diversi con lo
+     * stesso titolo devono avere titoli diversi per essere entrambi raggiungibili: alla copia viene
+     * aggiunto il nome della cartella e, se non basta, un numero. Il brano originale, condiviso con
+     * la sua playlist, non viene modificato.
+     */
+    private static Song conTitoloDistinto(Playlist playlist, Song song) {
+        File parent = new File(song.getPath()).getParentFile();
+        String base = parent != null ? song.getTitle() + " (" + parent.getName() + ")" : song.getTitle();
+
+        String title = base;
+        for (int n = 2; playlist.getSong(title.replace('_', ' ')) != null; n++) {
+            title = base + " " + n;
+        }
+
+        Song copia = new Song(title, song.getPath());
+        copia.setAuthor(song.getAuthor());
+        return copia;
+    }
+
+    /**
+     * Toglie da "Tutti i brani" i brani che risultano lo stesso file di uno precedente, ad esempio
+     * dopo che le impronte calcolate in background hanno sostituito gli identificativi provvisori.
+     *
+     * @param tutti La playlist con tutti i brani.
+     * @return true se la playlist è cambiata.
+     */
+    public static boolean rimuoviDoppioni(Playlist tutti) {
+        Set<String> visti = new HashSet<>();
+        ArrayList<Song> unici = new ArrayList<>();
+        for (Song s : tutti.getSongs()) {
+            if (visti.add(s.getId())) unici.add(s);
+        }
+        int doppioni = tutti.getSongs().size() - unici.size();
+        if (doppioni == 0) return false;
+
+        Set<Song> tenuti = new HashSet<>(unici);
+        tutti.getOriginalOrder().removeIf(s -> !tenuti.contains(s));
+        tutti.setSongs(unici);
+        Logger.writeLog("PlaylistDataManager: " + doppioni + " doppioni tolti da " + tutti.getName());
+        return true;
+    }
+    
     private static void caricaMP3Ricorsivamente(File dir, Map<String, Song> unici) {
         File[] files = dir.listFiles();
         if (files == null) return;
@@ -292,10 +381,8 @@ public abstract class PlaylistDataManager {
             } else if (file.getName().toLowerCase().endsWith(".mp3")) {
                 String title = file.getName().substring(0, file.getName().length() - 4)
                     .replace('_', ' ').trim();
-                if (!unici.containsKey(title)) {
-                    Song s = new Song(title, file.getPath());
-                    unici.put(title, s);
-                }
+                Song s = new Song(title, file.getPath());
+                unici.putIfAbsent(s.getId(), s);
             }
         }
     }
@@ -0,0 +1,274 @@
+package com.dreamteam.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.dreamteam.control.Logger;
+import com.dreamteam.control.QueueManager;
+import com.dreamteam.model.Song;
+
+/**
+ * Rende persistente la coda di riproduzione con un registro delle operazioni in sola aggiunta
+ * ({@code resources/queue.log}) e un'istantanea periodica ({@code resources/queue.snapshot}).
+ * <p>
+ * Ogni modifica della coda aggiunge al registro una riga di poche decine di byte, scritta e forzata
+ * su disco dal thread "QueueWriter". Dopo {@value #SNAPSHOT_EVERY} operazioni la coda intera viene
+ * scritta nell'istantanea, in un file temporaneo che sostituisce l'originale in modo atomico, e il
+ * registro riparte da zero. All'avvio si carica l'istantanea e si rieseguono le operazioni del
+ * registro, per cui la coda torna com'era anche dopo un arresto improvviso.
+ * </p>
+ * <p>
+ * Istantanea e registro iniziano con una riga {@code #epoca}: il registro vale solo se ha la stessa
+ * epoca dell'istantanea. Se l'applicazione si ferma dopo aver scritto una nuova istantanea ma prima
+ * di azzerare il registro, le operazioni già comprese nell'istantanea non vengono ripetute.
+ * </p>
+ * <p>
+ * Righe del registro: {@code A \t path \t titolo} (in fondo), {@code T \t path \t titolo} (in testa),
+ * {@code P} (estrazione), {@code R \t path} (rimozione), {@code M \t posizione \t path} (spostamento),
+ * {@code C} (svuotamento). Una riga troncata da un arresto improvviso viene ignorata.
+ * </p>
+ */
+public class QueueJournal {
+    public static final String QUEUE_LOG_PATH = "resources/queue.log";
+    public static final String QUEUE_SNAPSHOT_PATH = "resources/queue.snapshot";
+    static final int SNAPSHOT_EVERY = 256;
+
+    private final File log;
+    private final File snapshot;
+    private final ExecutorService writer;
+    private long epoch;
+    private int operations;      // operazioni nel registro dall'ultima istantanea
+    private FileChannel channel; // solo thread di scrittura
+
+    /**
+     * @param log      Il file del registro delle operazioni.
+     * @param snapshot Il file dell'istantanea.
+     */
+    public QueueJournal(File log, File snapshot) {
+        this.log = log;
+        this.snapshot = snapshot;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "QueueWriter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Ricostruisce la coda salvata: carica l'istantanea e riesegue le operazioni del registro.
+     *
+     * @param queue La coda da riempire, senza registro collegato.
+     */
+    public synchronized void replay(QueueManager queue) {
+        long start = System.nanoTime();
+
+        long snapshotEpoch = -1;
+        for (String line : readLines(snapshot)) {
+            if (snapshotEpoch < 0) {
+                snapshotEpoch = parseEpoch(line);
+                if (snapshotEpoch < 0) break;
+                continue;
+            }
+
+            Song song = parseSong(line);
+            if (song != null) queue.add(song);
+        }
+        epoch = Math.max(0, snapshotEpoch);
+
+        List<String> lines = readLines(log);
+        if (!lines.isEmpty() && parseEpoch(lines.get(0)) == epoch) {
+            for (String line : lines.subList(1, lines.size())) apply(queue, line);
+        }
+
+        Logger.writeLog("QueueJournal: coda di " + queue.size() + " brani ripristinata in "
+                      + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // ─────────────── operazioni ───────────────
+
+    public void add(Song song) {
+        append("A\t" + song.getPath() + "\t" + song.getTitle());
+    }
+
+    public void addToTop(Song song) {
+        append("T\t" + song.getPath() + "\t" + song.getTitle());
+    }
+
+    public void poll() {
+        append("P");
+    }
+
+    public void remove(Song song) {
+        append("R\t" + song.getPath());
+    }
+
+    public void moveTo(Song song, int position) {
+        append("M\t" + position + "\t" + song.getPath());
+    }
+
+    public void clear() {
+        append("C");
+    }
+
+    /** @return true se il registro è abbastanza lungo da sostituirlo con un'istantanea. */
+    public synchronized boolean needsSnapshot() {
+        return operations >= SNAPSHOT_EVERY;
+    }
+
+    /**
+     * Scrive la coda nell'istantanea e azzera il registro.
+     *
+     * @param songs Il contenuto attuale della coda, dalla testa.
+     * @return Il completamento della scrittura, eseguita sul thread di scrittura.
+     */
+    public synchronized Future<?> snapshot(List<Song> songs) {
+        long next = ++epoch;
+        operations = 0;
+
+        StringBuilder sb = new StringBuilder("#").append(next).append('\n');
+        for (Song song : songs) sb.append(song.getPath()).append('\t').append(song.getTitle()).append('\n');
+        String content = sb.toString();
+
+        return writer.submit(() -> rewrite(content, next));
+    }
+
+    /**
+     * Scrive l'istantanea e attende al massimo il tempo indicato.
+     * Da chiamare alla chiusura dell'applicazione.
+     */
+    public void save(List<Song> songs, long timeoutMillis) {
+        try {
+            snapshot(songs).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Logger.writeLog("QueueJournal: salvataggio della coda non completato - " + e.getMessage());
+        }
+    }
+
+    private synchronized void append(String line) {
+        operations++;
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        writer.execute(() -> write(bytes));
+    }
+
+    private static void apply(QueueManager queue, String line) {
+        String[] parts = line.split("\t", 3);
+        switch (parts[0]) {
+            case "A":
+                if (parts.length == 3) queue.add(new Song(parts[2], parts[1]));
+                break;
+            case "T":
+                if (parts.length == 3) queue.addToTop(new Song(parts[2], parts[1]));
+                break;
+            case "P":
+                queue.poll();
+                break;
+            case "R":
+                if (parts.length >= 2) queue.remove(new Song(null, parts[1]));
+                break;
+            case "M":
+                if (parts.length == 3) {
+                    try {
+                        queue.moveTo(new Song(null, parts[2]), Integer.parseInt(parts[1]));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                break;
+            case "C":
+                queue.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Song parseSong(String line) {
+        int tab = line.indexOf('\t');
+        return tab > 0 ? new Song(line.substring(tab + 1), line.substring(0, tab)) : null;
+    }
+
+    private static long parseEpoch(String line) {
+        if (!line.startsWith("#")) return -1;
+        try {
+            return Long.parseLong(line.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return Le righe complete del file; un'ultima riga senza a capo è stata troncata e viene ignorata.
+     */
+    private List<String> readLines(File file) {
+        if (!file.exists()) return List.of();
+
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') end--;
+            if (end == 0) return List.of();
+
+            return List.of(new String(bytes, 0, end - 1, StandardCharsets.UTF_8).split("\n"));
+        } catch (IOException e) {
+            Logger.writeLog("QueueJournal: errore nella lettura di " + file.getName() + " - " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    // ─────────────── thread di scrittura ───────────────
+
+    private void write(byte[] bytes) {
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE,
+                                           StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            Logger.writeLog("QueueJournal: errore nella scrittura di " + log.getName() + " - " + e.getMessage());
+        }
+    }
+
+    private void rewrite(String content, long newEpoch) {
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+
+            File parent = snapshot.getAbsoluteFile().getParentFile();
+            if (parent != null) parent.mkdirs();
+
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) out.write(buffer);
+                out.force(true);
+            }
+            Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // da qui il vecchio registro è superato: riparte con la nuova epoca
+            channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.wrap(("#" + newEpoch + "\n").getBytes(StandardCharsets.UTF_8));
+            while (header.hasRemaining()) channel.write(header);
+            channel.force(false);
+        } catch (IOException e) {
+            Logger.writeLog("QueueJournal: istantanea di " + snapshot.getName() + " fallita - " + e.getMessage());
+        }
+    }
+}
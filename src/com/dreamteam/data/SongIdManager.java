@@ -0,0 +1,297 @@
+package com.dreamteam.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import com.dreamteam.control.Logger;
+import com.dreamteam.model.Song;
+
+/**
+ * Assegna a ogni brano un identificativo stabile ricavato dal contenuto del file, così lo stesso file
+ * copiato in più playlist (o con titoli diversi) è riconosciuto come un solo brano, e due file diversi
+ * con lo stesso titolo restano distinti.
+ * <p>
+ * L'identificativo è lo SHA-1 della dimensione del file e di tre campioni da {@value #SAMPLE_SIZE} byte
+ * (inizio, metà e fine); i file piccoli vengono letti per intero. Ogni identificativo resta valido
+ * finché dimensione e data di modifica del file non cambiano: la cache viene caricata dal disco al
+ * primo utilizzo e salvata alla chiusura dell'applicazione, per cui di solito basta leggere gli
+ * attributi del file.
+ * </p>
+ * <p>
+ * Il contenuto dei file viene letto solo dal thread "SongIdHash" ({@link #preload},
+ * {@link #computeIdLater}) o, per un singolo brano, da {@link #computeId}. Finché l'impronta di un file non è pronta, {@link #getId(Song)}
+ * restituisce un identificativo provvisorio ricavato dal percorso.
+ * </p>
+ */
+public abstract class SongIdManager {
+    public static final String CACHE_PATH = "resources/index/songids.dat";
+    private static final int MAGIC = 0x53494453; // "SIDS"
+    private static final int FORMAT_VERSION = 1;
+    static final int SAMPLE_SIZE = 16 * 1024;
+
+    /** Prefisso degli identificativi provvisori, ricavati dal percorso. */
+    private static final String PATH_PREFIX = "path:";
+
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private static final Map<String, String> titles = new ConcurrentHashMap<>();
+    private static volatile boolean loaded;
+    private static volatile boolean dirty;
+
+    private static final ExecutorService hasher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "SongIdHash");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    /**
+     * Restituisce l'identificativo del brano senza leggere il file: quello del contenuto se è già
+     * in cache, altrimenti quello provvisorio ricavato dal percorso. Ne ricorda anche il titolo
+     * (vedi {@link #getTitle}).
+     *
+     * @param song Il brano.
+     * @return L'identificativo, mai {@code null}.
+     */
+    public static String getId(Song song) {
+        File file = new File(song.getPath());
+        return remember(song, getCachedId(file), file);
+    }
+
+    /**
+     * Come {@link #getId(Song)}, ma se l'impronta non è in cache la calcola subito leggendo il file.
+     * Da usare per un singolo brano, ad esempio quello appena avviato.
+     */
+    public static String computeId(Song song) {
+        File file = new File(song.getPath());
+        String id = getCachedId(file);
+        return remember(song, id != null ? id : computeId(file), file);
+    }
+
+    /**
+     * Calcola l'impronta del brano sul thread "SongIdHash", senza bloccare il chiamante.
+     *
+     * @param song    Il brano.
+     * @param onReady Riceve l'identificativo (quello provvisorio se il file non è leggibile),
+     *                sul thread di background.
+     */
+    public static void computeIdLater(Song song, Consumer<String> onReady) {
+        hasher.execute(() -> onReady.accept(computeId(song)));
+    }
+
+    /**
+     * @return true se l'identificativo è ricavato dal contenuto del file, false se è quello
+     *         provvisorio ricavato dal percorso.
+     */
+    public static boolean isContentId(String id) {
+        return !id.startsWith(PATH_PREFIX);
+    }
+
+    /**
+     * @return Il titolo del primo brano con l'identificativo indicato visto in questa sessione,
+     *         oppure {@code null} se non è noto.
+     */
+    public static String getTitle(String id) {
+        return titles.get(id);
+    }
+
+    /**
+     * Calcola in background le impronte dei brani non ancora in cache.
+     *
+     * @param songs  I brani; l'elenco viene copiato.
+     * @param onDone Eseguito (sul thread di background) al termine, anche se non è stato letto nessun file.
+     */
+    public static void preload(Collection<Song> songs, Runnable onDone) {
+        List<File> files = new ArrayList<>(songs.size());
+        for (Song song : songs) files.add(new File(song.getPath()));
+
+        hasher.execute(() -> {
+            long start = System.nanoTime();
+            int computed = 0;
+            for (File file : files) {
+                if (getCachedId(file) == null && computeId(file) != null) computed++;
+            }
+            if (computed > 0) {
+                Logger.writeLog("SongIdManager: " + computed + " impronte calcolate in "
+                              + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+            if (onDone != null) onDone.run();
+        });
+    }
+
+    /**
+     * Salva la cache su disco, se è cambiata dall'ultimo salvataggio.
+     */
+    public static void save() {
+        if (!dirty) return;
+        dirty = false;
+
+        File target = new File(CACHE_PATH);
+        File dir = target.getParentFile();
+        if (!dir.exists()) dir.mkdirs();
+        File tmp = new File(dir, target.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(cache.size());
+            for (Map.Entry<String, Entry> e : cache.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().lastModified);
+                out.writeUTF(e.getValue().id);
+            }
+        } catch (IOException e) {
+            Logger.writeLog("SongIdManager: errore nel salvataggio della cache - " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Logger.writeLog("SongIdManager: cache salvata (" + cache.size() + " brani)");
+        } catch (IOException e) {
+            Logger.writeLog("SongIdManager: errore nel salvataggio della cache - " + e.getMessage());
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @return L'impronta del file se è in cache e ancora valida, altrimenti {@code null}.
+     */
+    private static String getCachedId(File file) {
+        ensureLoaded();
+
+        Entry entry = cache.get(file.getAbsolutePath());
+        if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified()) return null;
+        return entry.id;
+    }
+
+    /**
+     * Calcola l'impronta del file e la mette in cache.
+     *
+     * @return L'impronta, oppure {@code null} se il file non esiste o non è leggibile.
+     */
+    private static String computeId(File file) {
+        ensureLoaded();
+
+        long size = file.length();
+        long modified = file.lastModified();
+        if (modified == 0) return null; // il file non esiste
+
+        try {
+            String id = digest(file, size);
+            cache.put(file.getAbsolutePath(), new Entry(size, modified, id));
+            dirty = true;
+            return id;
+        } catch (IOException e) {
+            Logger.writeLog("SongIdManager: impossibile leggere " + file.getName() + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String remember(Song song, String id, File file) {
+        if (id == null) id = PATH_PREFIX + file.getPath();
+        if (song.getTitle() != null) titles.putIfAbsent(id, song.getTitle());
+        return id;
+    }
+
+    private static String digest(File file, long size) throws IOException {
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+        buffer.putLong(size).flip();
+        sha1.update(buffer);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (size <= 3L * SAMPLE_SIZE) {
+                sample(channel, 0, size, buffer, sha1);
+            } else {
+                sample(channel, 0, SAMPLE_SIZE, buffer, sha1);
+                sample(channel, (size - SAMPLE_SIZE) / 2, SAMPLE_SIZE, buffer, sha1);
+                sample(channel, size - SAMPLE_SIZE, SAMPLE_SIZE, buffer, sha1);
+            }
+        }
+        return HexFormat.of().formatHex(sha1.digest());
+    }
+
+    /** Aggiunge al digest {@code length} byte del file a partire da {@code position}. */
+    private static void sample(FileChannel channel, long position, long length, ByteBuffer buffer,
+                               MessageDigest sha1) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) break; // file accorciato nel frattempo
+            position += read;
+            buffer.flip();
+            sha1.update(buffer);
+        }
+    }
+
+    private static void ensureLoaded() {
+        if (loaded) return;
+
+        synchronized (SongIdManager.class) {
+            if (loaded) return;
+
+            File source = new File(CACHE_PATH);
+            if (source.exists()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+                    if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                        throw new IOException("Formato cache non riconosciuto");
+                    }
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String path = in.readUTF();
+                        long size = in.readLong();
+                        long modified = in.readLong();
+                        cache.putIfAbsent(path, new Entry(size, modified, in.readUTF()));
+                    }
+                    Logger.writeLog("SongIdManager: cache caricata (" + count + " brani)");
+                } catch (IOException e) {
+                    Logger.writeLog("SongIdManager: cache non valida, verrà ricostruita - " + e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final String id;
+
+        Entry(long size, long lastModified, String id) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.id = id;
+        }
+    }
+}
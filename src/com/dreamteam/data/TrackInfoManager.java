@@ -0,0 +1,178 @@
+package com.dreamteam.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.dreamteam.audio.Mp3HeaderInfo;
+import com.dreamteam.audio.Mp3HeaderProbe;
+import com.dreamteam.control.Logger;
+import com.dreamteam.model.Song;
+
+/**
+ * Gestisce la cache delle informazioni sui brani (durata, bitrate, frequenza) lette dagli header MP3.
+ * <p>
+ * Ogni voce è valida finché dimensione e data di modifica del file non cambiano. La cache viene
+ * caricata dal disco al primo utilizzo e salvata alla chiusura dell'applicazione, così le durate
+ * dell'intera libreria sono disponibili senza rileggere i file.
+ * </p>
+ */
+public abstract class TrackInfoManager {
+    public static final String CACHE_PATH = "resources/index/trackinfo.dat";
+    private static final int MAGIC = 0x54494E46; // "TINF"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private static volatile boolean loaded;
+    private static volatile boolean dirty;
+
+    private static final ExecutorService prober = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "TrackInfoProbe");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Restituisce le informazioni del file, leggendone gli header se non sono in cache.
+     *
+     * @param file Il file MP3.
+     * @return Le informazioni, oppure {@code null} se il file non è leggibile o non è un MP3.
+     */
+    public static Mp3HeaderInfo getInfo(File file) {
+        Mp3HeaderInfo cached = getCachedInfo(file);
+        if (cached != null || !file.exists()) return cached;
+
+        try {
+            Mp3HeaderInfo info = Mp3HeaderProbe.probe(file);
+            if (info != null) {
+                cache.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), info));
+                dirty = true;
+            }
+            return info;
+        } catch (IOException e) {
+            Logger.writeLog("TrackInfoManager: impossibile leggere " + file.getName() + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Restituisce le informazioni solo se sono già in cache e ancora valide, senza leggere il file MP3.
+     */
+    public static Mp3HeaderInfo getCachedInfo(File file) {
+        ensureLoaded();
+
+        Entry entry = cache.get(file.getAbsolutePath());
+        if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified()) return null;
+        return entry.info;
+    }
+
+    /**
+     * Legge in background le informazioni dei brani non ancora in cache.
+     *
+     * @param songs  I brani da analizzare.
+     * @param onDone Eseguito (sul thread di background) al termine, se almeno un brano è stato analizzato.
+     */
+    public static void preload(Collection<Song> songs, Runnable onDone) {
+        List<File> files = new ArrayList<>(songs.size());
+        for (Song song : songs) files.add(new File(song.getPath()));
+
+        prober.execute(() -> {
+            int probed = 0;
+            for (File file : files) {
+                if (getCachedInfo(file) == null && getInfo(file) != null) probed++;
+            }
+            if (probed > 0 && onDone != null) onDone.run();
+        });
+    }
+
+    /**
+     * Salva la cache su disco, se è cambiata dall'ultimo salvataggio.
+     */
+    public static void save() {
+        if (!dirty) return;
+        dirty = false;
+
+        File target = new File(CACHE_PATH);
+        File dir = target.getParentFile();
+        if (!dir.exists()) dir.mkdirs();
+        File tmp = new File(dir, target.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(cache.size());
+            for (Map.Entry<String, Entry> e : cache.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().lastModified);
+                e.getValue().info.writeTo(out);
+            }
+        } catch (IOException e) {
+            Logger.writeLog("TrackInfoManager: errore nel salvataggio della cache - " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Logger.writeLog("TrackInfoManager: cache salvata (" + cache.size() + " brani)");
+        } catch (IOException e) {
+            Logger.writeLog("TrackInfoManager: errore nel salvataggio della cache - " + e.getMessage());
+            tmp.delete();
+        }
+    }
+
+    private static void ensureLoaded() {
+        if (loaded) return;
+
+        synchronized (TrackInfoManager.class) {
+            if (loaded) return;
+
+            File source = new File(CACHE_PATH);
+            if (source.exists()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+                    if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                        throw new IOException("Formato cache non riconosciuto");
+                    }
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String path = in.readUTF();
+                        long size = in.readLong();
+                        long modified = in.readLong();
+                        cache.putIfAbsent(path, new Entry(size, modified, Mp3HeaderInfo.readFrom(in)));
+                    }
+                    Logger.writeLog("TrackInfoManager: cache caricata (" + count + " brani)");
+                } catch (IOException e) {
+                    Logger.writeLog("TrackInfoManager: cache non valida, verrà ricostruita - " + e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final Mp3HeaderInfo info;
+
+        Entry(long size, long lastModified, Mp3HeaderInfo info) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.info = info;
+        }
+    }
+}
@@ -1,279 +1,212 @@
 package com.dreamteam.model;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicBoolean;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.dreamteam.audio.AudioOutput;
+import com.dreamteam.audio.PlaybackEngine;
+import com.dreamteam.audio.PlaybackEvent;
+import com.dreamteam.audio.PlaybackEventBus;
+import com.dreamteam.audio.TrackPrefetcher;
 import com.dreamteam.control.Logger;
-import com.dreamteam.control.PlaybackManager;
-import com.dreamteam.view.Panel;
-
-import javazoom.jl.player.advanced.AdvancedPlayer;
 
+/**
+ * Player MP3 senza dipendenze dall'interfaccia grafica.
+ * <p>
+ * Espone i comandi di riproduzione (play, pausa, ripresa, seek, stop, successiva), le interrogazioni
+ * sullo stato e il {@link PlaybackEventBus} del motore. La scelta della canzone successiva
+ * è delegata a una {@link TrackSequence}: il pannello Swing è solo uno dei possibili client,
+ * e lo stesso player può essere pilotato da riga di comando o da un test di carico.
+ * </p>
+ */
 public class MP3Player {
-    private AdvancedPlayer player;
-    private FileInputStream fileInputStream;
-    private Song currentSong;
+    private final PlaybackEngine engine;
+    private volatile Song currentSong;
+    private volatile TrackSequence trackSequence;
     private long pausedPosition;
-    private long fileSize;
     private boolean isPaused;
-    private Thread playbackThread;
-    private volatile int currentPercentage;
-    private final Object lock;
-    private Panel panel;
-    private Semaphore semaphore;
-    private AtomicBoolean isPlaying = new AtomicBoolean(false);
-    private final AtomicBoolean advancing = new AtomicBoolean(false);
-    
+
     /**
      * Costruttore del player MP3.
-     * Inizializza i campi con valori di default e imposta lo stato su "pausato".
+     * Crea il motore di riproduzione (un unico thread per tutta la vita del player)
+     * e imposta lo stato su "pausato".
      */
     public MP3Player() {
-    	lock = new Object();
-        fileSize = 0;
+        this(new PlaybackEngine());
+    }
+
+    /**
+     * Costruttore del player MP3 con un dispositivo di uscita audio personalizzato.
+     *
+     * @param outputs Crea il dispositivo su cui il motore scrive l'audio decodificato.
+     */
+    public MP3Player(Supplier<AudioOutput> outputs) {
+        this(new PlaybackEngine(outputs));
+    }
+
+    private MP3Player(PlaybackEngine engine) {
+        this.engine = engine;
         pausedPosition = 0;
         isPaused = true;
+
+        // il motore può passare da solo alla traccia precaricata: la canzone corrente va seguita
+        engine.getEvents().subscribe(PlaybackEvent.TrackStarted.class, e -> {
+            if (e.isAutomatic()) {
+                currentSong = e.getSong();
+                pausedPosition = 0;
+            }
+        });
     }
 
     /**
      * Riproduce una canzone da capo.
-     * Ferma eventuali riproduzioni in corso, avvia un nuovo thread e riproduce la canzone specificata.
+     * Il comando viene accodato al motore di riproduzione, che ferma la traccia corrente e avvia la nuova.
      *
      * @param song La canzone da riprodurre.
      */
     public void play(Song song) {
-    	if (isPlaying.get()) {
-    	    return; // già in riproduzione
-    	}
-    	isPlaying.set(true);
-    	
-    	Logger.writeLog("MP3Player: play() avviato – " + currentSong.getTitle());
-    	
-        synchronized(lock)
-        {
-        	stop();
-            currentSong = song;
-            pausedPosition = 0;
-            isPaused = false;
-
-            Logger.writeLog("MP3Player: inizio riproduzione di \"" + song.getTitle() + "\"");
-
-            playbackThread = new Thread(() -> {
-                try {
-                    File file = new File(song.getPath());
-                    if (!file.exists()) {
-                        Logger.writeLog("MP3Player: file non trovato - " + file.getAbsolutePath());
-                        return;
-                    }
-
-                    fileSize = file.length();
-                    fileInputStream = new FileInputStream(file);
-                    player = new AdvancedPlayer(fileInputStream);
-
-                    isPlaying.set(true);
-                    
-                    Logger.writeLog("MP3Player: player creato, avvio riproduzione");
-
-                    // Thread per aggiornare la percentuale
-                    Thread monitor = new Thread(() -> {
-                        while (!isPaused && player != null) {
-                            try {
-                                int available = fileInputStream.available();
-                                int bytesRead = (int) (fileSize - available);
-                                currentPercentage = (int) ((bytesRead * 100L) / fileSize);
-                                Thread.sleep(500);
-                            } catch (Exception ignored) {
-                                break;
-                            }
-                        }
-                    });
-                    monitor.start();
-
-                    player.play();
-
-                    Logger.writeLog("MP3Player: riproduzione completata");
-                } catch (Exception e) {
-                    Logger.writeLog("MP3Player: errore durante play() - " + e.getMessage());
-                } finally {
-                    Logger.writeLog("MP3Player: riproduzione completata");
-                    player = null;
-                    fileInputStream = null;
-                    
-                    /* Rilascio il playbackSemaphore DOPO aver avviato il player
-                    SwingUtilities.invokeLater(() -> {
-                        if (panel.getController() != null) {
-                            panel.getController().getPlaybackSemaphore().release();
-                        }
-                    });
-                    */
-                    isPlaying.set(false);
-                    
-                    Logger.writeLog("MP3Player: riproduzione completata – " + currentSong.getTitle());
-                    Logger.writeLog("MP3Player: isPlaying = " + isPlaying.get());
-
-                }
-            });
-
-            playbackThread.start();
-            Logger.writeLog("MP3Player: thread playback avviato");
-        }
+        if (song == null) return;
+
+        currentSong = song;
+        pausedPosition = 0;
+        isPaused = false;
+
+        Logger.writeLog("MP3Player: inizio riproduzione di \"" + song.getTitle() + "\"");
+        engine.play(song);
     }
-    
+
+    /**
+     * Passa alla canzone indicata dalla sequenza di riproduzione.
+     *
+     * @return La canzone avviata, oppure {@code null} se non c'è una sequenza o è terminata.
+     */
+    public Song next() {
+        TrackSequence sequence = trackSequence;
+        if (sequence == null) return null;
+
+        Song song = sequence.next(currentSong);
+        if (song != null) play(song);
+        return song;
+    }
+
+    /**
+     * Imposta chi decide la canzone successiva per {@link #next()}.
+     *
+     * @param sequence La sequenza di riproduzione, oppure {@code null} per disattivare {@link #next()}.
+     */
+    public void setTrackSequence(TrackSequence sequence) {
+        this.trackSequence = sequence;
+    }
+
     /**
      * Riprende la riproduzione da dove era stata interrotta (messa in pausa).
+     * Il decoder è rimasto aperto durante la pausa, quindi l'audio riparte dal campione esatto.
      */
     public void resume() {
         if (!isPaused || currentSong == null) return;
 
         isPaused = false;
-        isPlaying.set(true);
-
-        Thread thread = new Thread(() -> {
-            try {
-                File file = new File(currentSong.getPath());
-                fileInputStream = new FileInputStream(file);
-                fileInputStream.skipNBytes(pausedPosition);
-                fileSize = file.length();
-
-                player = new AdvancedPlayer(fileInputStream);
-
-                Logger.writeLog("MP3Player: ripresa riproduzione di \"" + currentSong.getTitle() + "\"");
-
-                if (semaphore != null) {
-                    semaphore.release();
-                    Logger.writeLog("MP3Player: mutex rilasciato dopo resume()");
-                }
-                
-                Thread monitor = new Thread(() -> {
-                    while (!isPaused && player != null) {
-                        try {
-                            int available = fileInputStream.available();
-                            int bytesRead = (int) (fileSize - available);
-                            currentPercentage = (int) ((bytesRead * 100L) / fileSize);
-                            Thread.sleep(500);
-                        } catch (Exception ignored) {
-                            break;
-                        }
-                    }
-                });
-                monitor.start();
-
-                player.play();
-
-                Logger.writeLog("MP3Player: riproduzione completata – " + currentSong.getTitle());
-            } catch (Exception e) {
-                Logger.writeLog("MP3Player resume(): errore – " + e.getMessage());
-            } finally {
-                isPlaying.set(false);
-                Logger.writeLog("MP3Player: isPlaying = false");
-            }
-        });
+        engine.resume();
 
-        playbackThread = thread;
-        thread.start();
+        Logger.writeLog("MP3Player: ripresa riproduzione di \"" + currentSong.getTitle() + "\"");
     }
 
-
     /**
-     * Mette in pausa la riproduzione corrente, salvando la posizione attuale nel file.
+     * Mette in pausa la riproduzione corrente, salvando la posizione attuale nella traccia.
+     * Il motore sospende solo l'uscita audio, senza chiudere file e decoder.
      */
     public void pause() {
-        synchronized (this) {
-            if (player != null && !isPaused) {
-                try {
-                    pausedPosition = fileSize - fileInputStream.available();
-                    isPaused = true;
-                    player.close();
-                } catch (IOException e) {
-                	Logger.writeLog(e.getMessage());
-                }
-            }
+        if (engine.isActive() && !isPaused) {
+            pausedPosition = Math.max(1, engine.getPositionMillis());
+            isPaused = true;
+            engine.pause();
         }
     }
 
     /**
-     * Ferma completamente la riproduzione corrente, chiude il file e il player,
-     * interrompe il thread attivo se necessario.
+     * Ferma completamente la riproduzione corrente e rilascia il dispositivo audio.
      */
     public void stop() {
-        Thread current = Thread.currentThread();
-        Thread oldThread = playbackThread;
-
-        playbackThread = null;
-
-        if (player != null) {
-            player.close();
-            player = null;
-        }
-
-        if (fileInputStream != null) {
-            try {
-                fileInputStream.close();
-            } catch (IOException e) {
-            	Logger.writeLog(e.getMessage());
-            } finally {
-                fileInputStream = null;
-            }
-        }
-
+        engine.stop();
         isPaused = true;
-        currentPercentage = 0;
-
-        if (oldThread != null && oldThread.isAlive() && oldThread != current) {
-            oldThread.interrupt();
-            try {
-                oldThread.join();
-            } catch (InterruptedException e) {
-            	Logger.writeLog(e.getMessage());
-            }
-        }
     }
 
     /**
      * Salta a una posizione percentuale all'interno della traccia.
-     * Chiude il player corrente e ne avvia uno nuovo dalla posizione specificata.
+     * La percentuale viene convertita in tempo sulla durata reale del brano e il seek
+     * avviene sul confine del frame corrispondente.
      *
      * @param percentage La percentuale di avanzamento (0–100) a cui saltare.
      */
     public void seekToPercentage(int percentage) {
         if (currentSong == null || percentage < 0 || percentage > 100) return;
 
-        stop();
+        pausedPosition = 0;
+        isPaused = false;
+        engine.seekToPercentage(currentSong, percentage);
+    }
 
-        Thread thread = new Thread(() -> {
-            try {
-                File file = new File(currentSong.getPath());
-                FileInputStream localStream = new FileInputStream(file);
-                long skipBytes = (long) ((file.length() / 100.0) * percentage);
-                localStream.skipNBytes(skipBytes);
+    /**
+     * Salta alla frazione {@code value / scale} della traccia, ad esempio alla posizione di uno slider.
+     *
+     * @param value La posizione richiesta, tra 0 e {@code scale}.
+     * @param scale Il valore che corrisponde alla traccia intera.
+     */
+    public void seekToFraction(int value, int scale) {
+        if (currentSong == null || scale <= 0 || value < 0 || value > scale) return;
 
-                AdvancedPlayer newPlayer = new AdvancedPlayer(localStream);
-                
-                synchronized (this) {
-                    fileInputStream = localStream;
-                    player = newPlayer;
-                }
+        pausedPosition = 0;
+        isPaused = false;
+        engine.seekToFraction(currentSong, value, scale);
+    }
 
-                newPlayer.play();
+    /**
+     * Salta alla posizione temporale indicata, partendo dal frame che la contiene.
+     *
+     * @param millis La posizione in millisecondi dall'inizio della traccia.
+     */
+    public void seekToMillis(long millis) {
+        if (currentSong == null || millis < 0) return;
 
-                synchronized (this) {
-                    player = null;
-                }
+        pausedPosition = 0;
+        isPaused = false;
+        engine.seekToMillis(currentSong, millis);
+    }
 
-            } catch (Exception e) {
-            	Logger.writeLog(e.getMessage());
-            }
-        });
+    /**
+     * Indica al motore quale canzone seguirà quella corrente, così che venga preparata
+     * in anticipo e riprodotta senza pause alla fine della traccia.
+     *
+     * @param song La canzone successiva, oppure {@code null} se non è ancora nota.
+     */
+    public void preloadNext(Song song) {
+        engine.preloadNext(song);
+    }
 
-        synchronized (this) {
-            playbackThread = thread;
+    /**
+     * Legge in anticipo in memoria l'inizio delle canzoni che probabilmente verranno
+     * riprodotte dopo quella corrente, così che il loro avvio non attenda il disco.
+     *
+     * @param songs Le canzoni dalla più probabile; gli elementi {@code null} vengono ignorati.
+     */
+    public void prefetch(List<Song> songs) {
+        List<File> files = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            if (song != null) files.add(new File(song.getPath()));
         }
+        TrackPrefetcher.prefetch(files);
+    }
 
-        playbackThread.start();
-        isPaused = false;
+    /**
+     * Restituisce il bus degli eventi di riproduzione: inizio, passaggio automatico e fine
+     * delle tracce, avanzamento, cambi di stato ed errori.
+     *
+     * @return Il bus su cui iscriversi agli eventi.
+     */
+    public PlaybackEventBus getEvents() {
+        return engine.getEvents();
     }
 
     /**
@@ -282,23 +215,41 @@ public class MP3Player {
      * @return Percentuale della canzone già riprodotta.
      */
     public int getCurrentPercentage() {
-        return currentPercentage;
+        return engine.getCurrentPercentage();
+    }
+
+    /**
+     * Restituisce la posizione attuale nella canzone, calcolata dai campioni decodificati.
+     *
+     * @return Millisecondi riprodotti dall'inizio della traccia.
+     */
+    public long getPositionMillis() {
+        return engine.getPositionMillis();
+    }
+
+    /**
+     * Restituisce la durata della canzone corrente.
+     *
+     * @return Durata in millisecondi, 0 se non ancora nota.
+     */
+    public long getDurationMillis() {
+        return engine.getDurationMillis();
     }
 
 
     /**
-     * Verifica se la canzone è attualmente in riproduzione (thread attivo).
+     * Verifica se la canzone è attualmente in riproduzione (o sta per esserlo).
      *
-     * @return true se il player è attivo, false altrimenti.
+     * @return true se il motore sta riproducendo, false altrimenti.
      */
     public boolean isPlaying() {
-        return playbackThread != null && playbackThread.isAlive();
+        return engine.isActive();
     }
 
 	/**
-	 * Restituisce la posizione memorizzata nel file al momento della pausa.
+	 * Restituisce la posizione memorizzata al momento della pausa.
 	 *
-	 * @return Numero di byte letti prima della pausa.
+	 * @return Millisecondi riprodotti prima della pausa, 0 se il player non è in pausa.
 	 */
     public long getPausedPosition() {
         return pausedPosition;
@@ -312,12 +263,22 @@ public class MP3Player {
     public void setIsPaused(boolean input) {
         this.isPaused = input;
     }
-    
+
     public boolean isPaused()
     {
     	return isPaused;
     }
-    
+
+    /**
+     * Restituisce lo stato del motore di riproduzione.
+     *
+     * @return Lo stato attuale: in riproduzione, in pausa o fermo.
+     */
+    public PlaybackEngine.State getState()
+    {
+    	return engine.getState();
+    }
+
     /**
      * Restituisce la canzone attualmente in riproduzione.
      *
@@ -327,30 +288,18 @@ public class MP3Player {
     {
     	return this.currentSong;
     }
-    
-    public void setPanel(Panel panel)
-    {
-    	this.panel = panel;
-    }
-    
-    public void setSemaphore(Semaphore s) {
-        this.semaphore = s;
-    }
-    
-    public AtomicBoolean getIsPlaying()
-    {
-    	return this.isPlaying;
-    }
-    
-    public void setIsPlaying(boolean value)
-    {
-    	isPlaying = new AtomicBoolean(value);
-
-    	Logger.writeLog("MP3Player: isPlaying impostato a " + isPlaying.get());
 
+    /**
+     * Restituisce il motore di riproduzione sottostante.
+     *
+     * @return Il motore che esegue i comandi del player.
+     */
+    public PlaybackEngine getEngine()
+    {
+    	return engine;
     }
 
 	public void setCurrentSong(Song selected) {
 		currentSong = selected;
 	}
-}
\ No newline at end of file
+}
@@ -3,8 +3,14 @@ package com.dreamteam.model;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.dreamteam.data.PackageFilesManager;
 
@@ -19,6 +25,10 @@ public class Playlist implements Serializable {
     private List<Song> originalOrder;
     private List<Song> customOrder;
     private String coverImagePath; // Percorso copertina
+    private transient int modCount; // modifiche all'elenco dei brani, non salvato
+    private transient Map<String, List<Integer>> index; // titolo normalizzato -> posizioni in songs, crescenti; null se da ricostruire
+    private transient List<String> titles;             // istantanea immutabile dei titoli, null se mai creata
+    private transient int titlesVersion;               // valore di modCount a cui si riferisce titles
 
     /**
      * Costruttore di default. Inizializza una playlist vuota con immagine di copertina predefinita.
@@ -38,42 +48,59 @@ public class Playlist implements Serializable {
      */
     public void addSong(String title) {
         Song s = new Song(title, title.replace("_", " ") + ".mp3");
-        songs.add(s);
-        originalOrder.add(s);
+        addSong(s);
     }
 
     public void addSong(Song song)
     {
     	songs.add(song);
     	originalOrder.add(song);
+    	if (index != null) index.computeIfAbsent(songKey(song), k -> new ArrayList<>(1)).add(songs.size() - 1);
+    	modCount++;
     }
 
     /**
      * Rimuove una canzone dalla playlist in base al titolo visualizzato.
+     * La ricerca usa l'indice dei titoli normalizzati, senza confrontare ogni brano; l'indice viene
+     * aggiornato solo per i brani che seguono quello rimosso.
      *
      * @param displayTitle Il titolo della canzone da rimuovere.
      */
     public void removeSong(String displayTitle) {
-        String trimmedDisplayTitle = displayTitle.trim();
-        songs.removeIf(song -> song.getTitle().trim().replace('_', ' ').equalsIgnoreCase(trimmedDisplayTitle));
-        originalOrder.removeIf(song -> song.getTitle().trim().replace('_', ' ').equalsIgnoreCase(trimmedDisplayTitle));
+        List<Integer> matches = index().get(fold(displayTitle.trim()));
+        if (matches == null) return;
+
+        int first = matches.get(0);
+        List<Song> removed = new ArrayList<>(matches.size());
+        Set<String> titles = new HashSet<>();
+        for (int i : matches) {
+            removed.add(songs.get(i));
+            titles.add(songs.get(i).getTitle());
+        }
+
+        unindexFrom(first);
+        if (removed.size() == 1) {
+            songs.remove(first);
+        } else {
+            songs.removeIf(removed::contains);
+        }
+        reindexFrom(first);
+
+        originalOrder.removeIf(song -> titles.contains(song.getTitle()));
+        modCount++;
     }
 
     /**
      * Restituisce l'oggetto Song corrispondente al titolo dato, se presente nella playlist.
+     * Il confronto ignora maiuscole, spazi agli estremi e i trattini bassi nei titoli dei brani,
+     * e costa O(1) grazie all'indice dei titoli normalizzati.
      *
      * @param title Il titolo della canzone da cercare.
      * @return La canzone corrispondente, oppure null se non trovata.
      */
     public Song getSong(String title) {
-        String trimmedTitle = title.trim();
-        for (Song song : songs) {
-            String songTitle = song.getTitle().trim().replace('_', ' ');
-            if (songTitle.equalsIgnoreCase(trimmedTitle)) {
-                return song;
-            }
-        }
-        return null;
+        List<Integer> matches = index().get(fold(title.trim()));
+        return matches != null ? songs.get(matches.get(0)) : null;
     }
     /*
     public Song getSong(String title) {
@@ -88,13 +115,117 @@ public class Playlist implements Serializable {
     }
     */
 
+    /**
+     * Restituisce la posizione nella playlist della canzone con il titolo esatto indicato,
+     * in tempo costante grazie all'indice dei titoli normalizzati: vengono confrontati solo
+     * i brani il cui titolo differisce al più per maiuscole o trattini bassi.
+     *
+     * @param title Il titolo, così come restituito da {@link #getSongTitles()}.
+     * @return La posizione della canzone, oppure -1 se non presente.
+     */
+    public int indexOf(String title) {
+        List<Integer> matches = index().get(fold(title.trim().replace('_', ' ')));
+        if (matches == null) return -1;
+
+        for (int i : matches) {
+            if (songs.get(i).getTitle().equals(title)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Restituisce la canzone alla posizione indicata.
+     *
+     * @param index Posizione, tra 0 e il numero di canzoni escluso.
+     */
+    public Song getSongAt(int index) {
+        return songs.get(index);
+    }
+
+    /**
+     * Restituisce l'indice dei titoli normalizzati, con le posizioni dei brani in ordine crescente,
+     * ricostruendolo se un riordino lo ha invalidato (o se la playlist è appena stata caricata).
+     */
+    private Map<String, List<Integer>> index() {
+        if (index == null) {
+            index = new HashMap<>(songs.size() * 2);
+            reindexFrom(0);
+        }
+        return index;
+    }
+
+    /**
+     * Toglie dall'indice le posizioni da {@code from} in poi. Sono le ultime di ogni elenco,
+     * per cui scorrendo i brani dal fondo ognuna è in coda al proprio.
+     */
+    private void unindexFrom(int from) {
+        for (int i = songs.size() - 1; i >= from; i--) {
+            String key = songKey(songs.get(i));
+            List<Integer> positions = index.get(key);
+            positions.remove(positions.size() - 1);
+            if (positions.isEmpty()) index.remove(key);
+        }
+    }
+
+    /** Aggiunge all'indice le posizioni da {@code from} in poi, tolte in precedenza. */
+    private void reindexFrom(int from) {
+        for (int i = from; i < songs.size(); i++) {
+            index.computeIfAbsent(songKey(songs.get(i)), k -> new ArrayList<>(1)).add(i);
+        }
+    }
+
+    /** @return La chiave di un brano nell'indice: titolo senza spazi agli estremi e con spazi al posto dei trattini bassi. */
+    private static String songKey(Song song) {
+        return fold(song.getTitle().trim().replace('_', ' '));
+    }
+
+    /**
+     * Porta un titolo a una forma in cui due titoli uguali a meno di maiuscole coincidono,
+     * con lo stesso confronto carattere per carattere di {@link String#equalsIgnoreCase}.
+     */
+    private static String fold(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
     /**
      * Restituisce un array con i titoli di tutte le canzoni nella playlist.
+     * L'array è una copia che si può modificare; per leggere i titoli senza allocare
+     * usare {@link #getTitles()}.
      *
      * @return Array di titoli delle canzoni.
      */
     public String[] getSongTitles() {
-        return songs.stream().map(Song::getTitle).toArray(String[]::new);
+        return getTitles().toArray(new String[0]);
+    }
+
+    /**
+     * Restituisce i titoli di tutte le canzoni nella playlist, nell'ordine attuale, come lista
+     * immutabile. La lista viene ricreata solo dopo una modifica dell'elenco (vedi {@link #getModCount()}):
+     * fino ad allora ogni chiamata restituisce la stessa istanza.
+     *
+     * @return I titoli delle canzoni.
+     */
+    public List<String> getTitles() {
+        if (titles == null || titlesVersion != modCount) {
+            String[] array = new String[songs.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = songs.get(i).getTitle();
+            }
+            titles = Collections.unmodifiableList(Arrays.asList(array));
+            titlesVersion = modCount;
+        }
+        return titles;
+    }
+
+    /**
+     * @return Il numero di canzoni nella playlist.
+     */
+    public int size() {
+        return songs.size();
     }
     /*
     public String[] getSongTitles() {
@@ -142,6 +273,8 @@ public class Playlist implements Serializable {
     public void setSongs(ArrayList<Song> songs) {
         this.songs = songs;
         this.songs.sort(Comparator.comparing(Song::getTitle, String.CASE_INSENSITIVE_ORDER));
+        index = null;
+        modCount++;
     }
 
     /**
@@ -170,12 +303,12 @@ public class Playlist implements Serializable {
         this.name = name;
     }
     
-    public List getOriginalOrder()
+    public List<Song> getOriginalOrder()
     {
     	return originalOrder;
     }
     
-    public void setOriginalOrder(List order)
+    public void setOriginalOrder(List<Song> order)
     {
     	originalOrder = order;
     }
@@ -185,6 +318,8 @@ public class Playlist implements Serializable {
      */
     public void sortSongsAlphabetically() {
         songs.sort(Comparator.comparing(Song::getTitle, String.CASE_INSENSITIVE_ORDER));
+        index = null;
+        modCount++;
     }
 
     /**
@@ -192,6 +327,8 @@ public class Playlist implements Serializable {
      */
     public void sortSongsOriginalOrder() {
         songs = new ArrayList<>(originalOrder);
+        index = null;
+        modCount++;
     }
     
     /**
@@ -205,5 +342,17 @@ public class Playlist implements Serializable {
     /** Ordina songs secondo customOrder */
     private void applyCustomOrder() {
         this.songs = customOrder;
+        index = null;
+        modCount++;
+    }
+
+    /**
+     * Restituisce il contatore delle modifiche all'elenco dei brani (aggiunte, rimozioni, riordini).
+     * Chi mantiene strutture ricavate dalla playlist lo confronta per sapere quando ricostruirle.
+     *
+     * @return Un valore che cambia a ogni modifica dell'elenco.
+     */
+    public int getModCount() {
+        return modCount;
     }
 }
@@ -2,6 +2,8 @@ package com.dreamteam.model;
 
 import java.io.Serializable;
 
+import com.dreamteam.data.SongIdManager;
+
 public class Song implements Serializable
 {
 	private static final long serialVersionUID = 1L;
@@ -9,6 +11,7 @@ public class Song implements Serializable
 	private String title;
 	private String path;
 	private String author;
+	private transient String id; // impronta del contenuto appena nota, non salvata nella playlist
 	
 	/**
 	 * Costruttore della classe Song.
@@ -57,6 +60,23 @@ public class Song implements Serializable
 	public void setPath(String path)
 	{
 		this.path = path;	
+		this.id = null;
+	}
+	
+	/**
+	 * Restituisce l'identificativo del brano, ricavato dal contenuto del file (vedi {@link SongIdManager}).
+	 * Due brani con lo stesso identificativo sono lo stesso file, anche se in playlist diverse.
+	 * Finché l'impronta non è stata calcolata l'identificativo è quello provvisorio del percorso.
+	 *
+	 * @return L'identificativo del brano.
+	 */
+	public String getId()
+	{
+		if (id != null) return id;
+		
+		String current = SongIdManager.getId(this);
+		if (SongIdManager.isContentId(current)) id = current;
+		return current;
 	}
 	
 	/**
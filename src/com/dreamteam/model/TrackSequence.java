@@ -0,0 +1,20 @@
+package com.dreamteam.model;
+
+/**
+ * Stabilisce quale canzone segue quella corrente quando il player passa alla successiva.
+ * <p>
+ * L'interfaccia grafica la implementa con coda, playlist e modalità di riproduzione;
+ * un client senza interfaccia può fornire una sequenza qualsiasi, anche una semplice lista.
+ * </p>
+ */
+@FunctionalInterface
+public interface TrackSequence {
+
+    /**
+     * Restituisce la canzone successiva, consumandola se proviene da una coda.
+     *
+     * @param current La canzone corrente, oppure {@code null} se non ce n'è una.
+     * @return La canzone da riprodurre, oppure {@code null} se la sequenza è terminata.
+     */
+    Song next(Song current);
+}
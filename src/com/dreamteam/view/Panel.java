@@ -11,7 +11,9 @@ import java.awt.Image;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.stream.Collectors;
@@ -34,13 +36,18 @@ import javax.swing.JScrollPane;
 import javax.swing.JSlider;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 
 import com.dreamteam.control.Controller;
 import com.dreamteam.control.Logger;
 import com.dreamteam.control.PlaylistRenderer;
+import com.dreamteam.control.SongRenderer;
 import com.dreamteam.data.ConfigManager;
 import com.dreamteam.data.LanguageManager;
+import com.dreamteam.data.PlayCountManager;
 import com.dreamteam.data.PlaylistDataManager;
+import com.dreamteam.data.SongIdManager;
+import com.dreamteam.data.TrackInfoManager;
 import com.dreamteam.languages.Languages;
 import com.dreamteam.model.MP3Player;
 import com.dreamteam.model.Playlist;
@@ -89,6 +96,7 @@ public class Panel extends JPanel {
 	private MP3Player player;
 	private Controller controller;
 	private PlaylistRenderer playlistRenderer;
+	private SongRenderer songRenderer;
 	
 	private final Languages[] LANGUAGES = Languages.values();
 
@@ -99,6 +107,7 @@ public class Panel extends JPanel {
 					buttonPanel, 
 					centerPanel;
 	private JSlider slider;
+	private final ProgressSliderModel progressModel = new ProgressSliderModel();
 	private JScrollPane scrollPane, playlistScrollPane;
 	private JButton rewind_button, 
 					play_pause_btn, 
@@ -135,6 +144,7 @@ public class Panel extends JPanel {
 					sequenzialeItem, 
 					casualeItem, 
 					ripetiItem, 
+					radioItem, 
 					esciItem, 
 					aggiungiAllaCodaTopItem, 
 					rimuoviCanzoneItem, 
@@ -195,8 +205,8 @@ public class Panel extends JPanel {
 		LanguageManager.load(langs);
 		isDarkMode = ConfigManager.loadThemeFromConfig();
 		
-		this.controller = new Controller(this);
 		this.player = player;
+		this.controller = new Controller(this);
 		playlistRenderer = new PlaylistRenderer(this);
 		
 		setFocusable(true);
@@ -219,7 +229,15 @@ public class Panel extends JPanel {
 			        LinkedHashMap::new
 			    ));
 		
-		playlists.put(LanguageManager.get("playlist.all"), PlaylistDataManager.creaPlaylistTuttiIBrani());
+		Playlist tutti = PlaylistDataManager.creaPlaylistTuttiIBrani();
+		playlists.put(LanguageManager.get("playlist.all"), tutti);
+		// le impronte dei brani non ancora in cache vengono calcolate in background; appena pronte
+		// si possono migrare i vecchi contatori per titolo
+		List<Song> libreria = new ArrayList<>(tutti.getSongs());
+		SongIdManager.preload(libreria, () -> {
+			PlayCountManager.migrateLegacyCounts(libreria);
+			SwingUtilities.invokeLater(() -> controller.onSongIdsReady(tutti));
+		});
 		
 		this.playlist = playlists.values().iterator().next();
 		
@@ -324,10 +342,12 @@ public class Panel extends JPanel {
 		sequenzialeItem = new JMenuItem(LanguageManager.get("item.sequenziale"));
 		casualeItem = new JMenuItem(LanguageManager.get("item.casuale"));
 		ripetiItem = new JMenuItem(LanguageManager.get("item.ripeti"));
+		radioItem = new JMenuItem(LanguageManager.get("item.radio"));
 
 		playbackModeMenu.add(sequenzialeItem);
 		playbackModeMenu.add(casualeItem);
 		playbackModeMenu.add(ripetiItem);
+		playbackModeMenu.add(radioItem);
 
 		playbackMenu.add(previousSongItem);
 		playbackMenu.add(playPauseItem);
@@ -349,6 +369,7 @@ public class Panel extends JPanel {
 		sequenzialeItem.addActionListener(controller);
 		casualeItem.addActionListener(controller);
 		ripetiItem.addActionListener(controller);
+		radioItem.addActionListener(controller);
 		topSongsItem.addActionListener(controller);
 
 		menuBar.add(playbackMenu);
@@ -440,6 +461,8 @@ public class Panel extends JPanel {
 		comboBoxModel = new DefaultListModel<>();
 		comboBox = new JList<>(comboBoxModel);
 		comboBox.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		songRenderer = new SongRenderer(this);
+		comboBox.setCellRenderer(songRenderer);
 		comboBox.addListSelectionListener(controller);
 		
 		// Menu tasto destro sulla lista canzoni
@@ -475,10 +498,9 @@ public class Panel extends JPanel {
 		panel_3.add(currentSongLabel);
 		panel_3.add(Box.createVerticalStrut(5));
 		
-		slider = new JSlider();
+		slider = new JSlider(progressModel);
 		slider.setMaximumSize(new Dimension(600, 20));
 		slider.setAlignmentX(Component.CENTER_ALIGNMENT);
-		slider.setValue(0);
 		slider.addChangeListener(controller);
 		
 		panel_3.add(Box.createVerticalStrut(10));
@@ -557,10 +579,14 @@ public class Panel extends JPanel {
 	    if (controller != null) controller.setSuppressComboBoxPlayback(true);
 
 	    comboBoxModel.clear();
+	    songRenderer.clearDurations();
 	    if (playlist != null) {
-	        for (String title : playlist.getSongTitles()) {
-	            comboBoxModel.addElement(title);
-	        }
+	        comboBoxModel.addAll(playlist.getTitles());
+	        // le durate mancanti vengono lette in background e mostrate appena pronte
+	        TrackInfoManager.preload(playlist.getSongs(), () -> SwingUtilities.invokeLater(() -> {
+	            songRenderer.clearDurations();
+	            comboBox.repaint();
+	        }));
 	    }
 
 	    Logger.writeLog("Lista canzoni aggiornata");
@@ -649,6 +675,7 @@ public class Panel extends JPanel {
 	    			break;
 	    			
 	    		case CASUALE:
+	    		case RADIO:
 	    			img = ImageIO.read(isDarkMode ? SHUFFLE_DARK_ICON : SHUFFLE_LIGHT_ICON).getScaledInstance(ICON_SIZE, ICON_SIZE, Image.SCALE_DEFAULT);
 	    			break;
 	    			
@@ -737,6 +764,7 @@ public class Panel extends JPanel {
 	    sequenzialeItem.setText(LanguageManager.get("item.sequenziale"));
 	    casualeItem.setText(LanguageManager.get("item.casuale"));
 	    ripetiItem.setText(LanguageManager.get("item.ripeti"));
+	    radioItem.setText(LanguageManager.get("item.radio"));
 	    
 	    // Menu aiuto
 	    cercaComando.setText(LanguageManager.get("item.cercaComando"));
@@ -775,7 +803,7 @@ public class Panel extends JPanel {
 		String text = searchField.getText().toLowerCase();
 		comboBoxModel.clear();
 		if (playlist != null) {
-			for (String title : playlist.getSongTitles()) {
+			for (String title : playlist.getTitles()) {
 				if (title.toLowerCase().contains(text))
 					comboBoxModel.addElement(title);
 			}
@@ -957,6 +985,7 @@ public class Panel extends JPanel {
 	
 	public JList<String> getComboBox() { return comboBox; }
 	public JSlider getSlider() { return slider; }
+	public ProgressSliderModel getProgressModel() { return progressModel; }
 	public JButton getRewindButton() { return rewind_button; }
 	public JButton getSkipButton() { return skip_button; }
 	public JButton getPlayPauseButton() { return play_pause_btn; }
@@ -988,6 +1017,7 @@ public class Panel extends JPanel {
 	public JMenuItem getSequenzialeItem() { return sequenzialeItem; }
 	public JMenuItem getCasualeItem() { return casualeItem; }
 	public JMenuItem getRipetiItem() { return ripetiItem; }
+	public JMenuItem getRadioItem() { return radioItem; }
 	public JMenuItem getAddToQueueItem() { return addToQueueItem; }
 	public JMenuItem getExportSingleMP3Item() { return exportSingleMP3Item; }
 	public JMenuItem getExportPlaylistItem() { return exportPlaylistItem; }
@@ -1010,4 +1040,4 @@ public class Panel extends JPanel {
 	public Window getWindow() { return window; }
 	
 	public boolean isDarkMode() { return isDarkMode; }
-}
\ No newline at end of file
+}
\ No newline at end of file
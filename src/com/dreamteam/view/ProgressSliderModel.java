@@ -0,0 +1,47 @@
+package com.dreamteam.view;
+
+import javax.swing.DefaultBoundedRangeModel;
+
+/**
+ * Modello dello slider di avanzamento.
+ * <p>
+ * Distingue gli spostamenti dell'utente, che sono richieste di seek, dagli aggiornamenti
+ * della posizione di riproduzione: questi ultimi passano da {@link #setProgress(int)} e,
+ * mentre vengono notificati, {@link #isUpdatingProgress()} restituisce true. I listener
+ * possono così ignorarli senza dover essere rimossi e aggiunti a ogni aggiornamento.
+ * </p>
+ */
+public class ProgressSliderModel extends DefaultBoundedRangeModel {
+	private static final long serialVersionUID = 1L;
+
+	/** Valore che corrisponde alla traccia intera: lo slider si muove in millesimi. */
+	public static final int RESOLUTION = 1000;
+
+	private boolean updatingProgress;
+
+	public ProgressSliderModel() {
+		super(0, 0, 0, RESOLUTION);
+	}
+
+	/**
+	 * Mostra la posizione di riproduzione. Mentre l'utente trascina lo slider l'aggiornamento
+	 * viene ignorato, per non strappargli il cursore di mano.
+	 *
+	 * @param value La posizione, tra 0 e {@link #RESOLUTION}.
+	 */
+	public void setProgress(int value) {
+		if (getValueIsAdjusting() || value == getValue()) return;
+
+		updatingProgress = true;
+		try {
+			setValue(value);
+		} finally {
+			updatingProgress = false;
+		}
+	}
+
+	/** @return true se il cambio di valore in corso viene dalla riproduzione e non dall'utente. */
+	public boolean isUpdatingProgress() {
+		return updatingProgress;
+	}
+}
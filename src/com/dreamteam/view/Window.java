@@ -37,7 +37,6 @@ public class Window extends JFrame
 		playlist = new Playlist();
 		player = new MP3Player();
 		panel = new Panel(playlist, player, this);
-		player.setPanel(panel);
 		
 		windowController = new WindowController(this, panel);
 		